@@ -0,0 +1,92 @@
+package com.sinch.authNode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compares JMH results written with {@code -rf json} against the baseline committed with the benchmarks and exits
+ * with status 1 if any benchmark got slower or allocates more per operation than the allowed tolerance, or with status
+ * 2 if the baseline is empty.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar com.sinch.authNode.BaselineComparison baseline.json results.json [tolerancePercent]}
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    private static final double DEFAULT_TOLERANCE_PERCENT = 10;
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <results.json> [tolerancePercent]");
+            System.exit(2);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = byKey(mapper.readTree(new File(args[0])));
+        double tolerance = (args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE_PERCENT) / 100;
+        if (baseline.isEmpty()) {
+            System.err.println("Baseline " + args[0] + " is empty, no regression can be found against it.");
+            System.exit(2);
+        }
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> result : byKey(mapper.readTree(new File(args[1]))).entrySet()) {
+            JsonNode expected = baseline.get(result.getKey());
+            if (expected == null) {
+                System.out.println("NEW        " + result.getKey());
+                continue;
+            }
+            boolean higherIsBetter = "thrpt".equals(result.getValue().get("mode").asText());
+            regressions += compare(result.getKey(), "score", score(expected), score(result.getValue()), higherIsBetter, tolerance);
+            regressions += compare(result.getKey(), ALLOCATION_METRIC, allocation(expected), allocation(result.getValue()), false, tolerance);
+        }
+        System.out.println(regressions == 0 ? "No regressions." : regressions + " regression(s) found.");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static int compare(String key, String metric, double expected, double actual, boolean higherIsBetter, double tolerance) {
+        if (Double.isNaN(expected) || Double.isNaN(actual)) {
+            return 0;
+        }
+        double change = expected == 0 ? (actual == 0 ? 0 : Double.POSITIVE_INFINITY) : (actual - expected) / expected;
+        boolean regression = higherIsBetter ? change < -tolerance : change > tolerance;
+        System.out.printf("%-10s %s %s: %.3f -> %.3f (%+.1f%%)%n", regression ? "REGRESSION" : "OK", key, metric,
+                expected, actual, change * 100);
+        return regression ? 1 : 0;
+    }
+
+    private static Map<String, JsonNode> byKey(JsonNode results) {
+        Map<String, JsonNode> byKey = new HashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText()).append(" [")
+                    .append(result.get("mode").asText());
+            for (Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields(); params.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(", ").append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            byKey.put(key.append(']').toString(), result);
+        }
+        return byKey;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble(Double.NaN);
+    }
+
+    private static double allocation(JsonNode result) {
+        for (Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields(); metrics.hasNext(); ) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                return metric.getValue().path("score").asDouble(Double.NaN);
+            }
+        }
+        return Double.NaN;
+    }
+}
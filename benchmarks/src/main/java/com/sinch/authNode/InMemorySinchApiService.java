@@ -0,0 +1,66 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.SinchApiService;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.verification.metadata.model.Metadata;
+import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.initiation.InitiationResponseData;
+import com.sinch.verification.model.verification.VerificationResponseData;
+import com.sinch.verification.model.verification.VerificationStatus;
+import com.sinch.verification.utils.Factory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link SinchApiService} answering every call immediately with the same response, so the benchmarks measure the nodes
+ * alone. Initiations succeed; verifications are answered with {@link VerificationStatus#FAIL}, which keeps the
+ * verification in flight, so every iteration checks the code with Sinch instead of being rejected locally as a
+ * verification already completed. The metadata factory passed to initiations is not invoked.
+ */
+public class InMemorySinchApiService implements SinchApiService {
+
+    static final String VERIFICATION_ID = "1234567890";
+
+    private final InitiationResponseData initiationResponse;
+    private final VerificationResponseData verificationResponse;
+
+    /**
+     * Creates the service answering calls made with given verification method.
+     *
+     * @param method Verification method of the responses.
+     */
+    public InMemorySinchApiService(VerificationMethodType method) {
+        this.initiationResponse = new InitiationResponseData(VERIFICATION_ID, null, null, null, null, null, method, null);
+        this.verificationResponse = new VerificationResponseData(VERIFICATION_ID, VerificationStatus.FAIL, method, null, null);
+    }
+
+    @Override
+    public InitiationResponseData initiateSynchronically(SinchCredentials credentials, VerificationMethodType verificationMethod,
+                                                         String phoneNumber, Factory<Metadata> metadataFactory) {
+        return initiationResponse;
+    }
+
+    @Override
+    public VerificationResponseData verifySynchronicallyById(SinchCredentials credentials, String verificationId,
+                                                             String verificationCode, VerificationMethodType verificationMethodType) {
+        return verificationResponse;
+    }
+
+    @Override
+    public CompletableFuture<InitiationResponseData> initiateAsync(SinchCredentials credentials, VerificationMethodType verificationMethod,
+                                                                   String phoneNumber, Factory<Metadata> metadataFactory) {
+        return CompletableFuture.completedFuture(initiationResponse);
+    }
+
+    @Override
+    public CompletableFuture<VerificationResponseData> verifyByIdAsync(SinchCredentials credentials, String verificationId,
+                                                                       String verificationCode, VerificationMethodType verificationMethodType) {
+        return CompletableFuture.completedFuture(verificationResponse);
+    }
+
+    @Override
+    public CompletableFuture<VerificationResponseData> verifyByIdHedgedAsync(SinchCredentials credentials, String verificationId,
+                                                                             String verificationCode, VerificationMethodType verificationMethodType) {
+        return CompletableFuture.completedFuture(verificationResponse);
+    }
+}
@@ -0,0 +1,227 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.InitiationRateLimiter;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.ProfilePhoneNumberCache;
+import com.sinch.authNode.service.SinchApiServiceImpl;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.VerificationResultStore;
+import com.sinch.authNode.service.VerificationTracer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.auth.node.api.Action;
+import org.forgerock.openam.auth.node.api.ExternalRequestContext;
+import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.core.CoreWrapper;
+import org.forgerock.openam.core.realms.Realm;
+import org.mockito.Mockito;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+/**
+ * End-to-end load test of both nodes using the real {@link SinchApiServiceImpl} (HTTP transport, request signing,
+ * JSON handling, circuit breaker and bulkhead) against {@link SinchStandInServer}. Each virtual user repeatedly
+ * initiates a verification of a distinct phone number with {@link SinchAuthenticationNode} and submits the code to
+ * {@link SinchCodeCollectorCodeNode}. Throughput, latency percentiles of both nodes and the number of connections seen
+ * by the server are printed at the end.
+ * <p>
+ * Settings are read from system properties of the {@code loadTest.} prefix: {@code concurrency} (default 32),
+ * {@code warmupSeconds} (10), {@code durationSeconds} (60), {@code latencyMillis} (50), {@code jitterMillis} (20)
+ * and {@code errorRate} (0). The client side is tuned with the usual {@code com.sinch.authNode.*} properties.
+ * <p>
+ * Usage: {@code java -DloadTest.concurrency=64 -cp target/benchmarks.jar com.sinch.authNode.LoadTest}
+ */
+public final class LoadTest {
+
+    private static final String PROPERTY_PREFIX = "loadTest.";
+
+    private final int concurrency;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final AtomicLong phoneNumbers = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private LoadTest() {
+        this.concurrency = Integer.getInteger(PROPERTY_PREFIX + "concurrency", 32);
+        this.warmupMillis = TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_PREFIX + "warmupSeconds", 10L));
+        this.durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_PREFIX + "durationSeconds", 60L));
+    }
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = Long.getLong(PROPERTY_PREFIX + "latencyMillis", 50L);
+        long jitterMillis = Long.getLong(PROPERTY_PREFIX + "jitterMillis", 20L);
+        double errorRate = Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "errorRate", "0"));
+        try (SinchStandInServer server = new SinchStandInServer(latencyMillis, jitterMillis, errorRate)) {
+            System.setProperty("com.sinch.authNode.http.baseUrl", server.baseUrl());
+            SinchHttpTransport transport = new SinchHttpTransport();
+            transport.start();
+            VerificationTracer tracer = new VerificationTracer(transport);
+            SinchCredentialsCache credentialsCache = new SinchCredentialsCache();
+            try {
+                new LoadTest().run(new SinchApiServiceImpl(transport, new SinchMetrics(), tracer), tracer,
+                        credentialsCache, server);
+            } finally {
+                tracer.shutdown();
+                transport.shutdown();
+            }
+        }
+    }
+
+    private void run(SinchApiServiceImpl sinchApiService, VerificationTracer tracer, SinchCredentialsCache credentialsCache,
+                     SinchStandInServer server) throws Exception {
+        Realm realm = Mockito.mock(Realm.class);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        InFlightVerificationRegistry inFlightVerifications = new InFlightVerificationRegistry();
+        SinchAuthenticationNode authenticationNode = new SinchAuthenticationNode(new AuthenticationConfig(), realm,
+                Mockito.mock(CoreWrapper.class), sinchApiService, new PendingInitiationRegistry(),
+                new ProfilePhoneNumberCache(), new InitiationRateLimiter(), new SinchMetrics(), tracer, credentialsCache,
+                new ClientMetadata(), inFlightVerifications);
+        SinchCodeCollectorCodeNode codeCollectorNode = new SinchCodeCollectorCodeNode(new CodeCollectorConfig(), realm,
+                sinchApiService, new PendingInitiationRegistry(), new SinchMetrics(), tracer, credentialsCache,
+                new VerificationResultStore(), inFlightVerifications);
+
+        System.out.printf("Load test: %d virtual users, %ds warm-up, %ds measurement%n", concurrency,
+                TimeUnit.MILLISECONDS.toSeconds(warmupMillis), TimeUnit.MILLISECONDS.toSeconds(durationMillis));
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        ExecutorService users = Executors.newFixedThreadPool(concurrency);
+        List<Future<Samples>> results = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            results.add(users.submit(() -> runUser(authenticationNode, codeCollectorNode, measureFrom, end)));
+        }
+        Samples total = new Samples();
+        for (Future<Samples> result : results) {
+            total.addAll(result.get());
+        }
+        users.shutdown();
+        report(total, server);
+    }
+
+    private Samples runUser(SinchAuthenticationNode authenticationNode, SinchCodeCollectorCodeNode codeCollectorNode,
+                            long measureFrom, long end) {
+        Samples samples = new Samples();
+        NameCallback phoneNumberCallback = new NameCallback("phone");
+        PasswordCallback codeCallback = new PasswordCallback("code", false);
+        codeCallback.setPassword("1234".toCharArray());
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            boolean measured = now >= measureFrom;
+            phoneNumberCallback.setName(String.format("+4670%07d", phoneNumbers.incrementAndGet() % 10_000_000));
+            try {
+                long started = System.nanoTime();
+                Action initiation = authenticationNode.process(treeContext(json(object()), phoneNumberCallback));
+                long initiated = System.nanoTime();
+                Action verification = codeCollectorNode.process(treeContext(initiation.sharedState, codeCallback));
+                long verified = System.nanoTime();
+                if (!"true".equals(verification.outcome)) {
+                    errors.incrementAndGet();
+                }
+                if (measured) {
+                    samples.add(initiated - started, verified - initiated);
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+        return samples;
+    }
+
+    private static TreeContext treeContext(JsonValue sharedState, Callback callback) {
+        return new TreeContext(sharedState, json(object()), new ExternalRequestContext.Builder().build(),
+                Collections.singletonList(callback), Optional.empty());
+    }
+
+    private void report(Samples samples, SinchStandInServer server) {
+        System.out.printf("Completed logins:    %d (%.1f/s)%n", samples.size,
+                samples.size * 1000.0 / durationMillis);
+        System.out.printf("Failed logins:       %d (including warm-up)%n", errors.get());
+        System.out.printf("Server requests:     %d (%d injected errors)%n", server.requests(), server.injectedErrors());
+        System.out.printf("Server connections:  %d%n", server.connections());
+        printPercentiles("Initiation", samples.initiations, samples.size);
+        printPercentiles("Verification", samples.verifications, samples.size);
+    }
+
+    private static void printPercentiles(String name, long[] latencies, int size) {
+        if (size == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencies, size);
+        Arrays.sort(sorted);
+        System.out.printf("%-20s p50 %.2fms  p99 %.2fms  p999 %.2fms  max %.2fms%n", name + " latency:",
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[size - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Latencies in nanoseconds recorded by a single virtual user.
+     */
+    private static final class Samples {
+
+        private long[] initiations = new long[1024];
+        private long[] verifications = new long[1024];
+        private int size;
+
+        private void add(long initiation, long verification) {
+            if (size == initiations.length) {
+                initiations = Arrays.copyOf(initiations, size * 2);
+                verifications = Arrays.copyOf(verifications, size * 2);
+            }
+            initiations[size] = initiation;
+            verifications[size++] = verification;
+        }
+
+        private void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.initiations[i], other.verifications[i]);
+            }
+        }
+    }
+
+    private static final class AuthenticationConfig implements SinchAuthenticationNode.Config {
+
+        @Override
+        public String appKey() {
+            return "appKey";
+        }
+
+        @Override
+        public char[] appSecret() {
+            return "c2VjcmV0".toCharArray();
+        }
+    }
+
+    private static final class CodeCollectorConfig implements SinchCodeCollectorCodeNode.Config {
+
+        @Override
+        public String appKey() {
+            return "appKey";
+        }
+
+        @Override
+        public char[] appSecret() {
+            return "c2VjcmV0".toCharArray();
+        }
+    }
+}
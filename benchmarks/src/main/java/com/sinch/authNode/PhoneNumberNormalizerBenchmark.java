@@ -0,0 +1,35 @@
+package com.sinch.authNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PhoneNumberNormalizer#normalize(String)} with a number already in E.164 format, a number with
+ * separators and an invalid number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PhoneNumberNormalizerBenchmark {
+
+    @Param({"+46701234567", "+46 (70) 123-45-67", "+46 70 abc"})
+    public String phoneNumber;
+
+    @Benchmark
+    public String normalize() {
+        return PhoneNumberNormalizer.normalize(phoneNumber);
+    }
+}
@@ -0,0 +1,121 @@
+package com.sinch.authNode;
+
+import com.google.common.collect.ImmutableSet;
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.InitiationRateLimiter;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.ProfilePhoneNumberCache;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.VerificationTracer;
+import com.sun.identity.idm.AMIdentity;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.auth.node.api.Action;
+import org.forgerock.openam.auth.node.api.ExternalRequestContext;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.core.CoreWrapper;
+import org.forgerock.openam.core.realms.Realm;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.callback.NameCallback;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+/**
+ * Benchmarks {@link SinchAuthenticationNode#process(TreeContext)} with the phone number read from user's profile and
+ * entered by the user. Each operation includes building a fresh tree context, as AM does for every request. The
+ * identity store is a Mockito mock, so with the profile cache disabled its (small) cost is part of the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SinchAuthenticationNodeBenchmark {
+
+    private static final String PHONE_NUMBER = "+46701234567";
+    private static final String PHONE_ATTRIBUTE = "telephoneNumber";
+
+    @Param({"0", "60"})
+    public int profilePhoneCacheTtlSeconds;
+
+    private SinchAuthenticationNode node;
+    private NameCallback phoneNumberCallback;
+
+    @Setup
+    public void setup() throws Exception {
+        AMIdentity identity = Mockito.mock(AMIdentity.class);
+        Mockito.when(identity.getAttribute(PHONE_ATTRIBUTE)).thenReturn(ImmutableSet.of(PHONE_NUMBER));
+        CoreWrapper coreWrapper = Mockito.mock(CoreWrapper.class);
+        Mockito.when(coreWrapper.getIdentity(Mockito.anyString(), Mockito.any())).thenReturn(identity);
+        Realm realm = Mockito.mock(Realm.class);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        Mockito.when(realm.asDN()).thenReturn("o=root");
+        int cacheTtlSeconds = profilePhoneCacheTtlSeconds;
+        SinchAuthenticationNode.Config config = new SinchAuthenticationNode.Config() {
+            @Override
+            public String appKey() {
+                return "appKey";
+            }
+
+            @Override
+            public char[] appSecret() {
+                return "c2VjcmV0".toCharArray();
+            }
+
+            @Override
+            public String identityPhoneNumberAttribute() {
+                return PHONE_ATTRIBUTE;
+            }
+
+            @Override
+            public int profilePhoneCacheTtlSeconds() {
+                return cacheTtlSeconds;
+            }
+        };
+        node = new SinchAuthenticationNode(config, realm, coreWrapper,
+                new InMemorySinchApiService(config.verificationMethod().asSinchMethodType()),
+                new PendingInitiationRegistry(), new ProfilePhoneNumberCache(), new InitiationRateLimiter(),
+                new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()), new SinchCredentialsCache(),
+                new ClientMetadata(), new InFlightVerificationRegistry());
+        phoneNumberCallback = new NameCallback("phone");
+        phoneNumberCallback.setName("+46 70 123 45 67");
+    }
+
+    @Benchmark
+    public Action profileNumber() throws NodeProcessException {
+        return node.process(treeContext(Collections.emptyList()));
+    }
+
+    @Benchmark
+    public Action callbackNumber() throws NodeProcessException {
+        return node.process(treeContext(Collections.singletonList(phoneNumberCallback)));
+    }
+
+    private static TreeContext treeContext(List<NameCallback> callbacks) {
+        JsonValue sharedState = json(object(field(SinchAuthenticationNode.IDENTITY_USERNAME_KEY, "demo")));
+        return new TreeContext(sharedState, json(object()), new ExternalRequestContext.Builder().build(), callbacks,
+                Optional.empty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.VerificationResultStore;
+import com.sinch.authNode.service.VerificationTracer;
+import com.sinch.verification.model.VerificationMethodType;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.auth.node.api.Action;
+import org.forgerock.openam.auth.node.api.ExternalRequestContext;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.core.realms.Realm;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.PasswordCallback;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+/**
+ * Benchmarks {@link SinchCodeCollectorCodeNode#process(TreeContext)} when prompting for the code and when verifying
+ * the submitted code. Each operation includes building a fresh tree context, as AM does for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SinchCodeCollectorCodeNodeBenchmark {
+
+    private static final VerificationMethodType METHOD = VerificationMethodType.SMS;
+    private static final String STATE = new VerificationState(METHOD, "+46701234567",
+            InMemorySinchApiService.VERIFICATION_ID, null, 0, null).encode();
+
+    private SinchCodeCollectorCodeNode node;
+    private PasswordCallback codeCallback;
+
+    @Setup
+    public void setup() {
+        SinchCodeCollectorCodeNode.Config config = new SinchCodeCollectorCodeNode.Config() {
+            @Override
+            public String appKey() {
+                return "appKey";
+            }
+
+            @Override
+            public char[] appSecret() {
+                return "c2VjcmV0".toCharArray();
+            }
+        };
+        Realm realm = Mockito.mock(Realm.class);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        node = new SinchCodeCollectorCodeNode(config, realm, new InMemorySinchApiService(METHOD),
+                new PendingInitiationRegistry(), new SinchMetrics(),
+                new VerificationTracer(new SinchHttpTransport()), new SinchCredentialsCache(),
+                new VerificationResultStore(), new InFlightVerificationRegistry());
+        codeCallback = new PasswordCallback("code", false);
+        codeCallback.setPassword("1234".toCharArray());
+    }
+
+    @Benchmark
+    public Action collectCode() throws NodeProcessException {
+        return node.process(treeContext(Collections.emptyList()));
+    }
+
+    @Benchmark
+    public Action verifyCode() throws NodeProcessException {
+        return node.process(treeContext(Collections.singletonList(codeCallback)));
+    }
+
+    private static TreeContext treeContext(List<Callback> callbacks) {
+        JsonValue sharedState = json(object(field(VerificationState.KEY, STATE)));
+        return new TreeContext(sharedState, json(object()), new ExternalRequestContext.Builder().build(), callbacks,
+                Optional.empty());
+    }
+}
@@ -0,0 +1,130 @@
+package com.sinch.authNode;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in of the Sinch Verification Rest API serving the initiation and verification endpoints used by the
+ * nodes. Every response is delayed by the configured latency (plus random jitter) without blocking server threads and
+ * the configured fraction of requests fails with 503. Verifications always succeed. The server counts requests and
+ * distinct client connections, so connection reuse of the client can be checked.
+ */
+public class SinchStandInServer implements AutoCloseable {
+
+    private static final String VERIFICATIONS_PATH = "/verification/v1/verifications";
+    private static final String ERROR_RESPONSE = "{\"errorCode\":50300,\"message\":\"Injected failure\",\"reference\":\"stand-in\"}";
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responder;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final AtomicLong verificationIds = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @param latencyMillis Delay of every response.
+     * @param jitterMillis  Maximum random delay added to the latency.
+     * @param errorRate     Fraction (0-1) of requests answered with 503.
+     * @throws IOException If the server cannot be started.
+     */
+    public SinchStandInServer(long latencyMillis, long jitterMillis, double errorRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        // The JDK server writes headers and body separately, without TCP_NODELAY delayed ACKs add ~40ms per response.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.handlers = Executors.newFixedThreadPool(8);
+        this.responder = Executors.newScheduledThreadPool(4);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.createContext(VERIFICATIONS_PATH, this::handle);
+        this.server.setExecutor(handlers);
+        this.server.start();
+    }
+
+    /**
+     * @return Base URL to be set as {@code com.sinch.authNode.http.baseUrl}.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long injectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @return Number of distinct client connections seen so far.
+     */
+    public int connections() {
+        return connections.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress());
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+        }
+        int status;
+        String response;
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            status = 503;
+            response = ERROR_RESPONSE;
+        } else if ("POST".equals(exchange.getRequestMethod())) {
+            status = 200;
+            response = "{\"id\":\"" + verificationIds.incrementAndGet() + "\",\"method\":\"sms\"}";
+        } else if ("PUT".equals(exchange.getRequestMethod())) {
+            String path = exchange.getRequestURI().getPath();
+            status = 200;
+            response = "{\"id\":\"" + path.substring(path.lastIndexOf('/') + 1) + "\",\"method\":\"sms\",\"status\":\"SUCCESSFUL\"}";
+        } else {
+            status = 405;
+            response = "{}";
+        }
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        responder.schedule(() -> respond(exchange, status, response), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String response) {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try (OutputStream body = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            body.write(bytes);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responder.shutdownNow();
+        handlers.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package com.sinch.authNode;
+
+import com.sun.identity.sm.ServiceAttributeValidator;
+
+import java.util.Set;
+
+/**
+ * Rejects node configurations with additional applications not of the form {@code appKey[:weight]}, so malformed
+ * entries are reported when the node is saved rather than when verifications are initiated.
+ */
+public class AdditionalApplicationsValidator implements ServiceAttributeValidator {
+
+    @Override
+    public boolean validate(Set<String> values) {
+        for (String value : values) {
+            if (!SinchApplications.isValid(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
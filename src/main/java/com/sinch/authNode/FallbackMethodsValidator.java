@@ -0,0 +1,22 @@
+package com.sinch.authNode;
+
+import com.sun.identity.sm.ServiceAttributeValidator;
+
+import java.util.Set;
+
+/**
+ * Rejects node configurations with fallback methods not of the form {@code METHOD[:budgetMillis]}, so a mistyped
+ * method is reported when the node is saved rather than silently dropped from the cascade.
+ */
+public class FallbackMethodsValidator implements ServiceAttributeValidator {
+
+    @Override
+    public boolean validate(Set<String> values) {
+        for (String value : values) {
+            if (!MethodCascade.isValid(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package com.sinch.authNode;
+
+import org.forgerock.util.i18n.PreferredLocales;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of the prompt strings a node shows in its callbacks, resolved from the node's resource bundle once per list of
+ * preferred locales. Node instances are created per request, so the cache is kept in a static field of the node class.
+ * The number of cached locale lists is bounded; when the bound is reached the cache is cleared and filled again.
+ *
+ * @param <T> Type holding the resolved prompt strings.
+ */
+final class LocalizedPrompts<T> {
+
+    static final int MAX_ENTRIES = 64;
+
+    private final String bundleName;
+    private final ClassLoader classLoader;
+    private final Function<ResourceBundle, T> resolver;
+    private final Map<List<Locale>, T> prompts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache.
+     *
+     * @param bundleName  Name of the resource bundle.
+     * @param classLoader Class loader the bundle is loaded with.
+     * @param resolver    Function reading the prompt strings from the bundle.
+     */
+    LocalizedPrompts(String bundleName, ClassLoader classLoader, Function<ResourceBundle, T> resolver) {
+        this.bundleName = bundleName;
+        this.classLoader = classLoader;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Returns the prompts in the preferred locale of the request.
+     *
+     * @param locales Preferred locales of the request.
+     * @return Resolved prompts.
+     */
+    T get(PreferredLocales locales) {
+        List<Locale> key = locales.getLocales();
+        T cached = prompts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        T resolved = resolver.apply(locales.getBundleInPreferredLocale(bundleName, classLoader));
+        if (prompts.size() >= MAX_ENTRIES) {
+            prompts.clear();
+        }
+        prompts.put(key, resolved);
+        return resolved;
+    }
+}
@@ -0,0 +1,87 @@
+package com.sinch.authNode;
+
+import com.sinch.verification.model.VerificationMethodType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ordered verification methods the authentication node tries until an initiation succeeds, each with its own time
+ * budget. The first step is the configured verification method with the request time budget; the fallback steps are
+ * read from entries of the form {@code METHOD[:budgetMillis]}, where a missing budget means the request time budget.
+ * Malformed entries are rejected by {@link FallbackMethodsValidator} when the node is saved; entries saved before are
+ * skipped with a warning.
+ */
+final class MethodCascade {
+
+    private static final Logger logger = LoggerFactory.getLogger(MethodCascade.class);
+
+    private MethodCascade() {
+    }
+
+    /**
+     * Returns the steps of the cascade.
+     *
+     * @param primary             Configured verification method.
+     * @param primaryBudgetMillis Time budget of the configured method, 0 for none.
+     * @param fallbacks           Fallback entries.
+     * @return Steps in the order they are tried.
+     */
+    static List<Step> steps(AMSupportedVerificationMethod primary, int primaryBudgetMillis, List<String> fallbacks) {
+        List<Step> steps = new ArrayList<>(fallbacks.size() + 1);
+        steps.add(new Step(primary.asSinchMethodType(), primaryBudgetMillis));
+        for (int i = 0; i < fallbacks.size(); i++) {
+            Step step = parse(fallbacks.get(i), primaryBudgetMillis);
+            if (step == null) {
+                logger.warn("Fallback method " + (i + 1) + " '" + fallbacks.get(i) + "' is malformed and skipped, "
+                        + "expected METHOD[:budgetMillis]");
+            } else {
+                steps.add(step);
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * @param entry Fallback entry.
+     * @return True if the entry has the form {@code METHOD[:budgetMillis]}.
+     */
+    static boolean isValid(String entry) {
+        return parse(entry, 0) != null;
+    }
+
+    /**
+     * @return The step of the entry or null if the entry is malformed.
+     */
+    private static Step parse(String entry, int defaultBudgetMillis) {
+        String[] parts = entry == null ? new String[0] : entry.trim().split(":", -1);
+        if (parts.length < 1 || parts.length > 2) {
+            return null;
+        }
+        try {
+            AMSupportedVerificationMethod method = AMSupportedVerificationMethod.valueOf(
+                    parts[0].trim().toUpperCase(Locale.ROOT));
+            int budgetMillis = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : defaultBudgetMillis;
+            return budgetMillis < 0 ? null : new Step(method.asSinchMethodType(), budgetMillis);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Single step of the cascade.
+     */
+    static final class Step {
+
+        final VerificationMethodType method;
+        final int budgetMillis;
+
+        Step(VerificationMethodType method, int budgetMillis) {
+            this.method = method;
+            this.budgetMillis = budgetMillis;
+        }
+    }
+}
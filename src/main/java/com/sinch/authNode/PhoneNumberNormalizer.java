@@ -0,0 +1,151 @@
+package com.sinch.authNode;
+
+/**
+ * Normalizes phone numbers entered by users or read from their profiles to E.164 format and checks if they are
+ * plausible, so obviously wrong numbers are rejected without calling Sinch. The input is scanned once without regular
+ * expressions. Spaces and the usual separators ({@code -.()/}) are skipped, a leading {@code +} or {@code 00}
+ * international prefix is accepted and any other character makes the number invalid. The country code and the length
+ * of the national number are checked against a compact table embedded in this class. Numbers with a country code
+ * missing from the table (for example 247 or the global codes 870, 881, 882 and 883) are passed on unchecked and left
+ * to Sinch, so users of codes the table does not know are not locked out.
+ */
+public final class PhoneNumberNormalizer {
+
+    /**
+     * Maximum number of digits of an E.164 number, including the country code.
+     */
+    static final int MAX_DIGITS = 15;
+
+    /**
+     * Country calling codes with the minimum and maximum length of the national significant number, written as
+     * {@code code:min-max}. The lengths are deliberately lenient, the table is meant to catch typos and garbage
+     * rather than to replace Sinch's own validation.
+     */
+    private static final String COUNTRY_METADATA = "" +
+            "1:10-10 7:10-10 20:8-10 27:9-9 30:10-10 31:9-9 32:8-9 33:9-9 34:9-9 36:8-9 39:6-11 40:9-9 41:9-9 " +
+            "43:4-13 44:7-10 45:8-8 46:6-13 47:5-8 48:9-9 49:6-15 51:8-9 52:10-10 53:6-8 54:10-11 55:10-11 56:9-9 " +
+            "57:8-10 58:10-10 60:7-10 61:5-9 62:7-12 63:8-10 64:8-10 65:8-8 66:8-9 81:9-10 82:8-10 84:9-10 86:5-12 " +
+            "90:10-10 91:10-10 92:9-10 93:9-9 94:9-9 95:7-10 98:10-10 " +
+            "211:9-9 212:9-9 213:8-9 216:8-8 218:8-9 220:7-7 221:9-9 222:8-8 223:8-8 224:8-9 225:8-10 226:8-8 " +
+            "227:8-8 228:8-8 229:8-10 230:7-8 231:7-9 232:8-8 233:9-9 234:8-10 235:8-8 236:8-8 237:9-9 238:7-7 " +
+            "239:7-7 240:9-9 241:7-8 242:9-9 243:9-9 244:9-9 245:7-9 246:7-7 248:7-7 249:9-9 250:9-9 251:9-9 " +
+            "252:7-9 253:8-8 254:9-10 255:9-9 256:9-9 257:8-8 258:8-9 260:9-9 261:9-9 262:9-9 263:9-9 264:8-9 " +
+            "265:7-9 266:8-8 267:7-8 268:8-8 269:7-7 290:4-5 291:7-7 297:7-7 298:6-6 299:6-6 " +
+            "350:8-8 351:9-9 352:4-11 353:7-9 354:7-9 355:8-9 356:8-8 357:8-8 358:5-12 359:8-9 370:8-8 371:8-8 " +
+            "372:7-8 373:8-8 374:8-8 375:9-10 376:6-9 377:8-9 378:6-10 380:9-9 381:8-12 382:8-8 383:8-8 385:8-9 " +
+            "386:8-8 387:8-8 389:8-8 420:9-9 421:9-9 423:7-9 " +
+            "500:5-5 501:7-7 502:8-8 503:8-8 504:8-8 505:8-8 506:8-8 507:7-8 508:6-6 509:8-8 590:9-9 591:8-8 " +
+            "592:7-7 593:8-9 594:9-9 595:9-9 596:9-9 597:6-7 598:8-8 599:7-8 " +
+            "670:7-8 672:6-6 673:7-7 674:7-7 675:7-8 676:5-7 677:5-7 678:5-7 679:7-7 680:7-7 681:6-6 682:5-5 " +
+            "683:4-4 685:5-7 686:5-8 687:6-6 688:5-6 689:6-9 690:4-4 691:7-7 692:7-7 " +
+            "850:8-10 852:8-8 853:8-8 855:8-9 856:8-10 880:10-10 886:8-9 " +
+            "960:7-7 961:7-8 962:8-9 963:9-9 964:10-10 965:8-8 966:9-9 967:7-9 968:8-8 970:9-9 971:8-9 972:8-9 " +
+            "973:8-8 974:8-8 975:7-8 976:8-8 977:8-10 992:9-9 993:8-8 994:9-9 995:9-9 996:9-9 998:9-9";
+
+    /**
+     * Minimum and maximum national number length indexed by country code, 0 for codes which are not assigned.
+     */
+    private static final byte[] MIN_NATIONAL_LENGTH = new byte[1000];
+    private static final byte[] MAX_NATIONAL_LENGTH = new byte[1000];
+
+    static {
+        for (String entry : COUNTRY_METADATA.split(" ")) {
+            int colon = entry.indexOf(':');
+            int dash = entry.indexOf('-', colon);
+            int countryCode = Integer.parseInt(entry.substring(0, colon));
+            MIN_NATIONAL_LENGTH[countryCode] = Byte.parseByte(entry.substring(colon + 1, dash));
+            MAX_NATIONAL_LENGTH[countryCode] = Byte.parseByte(entry.substring(dash + 1));
+        }
+    }
+
+    private PhoneNumberNormalizer() {
+    }
+
+    /**
+     * Normalizes the phone number to E.164 format.
+     *
+     * @param phoneNumber Phone number in international format, possibly containing separators.
+     * @return The number in E.164 format (the input itself if it already was in this format) or null if the number is
+     * not valid.
+     */
+    public static String normalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        int e164DigitCount = e164DigitCount(phoneNumber);
+        if (e164DigitCount > 0) {
+            return isPlausible(phoneNumber, e164DigitCount) ? phoneNumber : null;
+        }
+        char[] digits = new char[MAX_DIGITS + 1];
+        digits[0] = '+';
+        int digitCount = 0;
+        boolean prefixAllowed = true;
+        int length = phoneNumber.length();
+        for (int i = 0; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (prefixAllowed && c == '0' && i + 1 < length && phoneNumber.charAt(i + 1) == '0') {
+                    i++;
+                } else if (digitCount == MAX_DIGITS) {
+                    return null;
+                } else {
+                    digits[++digitCount] = c;
+                }
+                prefixAllowed = false;
+            } else if (c == '+' && prefixAllowed) {
+                prefixAllowed = false;
+            } else if (!isSeparator(c)) {
+                return null;
+            }
+        }
+        if (digitCount == 0) {
+            return null;
+        }
+        String normalized = new String(digits, 0, digitCount + 1);
+        return isPlausible(normalized, digitCount) ? normalized : null;
+    }
+
+    /**
+     * Checks if the number is already in E.164 format, so the common case is validated without allocating.
+     *
+     * @return Number of digits or 0 if the number is not in E.164 format.
+     */
+    private static int e164DigitCount(String phoneNumber) {
+        int length = phoneNumber.length();
+        if (length < 2 || length > MAX_DIGITS + 1 || phoneNumber.charAt(0) != '+') {
+            return 0;
+        }
+        for (int i = 1; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+        }
+        return length - 1;
+    }
+
+    /**
+     * @param number     Number in E.164 format, digits start at index 1.
+     * @param digitCount Number of digits.
+     * @return False if the country code starts with 0 or the national number does not fit the country code, true
+     * otherwise, including for country codes missing from the table.
+     */
+    private static boolean isPlausible(String number, int digitCount) {
+        int countryCode = 0;
+        for (int codeLength = 1; codeLength <= 3 && codeLength < digitCount; codeLength++) {
+            countryCode = countryCode * 10 + (number.charAt(codeLength) - '0');
+            if (countryCode == 0) {
+                return false;
+            }
+            if (MAX_NATIONAL_LENGTH[countryCode] != 0) {
+                int nationalLength = digitCount - codeLength;
+                return nationalLength >= MIN_NATIONAL_LENGTH[countryCode] && nationalLength <= MAX_NATIONAL_LENGTH[countryCode];
+            }
+        }
+        return countryCode != 0;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '.' || c == '(' || c == ')' || c == '/' || c == '\t' || c == '\u00A0';
+    }
+}
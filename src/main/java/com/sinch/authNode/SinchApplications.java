@@ -0,0 +1,151 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.WeightedApplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the additional Sinch applications configured in a node. Each entry has the form {@code appKey[:weight]}; the
+ * weight defaults to 1. The secrets of the applications are kept in a separate password attribute, separated by
+ * commas in the order of the entries. Malformed entries and secrets not matching the entries are reported with an
+ * {@link IllegalArgumentException}.
+ */
+final class SinchApplications {
+
+    private static final char SECRET_SEPARATOR = ',';
+
+    private SinchApplications() {
+    }
+
+    /**
+     * Returns the applications verifications may be initiated with.
+     *
+     * @param primary          Credentials of the application configured by the application key and secret attributes.
+     * @param primaryWeight    Weight of the primary application.
+     * @param entries          Additional applications.
+     * @param secrets          Secrets of the additional applications.
+     * @param credentialsCache Cache of the credentials of Sinch applications.
+     * @return The primary application followed by the additional ones.
+     * @throws IllegalArgumentException If an entry is malformed or the secrets do not match the entries.
+     */
+    static List<WeightedApplication> weighted(SinchCredentials primary, int primaryWeight, List<String> entries,
+                                              char[] secrets, SinchCredentialsCache credentialsCache) {
+        if (entries == null || entries.isEmpty()) {
+            return Collections.singletonList(new WeightedApplication(primary, primaryWeight));
+        }
+        List<char[]> appSecrets = secrets(secrets, entries.size());
+        List<WeightedApplication> applications = new ArrayList<>(entries.size() + 1);
+        applications.add(new WeightedApplication(primary, primaryWeight));
+        for (int i = 0; i < entries.size(); i++) {
+            String[] parts = parse(entries.get(i), i);
+            int weight = parts.length == 2 ? Integer.parseInt(parts[1]) : 1;
+            applications.add(new WeightedApplication(credentialsCache.get(parts[0], appSecrets.get(i)), weight));
+        }
+        return applications;
+    }
+
+    /**
+     * Returns the credentials of the application a verification was initiated with.
+     *
+     * @param appKey           Key of the application stored in the shared state, may be null.
+     * @param primary          Credentials of the application configured by the application key and secret attributes.
+     * @param entries          Additional applications.
+     * @param secrets          Secrets of the additional applications.
+     * @param credentialsCache Cache of the credentials of Sinch applications.
+     * @return Credentials of the application or the primary ones if the application is not configured in the node nor
+     * known to this instance.
+     * @throws IllegalArgumentException If an entry is malformed or the secrets do not match the entries.
+     */
+    static SinchCredentials find(String appKey, SinchCredentials primary, List<String> entries, char[] secrets,
+                                 SinchCredentialsCache credentialsCache) {
+        if (appKey == null || appKey.equals(primary.appKey())) {
+            return primary;
+        }
+        if (entries != null) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (parse(entries.get(i), i)[0].equals(appKey)) {
+                    return credentialsCache.get(appKey, secrets(secrets, entries.size()).get(i));
+                }
+            }
+        }
+        SinchCredentials known = credentialsCache.find(appKey);
+        return known == null ? primary : known;
+    }
+
+    /**
+     * @param entry Additional application entry.
+     * @return True if the entry has the form {@code appKey[:weight]}.
+     */
+    static boolean isValid(String entry) {
+        try {
+            parse(entry, 0);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Splits an entry into its application key and optional weight. The entry itself is left out of the error
+     * message, as entries written for previous versions hold the application secret.
+     */
+    private static String[] parse(String entry, int index) {
+        String[] parts = entry == null ? new String[0] : entry.trim().split(":", -1);
+        if (parts.length < 1 || parts.length > 2 || parts[0].isEmpty()) {
+            throw malformed(index);
+        }
+        if (parts.length == 2) {
+            try {
+                if (Integer.parseInt(parts[1]) < 0) {
+                    throw malformed(index);
+                }
+            } catch (NumberFormatException e) {
+                throw malformed(index);
+            }
+        }
+        return parts;
+    }
+
+    private static IllegalArgumentException malformed(int index) {
+        return new IllegalArgumentException("Additional application " + (index + 1)
+                + " is malformed, expected appKey[:weight] with the secret in the additional application secrets");
+    }
+
+    private static List<char[]> secrets(char[] secrets, int expected) {
+        List<char[]> parsed = new ArrayList<>(expected);
+        if (secrets != null && secrets.length > 0) {
+            int start = 0;
+            for (int i = 0; i <= secrets.length; i++) {
+                if (i == secrets.length || secrets[i] == SECRET_SEPARATOR) {
+                    parsed.add(trimmed(secrets, start, i));
+                    start = i + 1;
+                }
+            }
+        }
+        if (parsed.size() != expected) {
+            throw new IllegalArgumentException(expected + " additional application(s) configured but "
+                    + parsed.size() + " secret(s)");
+        }
+        for (int i = 0; i < parsed.size(); i++) {
+            if (parsed.get(i).length == 0) {
+                throw new IllegalArgumentException("Secret of additional application " + (i + 1) + " is empty");
+            }
+        }
+        return parsed;
+    }
+
+    private static char[] trimmed(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return Arrays.copyOfRange(chars, start, end);
+    }
+}
@@ -1,15 +1,18 @@
 package com.sinch.authNode;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import com.sinch.authNode.service.SinchApiService;
 import com.sinch.authNode.service.SinchApiServiceImpl;
+import com.sinch.authNode.service.SinchHttpTransport;
 
 public class SinchAuthNodeModule extends AbstractModule {
 
     @Override
     protected void configure() {
         super.configure();
-        bind(SinchApiService.class).to(SinchApiServiceImpl.class);
+        bind(SinchHttpTransport.class).in(Singleton.class);
+        bind(SinchApiService.class).to(SinchApiServiceImpl.class).in(Singleton.class);
     }
 
 }
@@ -16,10 +16,20 @@
 
 package com.sinch.authNode;
 
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.SinchWarmUp;
+import com.sinch.authNode.service.SinchWebhookReceiver;
+import com.sinch.authNode.service.VerificationTracer;
 import org.forgerock.openam.auth.node.api.AbstractNodeAmPlugin;
 import org.forgerock.openam.auth.node.api.Node;
 import org.forgerock.openam.plugins.PluginException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -59,7 +69,77 @@ import java.util.Map;
  */
 public class SinchAuthNodePlugin extends AbstractNodeAmPlugin {
 
-    static private String currentVersion = "1.0.0";
+    static private String currentVersion = "1.1.0";
+
+    private static final Logger logger = LoggerFactory.getLogger(SinchAuthNodePlugin.class);
+
+    private SinchHttpTransport transport;
+    private SinchMetrics metrics;
+    private VerificationTracer tracer;
+    private ClientMetadata clientMetadata;
+    private SinchWebhookReceiver webhookReceiver;
+    private SinchWarmUp warmUp;
+
+    /**
+     * Sets the HTTP transport shared by all Sinch Rest API calls, so its lifecycle can be bound to the plugin's one.
+     *
+     * @param transport Pooled HTTP transport.
+     */
+    @Inject
+    public void setTransport(SinchHttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Sets the metrics of Sinch calls and of the nodes, so a missing registry is reported when the plugin starts.
+     *
+     * @param metrics Metrics of Sinch calls and of the nodes.
+     */
+    @Inject
+    public void setMetrics(SinchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the tracer of verifications, so the spans still queued are exported when the plugin is shut down.
+     *
+     * @param tracer Tracer of verifications.
+     */
+    @Inject
+    public void setTracer(VerificationTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Sets the client metadata attached to verification initiations, so it can be collected when the plugin starts.
+     *
+     * @param clientMetadata Client metadata snapshot.
+     */
+    @Inject
+    public void setClientMetadata(ClientMetadata clientMetadata) {
+        this.clientMetadata = clientMetadata;
+    }
+
+    /**
+     * Sets the receiver of Sinch verification callbacks, so it listens only while the plugin is running.
+     *
+     * @param webhookReceiver Receiver of Sinch callbacks.
+     */
+    @Inject
+    public void setWebhookReceiver(SinchWebhookReceiver webhookReceiver) {
+        this.webhookReceiver = webhookReceiver;
+    }
+
+    /**
+     * Sets the optional warm-up of the request handling and of the connections to Sinch, so it runs once the plugin
+     * has started.
+     *
+     * @param warmUp Warm-up run at startup.
+     */
+    @Inject
+    public void setWarmUp(SinchWarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
 
     /**
      * Specify the Map of list of node classes that the plugin is providing. These will then be installed and
@@ -88,15 +168,68 @@ public class SinchAuthNodePlugin extends AbstractNodeAmPlugin {
      * This method will be called when the version returned by {@link #getPluginVersion()} is higher than the
      * version already installed. This method will be called before the {@link #onStartup()} method.
      * <p>
-     * No need to implement this untils there are multiple versions of your auth node.
+     * Upgrades the schema of both nodes, so existing installations get the configuration attributes and outcomes
+     * added since.
      *
      * @param fromVersion The old version of the plugin that has been installed.
      */
     @Override
     public void upgrade(String fromVersion) throws PluginException {
+        pluginTools.upgradeAuthNode(SinchAuthenticationNode.class);
+        pluginTools.upgradeAuthNode(SinchCodeCollectorCodeNode.class);
         super.upgrade(fromVersion);
     }
 
+    /**
+     * Starts the pooled HTTP transport used to communicate with Sinch and takes the snapshot of the client metadata, so
+     * the first login does not pay for their creation. Starts the receiver of Sinch callbacks and the warm-up in
+     * background if they are enabled. Warns if metrics are not recorded because AM does not provide a meter registry.
+     */
+    @Override
+    public void onStartup() throws PluginException {
+        super.onStartup();
+        if (metrics != null && !metrics.isPublished()) {
+            logger.warn("No meter registry is bound by AM, metrics of the Sinch nodes and calls are not recorded");
+        }
+        if (transport != null) {
+            transport.start();
+        }
+        if (clientMetadata != null) {
+            clientMetadata.initialize();
+        }
+        if (webhookReceiver != null) {
+            try {
+                webhookReceiver.start();
+            } catch (IOException e) {
+                throw new PluginException("Unable to start receiver of Sinch callbacks", e);
+            }
+        }
+        if (warmUp != null) {
+            warmUp.start();
+        }
+    }
+
+    /**
+     * Interrupts the warm-up, stops receiving Sinch callbacks, exports the spans still queued by the tracer and
+     * drains the pooled HTTP transport: in-flight calls are cancelled and every kept-alive connection is closed.
+     */
+    @Override
+    public void onShutdown() {
+        if (warmUp != null) {
+            warmUp.shutdown();
+        }
+        if (webhookReceiver != null) {
+            webhookReceiver.shutdown();
+        }
+        if (tracer != null) {
+            tracer.shutdown();
+        }
+        if (transport != null) {
+            transport.shutdown();
+        }
+        super.onShutdown();
+    }
+
     /**
      * The plugin version. This must be in semver (semantic version) format.
      *
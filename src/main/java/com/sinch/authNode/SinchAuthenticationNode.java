@@ -18,137 +18,401 @@
 package com.sinch.authNode;
 
 import com.google.inject.assistedinject.Assisted;
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.Deadlines;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.InitiationRateLimiter;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.ProfilePhoneNumberCache;
 import com.sinch.authNode.service.SinchApiService;
-import com.sinch.verification.metadata.factory.DefaultJVMMetadataFactory;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.SinchUnavailableException;
+import com.sinch.authNode.service.Span;
+import com.sinch.authNode.service.VerificationTracer;
 import com.sinch.verification.model.VerificationMethodType;
 import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.process.ApiCallException;
 import com.sun.identity.sm.RequiredValueValidator;
 import org.forgerock.openam.annotations.sm.Attribute;
+import org.forgerock.json.JsonValue;
 import org.forgerock.openam.auth.node.api.*;
 import org.forgerock.openam.core.CoreWrapper;
 import org.forgerock.openam.core.realms.Realm;
 import org.forgerock.openam.sm.annotations.adapters.Password;
+import org.forgerock.util.i18n.PreferredLocales;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.TextOutputCallback;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A node that initiates the verification process for given phone number against Sinch backend.
  */
-@Node.Metadata(outcomeProvider = SingleOutcomeNode.OutcomeProvider.class,
+@Node.Metadata(outcomeProvider = SinchAuthenticationNode.OutcomeProvider.class,
         configClass = SinchAuthenticationNode.Config.class)
 public class SinchAuthenticationNode extends SingleOutcomeNode {
 
     static final String IDENTITY_USERNAME_KEY = "username";
     static final String DEFAULT_IDENTITY_PHONE_ATTRIBUTE = "telephoneNumber";
 
+    /*
+     * Shared state entries of the verification record written by previous versions, now only read as a fallback by
+     * VerificationState.
+     */
     static final String USER_PHONE_KEY = "phoneNumberKey";
     static final String INITIATED_ID_KEY = "initiatedIdKey";
     static final String VER_METHOD_KEY = "verMethodKey";
+    static final String PENDING_INITIATION_KEY = "pendingInitiationKey";
+    static final String VERIFICATION_ATTEMPTS_KEY = "verificationAttemptsKey";
+    static final String INITIATED_APP_KEY = "initiatedAppKey";
+
+    static final String NEXT_OUTCOME_ID = "outcome";
+    static final String UNAVAILABLE_OUTCOME_ID = "unavailable";
+    static final String TIMEOUT_OUTCOME_ID = "timeout";
+    static final String THROTTLED_OUTCOME_ID = "throttled";
 
     private static final String BUNDLE = SinchAuthenticationNode.class.getName();
-    private static final String PLATFORM = "Forgerock";
+    private static final LocalizedPrompts<PhoneNumberPrompts> PROMPTS =
+            new LocalizedPrompts<>(BUNDLE, SinchAuthenticationNode.class.getClassLoader(), PhoneNumberPrompts::new);
+    static final String PHONE_RATE_LIMIT_PREFIX = "phone:";
+    private static final String REALM_RATE_LIMIT_PREFIX = "realm:";
 
     private final Logger logger = LoggerFactory.getLogger(SinchAuthenticationNode.class);
     private final Config config;
     private final Realm realm;
     private final CoreWrapper coreWrapper;
     private final SinchApiService sinchApiService;
+    private final PendingInitiationRegistry pendingInitiations;
+    private final ProfilePhoneNumberCache phoneNumberCache;
+    private final InitiationRateLimiter rateLimiter;
+    private final SinchMetrics metrics;
+    private final VerificationTracer tracer;
+    private final SinchCredentialsCache credentialsCache;
+    private final ClientMetadata clientMetadata;
+    private final InFlightVerificationRegistry inFlightVerifications;
 
     /**
      * Creates the node.
      *
-     * @param config          The service config.
-     * @param realm           The realm of the node.
-     * @param coreWrapper     The coreWrapper instance
-     * @param sinchApiService Service responsible for communication with Sinch Rest API Service.
+     * @param config                The service config.
+     * @param realm                 The realm of the node.
+     * @param coreWrapper           The coreWrapper instance
+     * @param sinchApiService       Service responsible for communication with Sinch Rest API Service.
+     * @param pendingInitiations    Registry of initiations started in background.
+     * @param phoneNumberCache      Cache of phone numbers read from users' profiles.
+     * @param rateLimiter           Limiter of initiations per phone number and per realm.
+     * @param metrics               Metrics the duration and outcome of the node are recorded in.
+     * @param tracer                Tracer the execution of the node is recorded by.
+     * @param credentialsCache      Cache of the credentials of Sinch applications.
+     * @param clientMetadata        Client metadata attached to every initiation.
+     * @param inFlightVerifications Registry the initiated verifications are tracked in.
      */
     @Inject
-    public SinchAuthenticationNode(@Assisted Config config, @Assisted Realm realm, CoreWrapper coreWrapper, SinchApiService sinchApiService) {
+    public SinchAuthenticationNode(@Assisted Config config, @Assisted Realm realm, CoreWrapper coreWrapper, SinchApiService sinchApiService,
+                                   PendingInitiationRegistry pendingInitiations, ProfilePhoneNumberCache phoneNumberCache,
+                                   InitiationRateLimiter rateLimiter, SinchMetrics metrics, VerificationTracer tracer,
+                                   SinchCredentialsCache credentialsCache, ClientMetadata clientMetadata,
+                                   InFlightVerificationRegistry inFlightVerifications) {
         this.config = config;
         this.realm = realm;
         this.coreWrapper = coreWrapper;
         this.sinchApiService = sinchApiService;
+        this.pendingInitiations = pendingInitiations;
+        this.phoneNumberCache = phoneNumberCache;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.credentialsCache = credentialsCache;
+        this.clientMetadata = clientMetadata;
+        this.inFlightVerifications = inFlightVerifications;
     }
 
     @Override
     public Action process(TreeContext context) throws NodeProcessException {
+        long start = System.nanoTime();
+        Span span = tracer.startNodeSpan("sinch.authentication", context.sharedState);
+        Action action = null;
+        try {
+            action = processPhoneNumber(context);
+            return action;
+        } finally {
+            SinchMetrics.NodeOutcome outcome = SinchMetrics.NodeOutcome.of(action);
+            metrics.recordInitiation(realm.asPath(), initiatedMethod(action), outcome, System.nanoTime() - start);
+            span.tag("outcome", outcome.tag()).end();
+        }
+    }
+
+    private VerificationMethodType initiatedMethod(Action action) {
+        String state = action == null || action.sharedState == null ? null :
+                action.sharedState.get(VerificationState.KEY).asString();
+        return state == null ? config.verificationMethod().asSinchMethodType() : VerificationState.method(state);
+    }
+
+    private Action processPhoneNumber(TreeContext context) throws NodeProcessException {
         String phoneNumber = readCallbackPhoneNumber(context);
         if (phoneNumber != null) {
             return processInitiation(context, phoneNumber);
-        } else {
-            phoneNumber = readProfilePhoneNumber(context.sharedState.get(IDENTITY_USERNAME_KEY).asString());
-            return (phoneNumber == null) ?
-                    buildInputPhoneNumberAction(bundleFromContext(context)) :
-                    processInitiation(context, phoneNumber);
         }
+        phoneNumber = readProfilePhoneNumber(context.sharedState.get(IDENTITY_USERNAME_KEY).asString());
+        if (phoneNumber == null) {
+            metrics.recordPhoneNumberFallback(realm.asPath(), SinchMetrics.PhoneNumberFallback.MISSING);
+            return buildInputPhoneNumberAction(context);
+        }
+        return processInitiation(context, phoneNumber);
     }
 
     private Action processInitiation(TreeContext context, String userPhone) throws NodeProcessException {
         String verificationId;
+        SinchCredentials credentials;
         VerificationMethodType verificationMethod = config.verificationMethod().asSinchMethodType();
+        String phoneNumber = PhoneNumberNormalizer.normalize(userPhone);
+        if (phoneNumber == null) {
+            logger.debug("Phone number rejected locally as it is not a valid E.164 number, asking for phone number explicitly.");
+            metrics.recordPhoneNumberFallback(realm.asPath(), SinchMetrics.PhoneNumberFallback.INVALID);
+            return buildInputPhoneNumberAction(context);
+        }
+        if (!isWithinRateLimits(phoneNumber)) {
+            logger.debug("Verification initiation throttled, going to throttled outcome.");
+            return Action.goTo(THROTTLED_OUTCOME_ID).build();
+        }
+        if (config.asyncInitiation()) {
+            return processAsyncInitiation(context, phoneNumber, verificationMethod);
+        }
+        List<String> fallbackMethods = config.fallbackMethods();
+        if (fallbackMethods != null && !fallbackMethods.isEmpty()) {
+            return processCascadingInitiation(context, phoneNumber,
+                    MethodCascade.steps(config.verificationMethod(), config.requestTimeoutMillis(), fallbackMethods));
+        }
+        credentials = selectCredentials();
         try {
-            verificationId = initiateVerification(config.appKey(), String.valueOf(config.appSecret()), formatPhoneNumber(userPhone), verificationMethod).getId();
+            verificationId = initiateVerification(credentials, phoneNumber,
+                    verificationMethod, config.requestTimeoutMillis()).getId();
+        } catch (TimeoutException e) {
+            logger.debug("Verification initiation exceeded its time budget, going to timeout outcome.");
+            return Action.goTo(TIMEOUT_OUTCOME_ID).build();
         } catch (Exception e) {
-            return askForPhoneNumberIfPossibleBasedOnException(e, bundleFromContext(context));
+            return askForPhoneNumberIfPossibleBasedOnException(e, context);
         }
-        logger.debug("Verification initiated with id " + verificationId);
-        return goToNext()
-                .replaceSharedState(context.sharedState.put(INITIATED_ID_KEY, verificationId))
-                .replaceSharedState(context.sharedState.put(USER_PHONE_KEY, userPhone))
-                .replaceSharedState(context.sharedState.put(VER_METHOD_KEY, verificationMethod.toString()))
-                .build();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Verification initiated with id " + verificationId);
+        }
+        return goToNextWithVerificationState(context, verificationId, null, phoneNumber, verificationMethod,
+                credentials);
+    }
+
+    /**
+     * Initiates the verification with the methods of the cascade in turn, moving to the next one when a step fails or
+     * exceeds its time budget. Errors caused by the phone number are not retried. The method of the successful step is
+     * stored in the shared state.
+     */
+    private Action processCascadingInitiation(TreeContext context, String phoneNumber,
+                                              List<MethodCascade.Step> steps) throws NodeProcessException {
+        SinchCredentials credentials = selectCredentials();
+        Exception failure = null;
+        for (int i = 0; i < steps.size(); i++) {
+            MethodCascade.Step step = steps.get(i);
+            try {
+                String verificationId = initiateVerification(credentials, phoneNumber,
+                        step.method, step.budgetMillis).getId();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Verification initiated with id " + verificationId + " method: " + step.method);
+                }
+                return goToNextWithVerificationState(context, verificationId, null, phoneNumber, step.method,
+                        credentials);
+            } catch (Exception e) {
+                failure = e;
+                if (isPhoneFormattingError(e)) {
+                    break;
+                }
+                if (i + 1 < steps.size()) {
+                    logger.debug("Verification initiation with method " + step.method + " failed ("
+                            + e.getClass().getSimpleName() + "), falling back to " + steps.get(i + 1).method);
+                }
+            }
+        }
+        if (failure instanceof TimeoutException) {
+            logger.debug("Verification initiation exceeded its time budget with every method, going to timeout outcome.");
+            return Action.goTo(TIMEOUT_OUTCOME_ID).build();
+        }
+        return askForPhoneNumberIfPossibleBasedOnException(failure, context);
     }
 
-    private InitiationResponseData initiateVerification(String appKey, String appSecret, String phoneNumber, VerificationMethodType verificationMethod) {
-        return sinchApiService.initiateSynchronically(
-                appKey,
-                appSecret,
+    private boolean isWithinRateLimits(String phoneNumber) {
+        if (config.phoneRateLimitPerHour() <= 0 && config.realmRateLimitPerSecond() <= 0) {
+            return true;
+        }
+        String realmPath = realm.asPath();
+        String phoneKey = PHONE_RATE_LIMIT_PREFIX + realmPath + phoneNumber;
+        long phonePeriodMillis = TimeUnit.HOURS.toMillis(1);
+        if (!rateLimiter.tryAcquire(phoneKey, config.phoneRateLimitPerHour(), phonePeriodMillis)) {
+            return false;
+        }
+        if (!rateLimiter.tryAcquire(REALM_RATE_LIMIT_PREFIX + realmPath, config.realmRateLimitPerSecond(),
+                TimeUnit.SECONDS.toMillis(1))) {
+            // the request is throttled by the realm, so it must not count against the user's budget
+            rateLimiter.release(phoneKey, config.phoneRateLimitPerHour(), phonePeriodMillis);
+            return false;
+        }
+        return true;
+    }
+
+    private Action processAsyncInitiation(TreeContext context, String phoneNumber,
+                                          VerificationMethodType verificationMethod) throws NodeProcessException {
+        SinchCredentials credentials = selectCredentials();
+        CompletableFuture<InitiationResponseData> initiation = sinchApiService.initiateAsync(
+                credentials,
                 verificationMethod,
                 phoneNumber,
-                new DefaultJVMMetadataFactory(PLATFORM)
+                clientMetadata
         );
+        if (initiation.isCompletedExceptionally()) {
+            try {
+                initiation.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    return askForPhoneNumberIfPossibleBasedOnException((Exception) cause, context);
+                }
+                throw new NodeProcessException("Unable to initiate the verification process", cause == null ? e : cause);
+            }
+        }
+        String pendingToken = pendingInitiations.register(initiation);
+        logger.debug("Verification initiation started in background");
+        return goToNextWithVerificationState(context, null, pendingToken, phoneNumber, verificationMethod,
+                credentials);
     }
 
-    private Action askForPhoneNumberIfPossibleBasedOnException(Exception exception, ResourceBundle bundle) throws NodeProcessException {
-        if (exception instanceof ApiCallException && ((ApiCallException) exception).getData().getMightBePhoneFormattingError()) {
+    /**
+     * Returns the credentials of the configured application or, if additional applications are configured, of the
+     * one selected by the Sinch service according to the weights and health of the applications.
+     */
+    private SinchCredentials selectCredentials() throws NodeProcessException {
+        SinchCredentials primary = credentialsCache.get(config.appKey(), config.appSecret());
+        List<String> additionalApplications = config.additionalApplications();
+        if (additionalApplications == null || additionalApplications.isEmpty()) {
+            return primary;
+        }
+        try {
+            return sinchApiService.selectApplication(SinchApplications.weighted(primary, config.appWeight(),
+                    additionalApplications, config.additionalAppSecrets(), credentialsCache));
+        } catch (IllegalArgumentException e) {
+            throw new NodeProcessException("Invalid additional applications configuration", e);
+        }
+    }
+
+    /**
+     * Writes the verification record and continues to the next node. The record is a single compact entry, see
+     * {@link VerificationState}.
+     */
+    private Action goToNextWithVerificationState(TreeContext context, String verificationId, String pendingToken,
+                                                 String phoneNumber, VerificationMethodType verificationMethod,
+                                                 SinchCredentials credentials) {
+        JsonValue sharedState = context.sharedState;
+        String appKey = credentials.appKey().equals(config.appKey()) ? null : credentials.appKey();
+        inFlightVerifications.track(verificationId, verificationMethod);
+        new VerificationState(verificationMethod, phoneNumber, verificationId, pendingToken, 0, appKey)
+                .write(sharedState, config.writeLegacyStateEntries());
+        tracer.writeState(sharedState);
+        return goToNext().replaceSharedState(sharedState).build();
+    }
+
+    private InitiationResponseData initiateVerification(SinchCredentials credentials, String phoneNumber,
+                                                        VerificationMethodType verificationMethod, int budgetMillis)
+            throws TimeoutException {
+        if (budgetMillis <= 0) {
+            return sinchApiService.initiateSynchronically(
+                    credentials,
+                    verificationMethod,
+                    phoneNumber,
+                    clientMetadata
+            );
+        }
+        return Deadlines.await(sinchApiService.initiateAsync(
+                credentials,
+                verificationMethod,
+                phoneNumber,
+                clientMetadata
+        ), budgetMillis);
+    }
+
+    private static boolean isPhoneFormattingError(Exception exception) {
+        return exception instanceof ApiCallException && ((ApiCallException) exception).getData().getMightBePhoneFormattingError();
+    }
+
+    private Action askForPhoneNumberIfPossibleBasedOnException(Exception exception, TreeContext context) throws NodeProcessException {
+        if (isPhoneFormattingError(exception)) {
             logger.debug("Exception connected with badly formatted phone number, asking for phone number explicitly.");
-            return buildInputPhoneNumberAction(bundle);
+            metrics.recordPhoneNumberFallback(realm.asPath(), SinchMetrics.PhoneNumberFallback.FORMATTING_ERROR);
+            return buildInputPhoneNumberAction(context);
+        } else if (exception instanceof SinchUnavailableException && config.routeUnavailableToOutcome()) {
+            logger.debug("Sinch Rest API unavailable, going to unavailable outcome. " + exception.getLocalizedMessage());
+            return Action.goTo(UNAVAILABLE_OUTCOME_ID).build();
         } else {
             logger.debug("Unknown exception " + exception.getLocalizedMessage());
             throw new NodeProcessException("Unable to initiate the verification process", exception);
         }
     }
 
-    private Action buildInputPhoneNumberAction(ResourceBundle bundle) {
-        return Action.send(Arrays.asList(
-                new TextOutputCallback(TextOutputCallback.INFORMATION, bundle.getString("callback.phoneNumberText")),
-                new NameCallback(bundle.getString("callback.phoneNumber"))
-        )).build();
+    private Action buildInputPhoneNumberAction(TreeContext context) {
+        PhoneNumberPrompts prompts = PROMPTS.get(context.request.locales);
+        return Action.send(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, prompts.text),
+                new NameCallback(prompts.phoneNumber)
+        ).build();
     }
 
     private String readProfilePhoneNumber(String username) {
+        ProfilePhoneNumberCache.RealmCache realmCache = (username != null && config.profilePhoneCacheTtlSeconds() > 0) ?
+                phoneNumberCache.realm(realm.asPath(), config.identityPhoneNumberAttribute(),
+                        config.profilePhoneCacheMaxSize(), () -> coreWrapper.getAMIdentityRepository(realm.asDN())) :
+                null;
+        if (realmCache != null) {
+            String cachedPhoneNumber = realmCache.get(username);
+            if (cachedPhoneNumber != null) {
+                return cachedPhoneNumber;
+            }
+        }
+        Span span = tracer.startChildSpan("sinch.identityLookup");
         try {
-            String phoneProfileNumber = String.valueOf(coreWrapper.getIdentity(username, realm).getAttributes().get(config.identityPhoneNumberAttribute()));
-            return isProfileNumberValid(phoneProfileNumber) ? phoneProfileNumber : null;
+            Set<?> phoneAttribute = coreWrapper.getIdentity(username, realm).getAttribute(config.identityPhoneNumberAttribute());
+            String phoneProfileNumber = (phoneAttribute == null || phoneAttribute.isEmpty()) ?
+                    null : String.valueOf(phoneAttribute.iterator().next());
+            if (!isProfileNumberValid(phoneProfileNumber)) {
+                return null;
+            }
+            if (realmCache != null) {
+                realmCache.put(username, phoneProfileNumber, TimeUnit.SECONDS.toMillis(config.profilePhoneCacheTtlSeconds()));
+            }
+            return phoneProfileNumber;
         } catch (Exception e) {
             logger.debug("Exception while getting user phone number from profile " + e.getLocalizedMessage());
+            span.tag("error", e.getClass().getSimpleName());
             return null;
+        } finally {
+            span.end();
         }
     }
 
     private String readCallbackPhoneNumber(TreeContext context) {
-        if (context.hasCallbacks() && context.getCallback(NameCallback.class).isPresent()) {
-            return context.getCallback(NameCallback.class).get().getName();
-        } else {
+        if (!context.hasCallbacks()) {
             return null;
         }
+        Optional<NameCallback> callback = context.getCallback(NameCallback.class);
+        return callback.isPresent() ? callback.get().getName() : null;
     }
 
     private boolean isProfileNumberValid(String profileNumber) {
@@ -156,12 +420,15 @@ public class SinchAuthenticationNode extends SingleOutcomeNode {
                 || profileNumber.isBlank() || profileNumber.isEmpty());
     }
 
-    private String formatPhoneNumber(String unformatted) {
-        return "+" + unformatted.replaceAll("[\\D]", "");
-    }
+    private static final class PhoneNumberPrompts {
+
+        private final String text;
+        private final String phoneNumber;
 
-    private ResourceBundle bundleFromContext(TreeContext context) {
-        return context.request.locales.getBundleInPreferredLocale(BUNDLE, getClass().getClassLoader());
+        private PhoneNumberPrompts(ResourceBundle bundle) {
+            this.text = bundle.getString("callback.phoneNumberText");
+            this.phoneNumber = bundle.getString("callback.phoneNumber");
+        }
     }
 
     /**
@@ -199,6 +466,140 @@ public class SinchAuthenticationNode extends SingleOutcomeNode {
         default String identityPhoneNumberAttribute() {
             return DEFAULT_IDENTITY_PHONE_ATTRIBUTE;
         }
+
+        /**
+         * Defines if the verification should be initiated in background, letting the code collector node prompt for
+         * the code without waiting for Sinch. Requires both nodes to be executed by the same AM instance.
+         */
+        @Attribute(order = 5)
+        default boolean asyncInitiation() {
+            return false;
+        }
+
+        /**
+         * Time in seconds a phone number read from user's profile is cached. 0 disables the cache.
+         */
+        @Attribute(order = 6)
+        default int profilePhoneCacheTtlSeconds() {
+            return 0;
+        }
+
+        /**
+         * Maximum number of cached profile phone numbers per realm.
+         */
+        @Attribute(order = 7)
+        default int profilePhoneCacheMaxSize() {
+            return 10000;
+        }
+
+        /**
+         * Defines if calls rejected because Sinch is unavailable (open circuit breaker or too many concurrent calls)
+         * should go to a dedicated outcome instead of failing the tree.
+         */
+        @Attribute(order = 8)
+        default boolean routeUnavailableToOutcome() {
+            return false;
+        }
+
+        /**
+         * Time budget in milliseconds of the call initiating the verification. Calls exceeding it are cancelled and
+         * go to the timeout outcome. 0 disables the budget.
+         */
+        @Attribute(order = 9)
+        default int requestTimeoutMillis() {
+            return 0;
+        }
+
+        /**
+         * Maximum number of initiations per phone number within an hour. Throttled requests go to the throttled
+         * outcome. 0 disables the limit.
+         */
+        @Attribute(order = 10)
+        default int phoneRateLimitPerHour() {
+            return 0;
+        }
+
+        /**
+         * Maximum number of initiations per realm within a second. Throttled requests go to the throttled outcome.
+         * 0 disables the limit.
+         */
+        @Attribute(order = 11)
+        default int realmRateLimitPerSecond() {
+            return 0;
+        }
+
+        /**
+         * Weight of the application configured by the application key and secret, relative to the weights of the
+         * additional applications.
+         */
+        @Attribute(order = 12)
+        default int appWeight() {
+            return 1;
+        }
+
+        /**
+         * Additional Sinch applications initiations are spread across, each in the form {@code appKey[:weight]}. The
+         * code collector node has to be configured with the same applications.
+         */
+        @Attribute(order = 13, validators = {AdditionalApplicationsValidator.class})
+        default List<String> additionalApplications() {
+            return Collections.emptyList();
+        }
+
+        /**
+         * Secrets of the additional applications, separated by commas in the order of the applications.
+         */
+        @Attribute(order = 14)
+        @Password
+        default char[] additionalAppSecrets() {
+            return new char[0];
+        }
+
+        /**
+         * Verification methods tried in order when the initiation with the configured method fails or exceeds its
+         * time budget, each in the form {@code METHOD[:budgetMillis]}, for example {@code SMS:3000}. Without a budget
+         * the request time budget applies. Requires synchronous initiation.
+         */
+        @Attribute(order = 15, validators = {FallbackMethodsValidator.class})
+        default List<String> fallbackMethods() {
+            return Collections.emptyList();
+        }
+
+        /**
+         * Defines if the verification method, phone number and verification ID should also be written to the
+         * {@code verMethodKey}, {@code phoneNumberKey} and {@code initiatedIdKey} shared state entries of previous
+         * versions, for downstream nodes and scripts reading them. Makes the session state larger.
+         */
+        @Attribute(order = 16)
+        default boolean writeLegacyStateEntries() {
+            return false;
+        }
+    }
+
+    /**
+     * Provides the outcomes of the node. The unavailable, timeout and throttled outcomes are present only if enabled in
+     * node's configuration.
+     */
+    public static class OutcomeProvider implements org.forgerock.openam.auth.node.api.OutcomeProvider {
+
+        @Override
+        public List<Outcome> getOutcomes(PreferredLocales locales, JsonValue nodeAttributes) {
+            ResourceBundle bundle = locales.getBundleInPreferredLocale(BUNDLE, OutcomeProvider.class.getClassLoader());
+            List<Outcome> outcomes = new ArrayList<>();
+            outcomes.add(new Outcome(NEXT_OUTCOME_ID, bundle.getString("nextOutcome")));
+            if (nodeAttributes.isNotNull() && nodeAttributes.get("routeUnavailableToOutcome").defaultTo(false).asBoolean()) {
+                outcomes.add(new Outcome(UNAVAILABLE_OUTCOME_ID, bundle.getString("unavailableOutcome")));
+            }
+            if (nodeAttributes.isNotNull() && (nodeAttributes.get("requestTimeoutMillis").defaultTo(0).asInteger() > 0
+                    || nodeAttributes.get("fallbackMethods").size() > 0)) {
+                outcomes.add(new Outcome(TIMEOUT_OUTCOME_ID, bundle.getString("timeoutOutcome")));
+            }
+            if (nodeAttributes.isNotNull() && (nodeAttributes.get("phoneRateLimitPerHour").defaultTo(0).asInteger() > 0
+                    || nodeAttributes.get("realmRateLimitPerSecond").defaultTo(0).asInteger() > 0)) {
+                outcomes.add(new Outcome(THROTTLED_OUTCOME_ID, bundle.getString("throttledOutcome")));
+            }
+            return outcomes;
+        }
     }
 
 }
\ No newline at end of file
@@ -3,109 +3,388 @@ package com.sinch.authNode;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.sinch.authNode.service.Deadlines;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.PendingInitiationRegistry;
 import com.sinch.authNode.service.SinchApiService;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.SinchUnavailableException;
+import com.sinch.authNode.service.Span;
+import com.sinch.authNode.service.VerificationResultStore;
+import com.sinch.authNode.service.VerificationTracer;
 import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.model.verification.VerificationResponseData;
 import com.sinch.verification.model.verification.VerificationStatus;
 import com.sun.identity.sm.RequiredValueValidator;
+import org.forgerock.json.JsonValue;
 import org.forgerock.openam.annotations.sm.Attribute;
 import org.forgerock.openam.auth.node.api.AbstractDecisionNode;
 import org.forgerock.openam.auth.node.api.Action;
 import org.forgerock.openam.auth.node.api.Node;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.authentication.callbacks.PollingWaitCallback;
+import org.forgerock.openam.core.realms.Realm;
 import org.forgerock.openam.sm.annotations.adapters.Password;
+import org.forgerock.util.i18n.PreferredLocales;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.PasswordCallback;
 import javax.security.auth.callback.TextOutputCallback;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
-import static com.sinch.authNode.SinchAuthenticationNode.VER_METHOD_KEY;
 
 /**
  * A node that performs actual verification code check against Sinch backend.
  */
-@Node.Metadata(outcomeProvider = AbstractDecisionNode.OutcomeProvider.class,
+@Node.Metadata(outcomeProvider = SinchCodeCollectorCodeNode.OutcomeProvider.class,
         configClass = SinchCodeCollectorCodeNode.Config.class)
 public class SinchCodeCollectorCodeNode extends AbstractDecisionNode {
 
+    static final String UNAVAILABLE_OUTCOME_ID = "unavailable";
+    static final String TIMEOUT_OUTCOME_ID = "timeout";
+    static final String TOO_MANY_ATTEMPTS_OUTCOME_ID = "tooManyAttempts";
+    static final String RESULT_DEADLINE_KEY = "resultDeadlineKey";
+
     private static final String BUNDLE = SinchCodeCollectorCodeNode.class.getName();
+    private static final long PENDING_INITIATION_TIMEOUT_MILLIS = 30_000;
+    private static final LocalizedPrompts<CodePrompts> PROMPTS =
+            new LocalizedPrompts<>(BUNDLE, SinchCodeCollectorCodeNode.class.getClassLoader(), CodePrompts::new);
 
     private final Logger logger = LoggerFactory.getLogger(SinchCodeCollectorCodeNode.class);
     private final Config config;
+    private final Realm realm;
     private final SinchApiService sinchApiService;
+    private final PendingInitiationRegistry pendingInitiations;
+    private final SinchMetrics metrics;
+    private final VerificationTracer tracer;
+    private final SinchCredentialsCache credentialsCache;
+    private final VerificationResultStore verificationResults;
+    private final InFlightVerificationRegistry inFlightVerifications;
 
     /**
      * Creates the node
      *
-     * @param config          The service config.
-     * @param sinchApiService Service responsible for communication with Sinch Rest API Service.
+     * @param config                The service config.
+     * @param realm                 The realm of the node.
+     * @param sinchApiService       Service responsible for communication with Sinch Rest API Service.
+     * @param pendingInitiations    Registry of initiations started in background by the authentication node.
+     * @param metrics               Metrics the duration and outcome of the node are recorded in.
+     * @param tracer                Tracer the execution of the node is recorded by.
+     * @param credentialsCache      Cache of the credentials of Sinch applications.
+     * @param verificationResults   Results of verifications reported by Sinch callbacks.
+     * @param inFlightVerifications Registry of the verifications codes are collected for.
      */
     @Inject
-    public SinchCodeCollectorCodeNode(@Assisted Config config, SinchApiService sinchApiService) {
+    public SinchCodeCollectorCodeNode(@Assisted Config config, @Assisted Realm realm, SinchApiService sinchApiService,
+                                      PendingInitiationRegistry pendingInitiations, SinchMetrics metrics,
+                                      VerificationTracer tracer, SinchCredentialsCache credentialsCache,
+                                      VerificationResultStore verificationResults,
+                                      InFlightVerificationRegistry inFlightVerifications) {
         this.config = config;
+        this.realm = realm;
         this.sinchApiService = sinchApiService;
+        this.pendingInitiations = pendingInitiations;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.credentialsCache = credentialsCache;
+        this.verificationResults = verificationResults;
+        this.inFlightVerifications = inFlightVerifications;
     }
 
     @Override
-    public Action process(TreeContext treeContext) {
-        String verificationCode = getVerificationCode(treeContext, config.isCodeHidden()).orElse(null);
-        String verificationId = treeContext.getState(SinchAuthenticationNode.INITIATED_ID_KEY).asString();
-        String appKey = config.appKey();
-        String appSecret = String.valueOf(config.appSecret());
-        VerificationMethodType method = VerificationMethodType.valueOf(treeContext.getState(VER_METHOD_KEY).asString());
-        logger.debug("Process of SinchCodeCollectorCodeNode called. Verification code: " + verificationCode +
-                " verificationId: " + verificationId + "appKey" + appKey + " method: " + method);
+    public Action process(TreeContext treeContext) throws NodeProcessException {
+        long start = System.nanoTime();
+        VerificationState state = VerificationState.read(treeContext.sharedState);
+        if (state == null) {
+            throw new NodeProcessException("No verification state found, the Sinch authentication node has to be "
+                    + "executed before the code collector node");
+        }
+        VerificationMethodType method = state.method();
+        Span span = tracer.startNodeSpan("sinch.codeCollector", treeContext.sharedState);
+        Action action = null;
+        try {
+            action = processCode(treeContext, state);
+            return action;
+        } finally {
+            SinchMetrics.NodeOutcome outcome = SinchMetrics.NodeOutcome.of(action);
+            metrics.recordVerification(realm.asPath(), method, outcome, System.nanoTime() - start);
+            span.tag("outcome", outcome.tag()).end();
+        }
+    }
+
+    private Action processCode(TreeContext treeContext, VerificationState state) throws NodeProcessException {
+        VerificationMethodType method = state.method();
+        if (config.awaitResultOutOfBand() && isVerifiedOutOfBand(method)) {
+            return awaitResult(treeContext, state);
+        }
+        boolean isCodeHidden = config.isCodeHidden();
+        String verificationCode = getVerificationCode(treeContext, isCodeHidden);
         if (verificationCode == null) {
-            return collectCode(treeContext, config.isCodeHidden());
+            Action.ActionBuilder resolved = resolveFromReportedResult(state);
+            return resolved != null ? resolved.build() : collectCode(treeContext, isCodeHidden);
+        }
+        String verificationId = state.verificationId();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Verification code submitted for verificationId: " + verificationId + " method: " + method);
+        }
+        tracer.recordWaitSpan("sinch.userInput", treeContext.sharedState);
+        int attempts = Math.max(state.attempts(), inFlightVerifications.attempts(verificationId));
+        if (config.maxAttempts() > 0 && attempts >= config.maxAttempts()) {
+            logger.debug("Maximum number of verification attempts reached, going to too many attempts outcome.");
+            return Action.goTo(TOO_MANY_ATTEMPTS_OUTCOME_ID).build();
+        }
+        state.attempted();
+        SinchCredentials credentials;
+        try {
+            credentials = SinchApplications.find(state.appKey(), credentialsCache.get(config.appKey(),
+                    config.appSecret()), config.additionalApplications(), config.additionalAppSecrets(),
+                    credentialsCache);
+        } catch (IllegalArgumentException e) {
+            throw new NodeProcessException("Invalid additional applications configuration", e);
+        }
+        Action.ActionBuilder action;
+        if (!VerificationCodeFormat.isValid(verificationCode, method)) {
+            logger.debug("Verification code rejected locally as it does not match the format of method " + method);
+            action = goTo(false);
+        } else if (verificationId == null) {
+            action = executePendingCodeVerificationCheck(state, credentials, verificationCode);
         } else {
-            return executeCodeVerificationCheck(appKey, appSecret, verificationId, method, verificationCode);
+            action = executeCodeVerificationCheck(credentials, verificationId, method, verificationCode);
+        }
+        state.write(treeContext.sharedState, config.writeLegacyStateEntries());
+        tracer.writeState(treeContext.sharedState);
+        return action.replaceSharedState(treeContext.sharedState).build();
+    }
+
+    private static boolean isVerifiedOutOfBand(VerificationMethodType method) {
+        return method == VerificationMethodType.FLASHCALL || method == VerificationMethodType.CALLOUT;
+    }
+
+    /**
+     * Waits for the result of a verification completed out of band (the call is answered on the user's device and
+     * reported to Sinch by its SDK) without holding a thread: a polling wait callback is sent, which the client
+     * submits on its own once the wait time has elapsed, and on each submission the result reported by Sinch callback
+     * is looked up. The callback is sent again until the result arrives or the deadline stored in the shared state
+     * passes.
+     */
+    private Action awaitResult(TreeContext treeContext, VerificationState state) {
+        String verificationId = state.verificationId();
+        if (verificationId == null) {
+            try {
+                verificationId = awaitPendingInitiation(state.pendingToken());
+            } catch (TimeoutException e) {
+                logger.debug("Verification initiation exceeded its time budget");
+                return goToTimeout(treeContext, state);
+            }
+            if (verificationId == null) {
+                return finishAwaiting(treeContext, state, goTo(false));
+            }
+            state.initiated(verificationId);
+        }
+        long now = System.currentTimeMillis();
+        JsonValue deadlineValue = treeContext.sharedState.get(RESULT_DEADLINE_KEY);
+        if (!treeContext.getCallback(PollingWaitCallback.class).isPresent() || deadlineValue.isNull()) {
+            long deadline = now + config.awaitResultTimeoutMillis();
+            treeContext.sharedState.put(RESULT_DEADLINE_KEY, deadline);
+            return poll(treeContext, state, deadline - now);
+        }
+        VerificationStatus reportedStatus = verificationResults.take(verificationId);
+        if (reportedStatus != null) {
+            logger.debug("Out of band verification resolved from the result reported by Sinch callback");
+            inFlightVerifications.complete(verificationId, reportedStatus);
+            return finishAwaiting(treeContext, state, goTo(reportedStatus == VerificationStatus.SUCCESSFUL));
+        }
+        long deadline = deadlineValue.asLong();
+        if (now >= deadline) {
+            logger.debug("No result of out of band verification reported before the deadline");
+            return goToTimeout(treeContext, state);
+        }
+        return poll(treeContext, state, deadline - now);
+    }
+
+    /**
+     * Sends the polling wait callback, asking the client to submit it again after the poll interval or, if sooner,
+     * when the deadline passes, so the timeout outcome is reached without the user's involvement.
+     */
+    private Action poll(TreeContext treeContext, VerificationState state, long remainingMillis) {
+        long waitTime = Math.max(1, Math.min(config.awaitResultPollIntervalMillis(), remainingMillis));
+        PollingWaitCallback callback = PollingWaitCallback.makeCallback()
+                .withWaitTime(String.valueOf(waitTime))
+                .withMessage(PROMPTS.get(treeContext.request.locales).awaitResultPrompt)
+                .build();
+        state.write(treeContext.sharedState, config.writeLegacyStateEntries());
+        tracer.writeState(treeContext.sharedState);
+        return Action.send(callback).replaceSharedState(treeContext.sharedState).build();
+    }
+
+    private Action goToTimeout(TreeContext treeContext, VerificationState state) {
+        return finishAwaiting(treeContext, state, Action.goTo(TIMEOUT_OUTCOME_ID));
+    }
+
+    private Action finishAwaiting(TreeContext treeContext, VerificationState state, Action.ActionBuilder action) {
+        treeContext.sharedState.remove(RESULT_DEADLINE_KEY);
+        state.write(treeContext.sharedState, config.writeLegacyStateEntries());
+        tracer.writeState(treeContext.sharedState);
+        return action.replaceSharedState(treeContext.sharedState).build();
+    }
+
+    private Action.ActionBuilder executePendingCodeVerificationCheck(VerificationState state, SinchCredentials credentials,
+                                                                     String verificationCode) {
+        String verificationId;
+        try {
+            verificationId = awaitPendingInitiation(state.pendingToken());
+        } catch (TimeoutException e) {
+            logger.debug("Verification initiation exceeded its time budget");
+            return goToTimeoutIfEnabled();
+        }
+        if (verificationId == null) {
+            return goTo(false);
         }
+        state.initiated(verificationId);
+        return executeCodeVerificationCheck(credentials, verificationId, state.method(), verificationCode);
     }
 
-    private Optional<String> getVerificationCode(TreeContext treeContext, boolean isCodeHidden) {
+    private String awaitPendingInitiation(String pendingToken) throws TimeoutException {
+        CompletableFuture<InitiationResponseData> initiation = pendingInitiations.claim(pendingToken);
+        if (initiation == null) {
+            logger.debug("No pending initiation found for the verification");
+            return null;
+        }
+        Span span = tracer.startChildSpan("sinch.pendingInitiation");
+        try {
+            return Deadlines.await(initiation, config.requestTimeoutMillis() > 0 ?
+                    config.requestTimeoutMillis() : PENDING_INITIATION_TIMEOUT_MILLIS).getId();
+        } catch (RuntimeException e) {
+            logger.debug("Exception while waiting for verification initiation " + e.getLocalizedMessage());
+            span.tag("error", e.getClass().getSimpleName());
+            return null;
+        } finally {
+            span.end();
+        }
+    }
+
+    private String getVerificationCode(TreeContext treeContext, boolean isCodeHidden) {
+        if (!treeContext.hasCallbacks()) {
+            return null;
+        }
         if (isCodeHidden) {
-            return treeContext.getCallback(PasswordCallback.class).map(PasswordCallback::getPassword).map(String::new);
-        } else {
-            return treeContext.getCallback(NameCallback.class).map(NameCallback::getName);
+            Optional<PasswordCallback> callback = treeContext.getCallback(PasswordCallback.class);
+            char[] password = callback.isPresent() ? callback.get().getPassword() : null;
+            return password == null ? null : new String(password);
         }
+        Optional<NameCallback> callback = treeContext.getCallback(NameCallback.class);
+        return callback.isPresent() ? callback.get().getName() : null;
     }
 
     private Action collectCode(TreeContext treeContext, boolean isHidden) {
-        ResourceBundle bundle = treeContext.request.locales.getBundleInPreferredLocale(BUNDLE, getClass().getClassLoader());
+        CodePrompts prompts = PROMPTS.get(treeContext.request.locales);
+        return Action.send(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, prompts.prompt),
+                isHidden ? new PasswordCallback(prompts.hint, false) : new NameCallback(prompts.hint)
+        ).build();
+    }
 
-        List<Callback> callbacks = new ArrayList<>() {{
-            add(new TextOutputCallback(TextOutputCallback.INFORMATION, bundle.getString("callback.collectCodePrompt")));
-        }};
-        if (isHidden) {
-            callbacks.add(new PasswordCallback(bundle.getString("callback.codeHint"), false));
-        } else {
-            callbacks.add(new NameCallback((bundle.getString("callback.codeHint"))));
+    /**
+     * Resolves a verification, before asking for its code, from the result reported by Sinch callback: verifications
+     * completed on the user's device succeed and the ones terminated by Sinch fail without a code being collected.
+     * A code submitted by the user is never approved from a reported result, it is always checked by Sinch.
+     *
+     * @return The action or null if the code has to be collected.
+     */
+    private Action.ActionBuilder resolveFromReportedResult(VerificationState state) {
+        if (verificationResults.isEmpty()) {
+            return null;
+        }
+        String verificationId = state.verificationId();
+        if (verificationId == null) {
+            return null;
+        }
+        VerificationStatus reportedStatus = verificationResults.take(verificationId);
+        if (reportedStatus != VerificationStatus.SUCCESSFUL && !isTerminatedBySinch(reportedStatus)) {
+            return null;
         }
-        return Action.send(callbacks).build();
+        logger.debug("Verification resolved from the result reported by Sinch callback without collecting the code");
+        inFlightVerifications.complete(verificationId, reportedStatus);
+        return goTo(reportedStatus == VerificationStatus.SUCCESSFUL);
     }
 
-    private Action executeCodeVerificationCheck(String appKey, String appSecret, String verificationId, VerificationMethodType method, String verificationCode) {
+    private static boolean isTerminatedBySinch(VerificationStatus status) {
+        return status == VerificationStatus.DENIED || status == VerificationStatus.ABORTED;
+    }
+
+    private Action.ActionBuilder executeCodeVerificationCheck(SinchCredentials credentials, String verificationId, VerificationMethodType method, String verificationCode) {
+        InFlightVerificationRegistry.Status inFlightStatus = inFlightVerifications.track(verificationId, method);
+        if (inFlightStatus == InFlightVerificationRegistry.Status.EXPIRED
+                || inFlightStatus == InFlightVerificationRegistry.Status.COMPLETED) {
+            logger.debug("Verification code rejected locally as verificationId: " + verificationId + " is " + inFlightStatus);
+            return goTo(false);
+        }
+        inFlightVerifications.recordAttempt(verificationId);
+        VerificationStatus reportedStatus = verificationResults.take(verificationId);
+        if (isTerminatedBySinch(reportedStatus)) {
+            logger.debug("Verification code rejected locally as Sinch callback reported the verification " + reportedStatus);
+            inFlightVerifications.complete(verificationId, reportedStatus);
+            return goTo(false);
+        }
         boolean isVerifiedSuccessfully;
         try {
-            VerificationResponseData verificationResponseData = sinchApiService.verifySynchronicallyById(
-                    appKey,
-                    appSecret,
-                    verificationId,
-                    verificationCode,
-                    method);
+            VerificationResponseData verificationResponseData = verify(credentials, verificationId, method, verificationCode);
+            inFlightVerifications.complete(verificationId, verificationResponseData.getStatus());
             isVerifiedSuccessfully = verificationResponseData.getStatus() == VerificationStatus.SUCCESSFUL;
+        } catch (TimeoutException e) {
+            logger.debug("Verification exceeded its time budget");
+            return goToTimeoutIfEnabled();
+        } catch (SinchUnavailableException e) {
+            logger.debug("Sinch Rest API unavailable " + e.getLocalizedMessage());
+            if (config.routeUnavailableToOutcome()) {
+                return Action.goTo(UNAVAILABLE_OUTCOME_ID);
+            }
+            isVerifiedSuccessfully = false;
         } catch (Exception e) {
             logger.debug("Exception while checking verification code " + e.getLocalizedMessage());
             isVerifiedSuccessfully = false;
         }
-        return goTo(isVerifiedSuccessfully).build();
+        return goTo(isVerifiedSuccessfully);
+    }
+
+    private VerificationResponseData verify(SinchCredentials credentials, String verificationId, VerificationMethodType method,
+                                            String verificationCode) throws TimeoutException {
+        if (config.requestTimeoutMillis() <= 0) {
+            return sinchApiService.verifySynchronicallyById(credentials, verificationId, verificationCode, method);
+        }
+        CompletableFuture<VerificationResponseData> verification = config.hedgeVerification() ?
+                sinchApiService.verifyByIdHedgedAsync(credentials, verificationId, verificationCode, method) :
+                sinchApiService.verifyByIdAsync(credentials, verificationId, verificationCode, method);
+        return Deadlines.await(verification, config.requestTimeoutMillis());
+    }
+
+    private Action.ActionBuilder goToTimeoutIfEnabled() {
+        return config.requestTimeoutMillis() > 0 ? Action.goTo(TIMEOUT_OUTCOME_ID) : goTo(false);
+    }
+
+    private static final class CodePrompts {
+
+        private final String prompt;
+        private final String hint;
+        private final String awaitResultPrompt;
+
+        private CodePrompts(ResourceBundle bundle) {
+            this.prompt = bundle.getString("callback.collectCodePrompt");
+            this.hint = bundle.getString("callback.codeHint");
+            this.awaitResultPrompt = bundle.getString("callback.awaitResultPrompt");
+        }
     }
 
     /**
@@ -136,5 +415,123 @@ public class SinchCodeCollectorCodeNode extends AbstractDecisionNode {
             return true;
         }
 
+        /**
+         * Defines if calls rejected because Sinch is unavailable (open circuit breaker or too many concurrent calls)
+         * should go to a dedicated outcome instead of the false outcome.
+         */
+        @Attribute(order = 4)
+        default boolean routeUnavailableToOutcome() {
+            return false;
+        }
+
+        /**
+         * Time budget in milliseconds of the verification call. Calls exceeding it are cancelled and go to the
+         * timeout outcome. 0 disables the budget.
+         */
+        @Attribute(order = 5)
+        default int requestTimeoutMillis() {
+            return 0;
+        }
+
+        /**
+         * Defines if a second, hedged verification request should be sent when the first one is slower than the
+         * recently observed 95th percentile. Requires the time budget to be set.
+         */
+        @Attribute(order = 6)
+        default boolean hedgeVerification() {
+            return false;
+        }
+
+        /**
+         * Maximum number of codes which may be submitted for a single verification. Further submissions go to the
+         * too many attempts outcome without calling Sinch. 0 disables the limit.
+         */
+        @Attribute(order = 7)
+        default int maxAttempts() {
+            return 0;
+        }
+
+        /**
+         * Defines if flashcall and callout verifications, which are completed on the user's device, should be awaited
+         * with a polling wait callback instead of collecting a code. The result is taken from Sinch callbacks, so the
+         * callback receiver has to be enabled.
+         */
+        @Attribute(order = 8)
+        default boolean awaitResultOutOfBand() {
+            return false;
+        }
+
+        /**
+         * Time in milliseconds the result of an out of band verification is awaited for before going to the timeout
+         * outcome.
+         */
+        @Attribute(order = 9)
+        default int awaitResultTimeoutMillis() {
+            return 120_000;
+        }
+
+        /**
+         * Additional Sinch applications, each in the form {@code appKey[:weight]}, the authentication node may
+         * initiate verifications with. Codes are verified with the application the verification was initiated with.
+         */
+        @Attribute(order = 10, validators = {AdditionalApplicationsValidator.class})
+        default List<String> additionalApplications() {
+            return Collections.emptyList();
+        }
+
+        /**
+         * Secrets of the additional applications, separated by commas in the order of the applications.
+         */
+        @Attribute(order = 11)
+        @Password
+        default char[] additionalAppSecrets() {
+            return new char[0];
+        }
+
+        /**
+         * Defines if the verification method, phone number and verification ID should also be written to the
+         * {@code verMethodKey}, {@code phoneNumberKey} and {@code initiatedIdKey} shared state entries of previous
+         * versions, for downstream nodes and scripts reading them. Makes the session state larger.
+         */
+        @Attribute(order = 12)
+        default boolean writeLegacyStateEntries() {
+            return false;
+        }
+
+        /**
+         * Time in milliseconds the client waits before submitting the polling wait callback again while the result
+         * of an out of band verification is awaited.
+         */
+        @Attribute(order = 13)
+        default int awaitResultPollIntervalMillis() {
+            return 2_000;
+        }
+
+    }
+
+    /**
+     * Provides the outcomes of the node. The unavailable, timeout and too many attempts outcomes are present only if
+     * enabled in node's configuration.
+     */
+    public static class OutcomeProvider implements org.forgerock.openam.auth.node.api.OutcomeProvider {
+
+        @Override
+        public List<Outcome> getOutcomes(PreferredLocales locales, JsonValue nodeAttributes) {
+            ResourceBundle bundle = locales.getBundleInPreferredLocale(BUNDLE, OutcomeProvider.class.getClassLoader());
+            List<Outcome> outcomes = new ArrayList<>();
+            outcomes.add(new Outcome(TRUE_OUTCOME_ID, bundle.getString("trueOutcome")));
+            outcomes.add(new Outcome(FALSE_OUTCOME_ID, bundle.getString("falseOutcome")));
+            if (nodeAttributes.isNotNull() && nodeAttributes.get("routeUnavailableToOutcome").defaultTo(false).asBoolean()) {
+                outcomes.add(new Outcome(UNAVAILABLE_OUTCOME_ID, bundle.getString("unavailableOutcome")));
+            }
+            if (nodeAttributes.isNotNull() && (nodeAttributes.get("requestTimeoutMillis").defaultTo(0).asInteger() > 0
+                    || nodeAttributes.get("awaitResultOutOfBand").defaultTo(false).asBoolean())) {
+                outcomes.add(new Outcome(TIMEOUT_OUTCOME_ID, bundle.getString("timeoutOutcome")));
+            }
+            if (nodeAttributes.isNotNull() && nodeAttributes.get("maxAttempts").defaultTo(0).asInteger() > 0) {
+                outcomes.add(new Outcome(TOO_MANY_ATTEMPTS_OUTCOME_ID, bundle.getString("tooManyAttemptsOutcome")));
+            }
+            return outcomes;
+        }
     }
 }
@@ -0,0 +1,55 @@
+package com.sinch.authNode;
+
+import com.sinch.verification.model.VerificationMethodType;
+
+/**
+ * Local check of the format of codes entered by users, so input which can never be a valid code is rejected without
+ * calling Sinch. SMS and callout codes consist of digits only, while flash call verification is confirmed with the
+ * phone number of the incoming call (CLI), optionally prefixed with '+'.
+ */
+final class VerificationCodeFormat {
+
+    static final int MIN_CODE_LENGTH = 4;
+    static final int MAX_CODE_LENGTH = 10;
+    static final int MIN_CLI_LENGTH = 6;
+    static final int MAX_CLI_LENGTH = 15;
+
+    private VerificationCodeFormat() {
+    }
+
+    /**
+     * Checks if given code may be a valid code of the verification method.
+     *
+     * @param code   Code entered by the user.
+     * @param method Method of the verification.
+     * @return True if the code has the format expected for the method.
+     */
+    static boolean isValid(String code, VerificationMethodType method) {
+        if (code == null) {
+            return false;
+        }
+        switch (method) {
+            case SMS:
+            case CALLOUT:
+                return isDigits(code, 0, MIN_CODE_LENGTH, MAX_CODE_LENGTH);
+            case FLASHCALL:
+                return isDigits(code, !code.isEmpty() && code.charAt(0) == '+' ? 1 : 0, MIN_CLI_LENGTH, MAX_CLI_LENGTH);
+            default:
+                return !code.isEmpty();
+        }
+    }
+
+    private static boolean isDigits(String code, int start, int minLength, int maxLength) {
+        int length = code.length() - start;
+        if (length < minLength || length > maxLength) {
+            return false;
+        }
+        for (int i = start; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
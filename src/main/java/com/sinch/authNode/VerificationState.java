@@ -0,0 +1,549 @@
+package com.sinch.authNode;
+
+import com.sinch.verification.model.VerificationMethodType;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.JsonValueException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static com.sinch.authNode.SinchAuthenticationNode.INITIATED_APP_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.INITIATED_ID_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.PENDING_INITIATION_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.USER_PHONE_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.VER_METHOD_KEY;
+
+/**
+ * Verification record handed from the authentication node to the code collector node through the shared state. With
+ * client-side sessions the shared state travels in the session token on every request, so the record is stored as a
+ * single compact entry under {@link #KEY} instead of one entry per field: a base64url string of a version byte, a flags
+ * byte, the ordinal of the verification method and the number of attempts, followed by the phone number, the
+ * verification ID (or the token of the pending initiation) and, for additional applications, the application key.
+ * Strings of lower case hexadecimal digits, such as phone numbers, are packed two digits per byte and UUIDs take 16
+ * bytes; other strings are written as UTF-8.
+ * <p>
+ * The layout of the record is checked when it is read, so a malformed entry is rejected up front, but its strings
+ * are decoded on first use and fields which are not modified are copied as they are when the record is written back,
+ * so the code collector decodes only what it uses. Records written by previous versions of the authentication node as
+ * separate entries are still read. The method, phone number and verification ID are written to those public entries
+ * too only if a node is configured to, for downstream nodes and scripts reading them.
+ */
+final class VerificationState {
+
+    static final String KEY = "sinchVerification";
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationState.class);
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 3;
+    private static final int FLAG_PENDING = 1;
+    private static final int FLAG_APPLICATION = 2;
+    private static final int STRING_UTF8 = 0;
+    private static final int STRING_HEX = 1;
+    private static final int STRING_PLUS_HEX = 2;
+    private static final int STRING_UUID = 3;
+    private static final int UUID_LENGTH = 36;
+    private static final int UUID_BYTES = 16;
+    private static final VerificationMethodType[] METHODS = VerificationMethodType.values();
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] LEGACY_KEYS = {INITIATED_ID_KEY, PENDING_INITIATION_KEY, USER_PHONE_KEY,
+            VER_METHOD_KEY, VERIFICATION_ATTEMPTS_KEY, INITIATED_APP_KEY};
+
+    private final VerificationMethodType method;
+    private String encoded;
+    private boolean decoded;
+    private byte[] bytes;
+    private int phoneNumberStart;
+    private int idStart;
+    private int appKeyStart;
+    private String phoneNumber;
+    private boolean phoneNumberDecoded;
+    private String appKey;
+    private boolean appKeyDecoded;
+    private String verificationId;
+    private String pendingToken;
+    private int attempts;
+
+    /**
+     * Creates a record.
+     *
+     * @param method         Verification method.
+     * @param phoneNumber    Phone number being verified.
+     * @param verificationId ID of the verification or null if its initiation is pending.
+     * @param pendingToken   Token of the pending initiation or null if the verification is initiated.
+     * @param attempts       Number of codes already submitted.
+     * @param appKey         Key of the application the verification was initiated with or null for the configured
+     *                       one.
+     */
+    VerificationState(VerificationMethodType method, String phoneNumber, String verificationId, String pendingToken,
+                      int attempts, String appKey) {
+        this.method = method;
+        this.phoneNumber = phoneNumber;
+        this.verificationId = verificationId;
+        this.pendingToken = pendingToken;
+        this.attempts = attempts;
+        this.appKey = appKey;
+        this.decoded = true;
+        this.phoneNumberDecoded = true;
+        this.appKeyDecoded = true;
+    }
+
+    private VerificationState(String encoded) {
+        this.method = method(encoded);
+        this.encoded = encoded;
+        this.bytes = DECODER.decode(encoded);
+        int[] position = {HEADER_BYTES};
+        this.attempts = readVarInt(bytes, position);
+        this.phoneNumberStart = position[0];
+        this.idStart = phoneNumberStart + segmentLength(bytes, phoneNumberStart);
+        int end = idStart + segmentLength(bytes, idStart);
+        this.appKeyStart = (bytes[1] & FLAG_APPLICATION) != 0 ? end : -1;
+        if (appKeyStart >= 0) {
+            end += segmentLength(bytes, appKeyStart);
+        }
+        if (end != bytes.length) {
+            throw new IllegalArgumentException("Malformed verification state");
+        }
+    }
+
+    VerificationMethodType method() {
+        return method;
+    }
+
+    String phoneNumber() {
+        decode();
+        if (!phoneNumberDecoded) {
+            phoneNumber = readString(bytes, phoneNumberStart);
+            phoneNumberDecoded = true;
+        }
+        return phoneNumber;
+    }
+
+    String verificationId() {
+        decode();
+        return verificationId;
+    }
+
+    String pendingToken() {
+        decode();
+        return pendingToken;
+    }
+
+    int attempts() {
+        return attempts;
+    }
+
+    String appKey() {
+        decode();
+        if (!appKeyDecoded) {
+            appKey = appKeyStart < 0 ? null : readString(bytes, appKeyStart);
+            appKeyDecoded = true;
+        }
+        return appKey;
+    }
+
+    /**
+     * Records the ID the pending initiation completed with.
+     *
+     * @param verificationId ID of the verification.
+     */
+    void initiated(String verificationId) {
+        decode();
+        this.verificationId = verificationId;
+        this.pendingToken = null;
+        this.encoded = null;
+    }
+
+    /**
+     * Records a submitted code.
+     */
+    void attempted() {
+        decode();
+        attempts++;
+        encoded = null;
+    }
+
+    /**
+     * Reads the record from the shared state, falling back to the separate entries written by previous versions if
+     * the record is missing or malformed.
+     *
+     * @param sharedState Shared state of the tree.
+     * @return The record or null if the shared state holds none.
+     */
+    static VerificationState read(JsonValue sharedState) {
+        String encoded = sharedState.get(KEY).asString();
+        if (encoded != null) {
+            try {
+                return new VerificationState(encoded);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unreadable verification state, falling back to legacy entries " + e.getLocalizedMessage());
+            }
+        }
+        String method = sharedState.get(VER_METHOD_KEY).asString();
+        if (method == null) {
+            return null;
+        }
+        JsonValue attempts = sharedState.get(VERIFICATION_ATTEMPTS_KEY);
+        try {
+            return new VerificationState(VerificationMethodType.valueOf(method),
+                    sharedState.get(USER_PHONE_KEY).asString(), sharedState.get(INITIATED_ID_KEY).asString(),
+                    sharedState.get(PENDING_INITIATION_KEY).asString(), attempts.isNull() ? 0 : attempts.asInteger(),
+                    sharedState.get(INITIATED_APP_KEY).asString());
+        } catch (IllegalArgumentException | JsonValueException e) {
+            logger.warn("Unreadable legacy verification state " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the record to the shared state as a single entry, replacing any legacy entries.
+     *
+     * @param sharedState   Shared state of the tree.
+     * @param publicEntries True to also write the public {@code verMethodKey}, {@code phoneNumberKey} and
+     *                      {@code initiatedIdKey} entries of previous versions.
+     */
+    void write(JsonValue sharedState, boolean publicEntries) {
+        sharedState.put(KEY, encode());
+        for (String key : LEGACY_KEYS) {
+            if (sharedState.isDefined(key)) {
+                sharedState.remove(key);
+            }
+        }
+        if (publicEntries) {
+            writePublicEntries(sharedState);
+        }
+    }
+
+    private void writePublicEntries(JsonValue sharedState) {
+        sharedState.put(VER_METHOD_KEY, method.name());
+        sharedState.put(USER_PHONE_KEY, phoneNumber());
+        String id = verificationId();
+        if (id != null) {
+            sharedState.put(INITIATED_ID_KEY, id);
+        }
+    }
+
+    /**
+     * Reads the verification method from the first characters of an encoded record.
+     *
+     * @param encoded Encoded record.
+     * @return The verification method.
+     * @throws IllegalArgumentException if the record is malformed.
+     */
+    static VerificationMethodType method(String encoded) {
+        if (encoded.length() < 4) {
+            throw new IllegalArgumentException("Truncated verification state");
+        }
+        int first = base64Value(encoded.charAt(0)) << 18 | base64Value(encoded.charAt(1)) << 12
+                | base64Value(encoded.charAt(2)) << 6 | base64Value(encoded.charAt(3));
+        if (first >>> 16 != VERSION) {
+            throw new IllegalArgumentException("Unsupported verification state");
+        }
+        return methodOf(first & 0xFF);
+    }
+
+    String encode() {
+        if (encoded != null) {
+            return encoded;
+        }
+        String id = pendingToken != null ? pendingToken : verificationId;
+        String application = appKeyDecoded ? appKey : null;
+        boolean hasApplication = appKeyDecoded ? appKey != null : appKeyStart >= 0;
+        int phoneNumberLength = phoneNumberDecoded ? stringLength(phoneNumber) :
+                segmentLength(bytes, phoneNumberStart);
+        int appKeyLength = !hasApplication ? 0 : appKeyDecoded ? stringLength(application) :
+                segmentLength(bytes, appKeyStart);
+        byte[] out = new byte[HEADER_BYTES + varIntLength(attempts) + phoneNumberLength + stringLength(id)
+                + appKeyLength];
+        out[0] = VERSION;
+        out[1] = (byte) ((pendingToken != null ? FLAG_PENDING : 0) | (hasApplication ? FLAG_APPLICATION : 0));
+        out[2] = (byte) method.ordinal();
+        int position = writeVarInt(out, HEADER_BYTES, attempts);
+        if (phoneNumberDecoded) {
+            position = writeString(out, position, phoneNumber);
+        } else {
+            System.arraycopy(bytes, phoneNumberStart, out, position, phoneNumberLength);
+            position += phoneNumberLength;
+        }
+        position = writeString(out, position, id);
+        if (hasApplication) {
+            if (appKeyDecoded) {
+                writeString(out, position, application);
+            } else {
+                System.arraycopy(bytes, appKeyStart, out, position, appKeyLength);
+            }
+        }
+        encoded = ENCODER.encodeToString(out);
+        return encoded;
+    }
+
+    static VerificationState decode(String encoded) {
+        VerificationState state = new VerificationState(encoded);
+        state.decode();
+        return state;
+    }
+
+    private void decode() {
+        if (decoded) {
+            return;
+        }
+        String id = readString(bytes, idStart);
+        if ((bytes[1] & FLAG_PENDING) != 0) {
+            pendingToken = id;
+        } else {
+            verificationId = id;
+        }
+        decoded = true;
+    }
+
+    private static VerificationMethodType methodOf(int ordinal) {
+        if (ordinal >= METHODS.length) {
+            throw new IllegalArgumentException("Unknown verification method " + ordinal);
+        }
+        return METHODS[ordinal];
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '-') {
+            return 62;
+        }
+        if (c == '_') {
+            return 63;
+        }
+        throw new IllegalArgumentException("Illegal character in verification state");
+    }
+
+    /*
+     * A string is preceded by a variable length header holding its length and the way it is packed in the two lowest
+     * bits. A null string is written as an empty one.
+     */
+
+    private static int stringLength(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int kind = stringKind(value);
+        int length = value.length();
+        switch (kind) {
+            case STRING_UUID:
+                return 1 + UUID_BYTES;
+            case STRING_HEX:
+                return varIntLength(length << 2) + (length + 1) / 2;
+            case STRING_PLUS_HEX:
+                return varIntLength((length - 1) << 2) + length / 2;
+            default:
+                int utf8Length = utf8Length(value);
+                return varIntLength(utf8Length << 2) + utf8Length;
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int writeString(byte[] out, int position, String value) {
+        if (value == null) {
+            return writeVarInt(out, position, STRING_HEX);
+        }
+        switch (stringKind(value)) {
+            case STRING_UUID:
+                return writeHex(out, writeVarInt(out, position, STRING_UUID), value, 0);
+            case STRING_HEX:
+                return writeHex(out, writeVarInt(out, position, value.length() << 2 | STRING_HEX), value, 0);
+            case STRING_PLUS_HEX:
+                return writeHex(out, writeVarInt(out, position, (value.length() - 1) << 2 | STRING_PLUS_HEX),
+                        value, 1);
+            default:
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                int start = writeVarInt(out, position, utf8.length << 2 | STRING_UTF8);
+                System.arraycopy(utf8, 0, out, start, utf8.length);
+                return start + utf8.length;
+        }
+    }
+
+    private static int stringKind(String value) {
+        if (isUuid(value)) {
+            return STRING_UUID;
+        }
+        if (isHex(value, 0)) {
+            return STRING_HEX;
+        }
+        if (value.length() > 1 && value.charAt(0) == '+' && isHex(value, 1)) {
+            return STRING_PLUS_HEX;
+        }
+        return STRING_UTF8;
+    }
+
+    /**
+     * Packs the hexadecimal digits of a string from a given index two per byte, skipping the dashes of UUIDs.
+     */
+    private static int writeHex(byte[] out, int position, String value, int from) {
+        int high = -1;
+        int current = position;
+        for (int i = from; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (high < 0) {
+                high = digit;
+            } else {
+                out[current++] = (byte) (high << 4 | digit);
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            out[current++] = (byte) (high << 4);
+        }
+        return current;
+    }
+
+    private static int writeVarInt(byte[] out, int position, int value) {
+        int remaining = value;
+        int current = position;
+        while ((remaining & ~0x7F) != 0) {
+            out[current++] = (byte) (remaining & 0x7F | 0x80);
+            remaining >>>= 7;
+        }
+        out[current++] = (byte) remaining;
+        return current;
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        int remaining = value >>> 7;
+        while (remaining != 0) {
+            length++;
+            remaining >>>= 7;
+        }
+        return length;
+    }
+
+    /**
+     * Only lower case digits are packed, so that strings read back are identical to the ones written.
+     */
+    private static boolean isHex(String value, int from) {
+        for (int i = from; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String value) {
+        if (value.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = value.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : (c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated verification state");
+            }
+            int b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed verification state");
+    }
+
+    /**
+     * Returns the number of bytes of the string starting at a given index, including its header.
+     */
+    private static int segmentLength(byte[] bytes, int start) {
+        int[] position = {start};
+        int header = readVarInt(bytes, position);
+        int length = header >>> 2;
+        int payload;
+        switch (header & 3) {
+            case STRING_UUID:
+                payload = UUID_BYTES;
+                break;
+            case STRING_HEX:
+            case STRING_PLUS_HEX:
+                payload = (length + 1) / 2;
+                break;
+            default:
+                payload = length;
+        }
+        if (payload > bytes.length - position[0]) {
+            throw new IllegalArgumentException("Truncated verification state");
+        }
+        return position[0] - start + payload;
+    }
+
+    private static String readString(byte[] bytes, int start) {
+        int[] position = {start};
+        int header = readVarInt(bytes, position);
+        int length = header >>> 2;
+        switch (header & 3) {
+            case STRING_UUID:
+                return readHex(bytes, position[0], 32, 0, true);
+            case STRING_HEX:
+                return length == 0 ? null : readHex(bytes, position[0], length, 0, false);
+            case STRING_PLUS_HEX:
+                return readHex(bytes, position[0], length, 1, false);
+            default:
+                return length == 0 ? null : new String(bytes, position[0], length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String readHex(byte[] bytes, int start, int digits, int prefixLength, boolean uuid) {
+        byte[] chars = new byte[prefixLength + digits + (uuid ? 4 : 0)];
+        int current = 0;
+        if (prefixLength > 0) {
+            chars[current++] = '+';
+        }
+        for (int i = 0; i < digits; i++) {
+            if (uuid && (i == 8 || i == 12 || i == 16 || i == 20)) {
+                chars[current++] = '-';
+            }
+            int b = bytes[start + i / 2];
+            chars[current++] = HEX_DIGITS[(i & 1) == 0 ? (b >>> 4) & 0xF : b & 0xF];
+        }
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+}
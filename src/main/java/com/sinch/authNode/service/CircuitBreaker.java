@@ -0,0 +1,204 @@
+package com.sinch.authNode.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count-based circuit breaker guarding calls made with a single Sinch application. The outcome of the last
+ * {@link Settings#windowSize} calls is kept in a ring; once at least {@link Settings#minimumCalls} were recorded and
+ * either the failure rate or the slow-call rate reaches its threshold, the breaker opens and rejects every call for
+ * {@link Settings#openStateMillis}. Afterwards a limited number of probe calls is let through (half-open state): the
+ * breaker closes when all of them succeed and opens again as soon as one fails.
+ * <p>
+ * Every state change starts a new generation. Permissions carry the generation they were granted in, so the late
+ * outcome of a call started before the breaker opened is ignored rather than taken for the outcome of a probe call.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    static final long NO_PERMISSION = -1;
+
+    private final Settings settings;
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+
+    private State state = State.CLOSED;
+    private int index;
+    private int recordedCalls;
+    private int failureCount;
+    private int slowCallCount;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    private long generation;
+
+    CircuitBreaker(Settings settings) {
+        this.settings = settings;
+        this.failures = new boolean[settings.windowSize];
+        this.slowCalls = new boolean[settings.windowSize];
+    }
+
+    /**
+     * Checks if a call may be executed. Each granted permission has to be followed by exactly one call to
+     * {@link #onResult(long, boolean, long, long)} or {@link #releasePermission(long)}.
+     *
+     * @param nowMillis Current time.
+     * @return The generation the permission was granted in, {@link #NO_PERMISSION} if the call may not be executed.
+     */
+    synchronized long tryAcquirePermission(long nowMillis) {
+        if (state == State.OPEN) {
+            if (nowMillis - openedAt < settings.openStateMillis) {
+                return NO_PERMISSION;
+            }
+            state = State.HALF_OPEN;
+            generation++;
+            halfOpenPermits = 0;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= settings.halfOpenPermittedCalls) {
+                return NO_PERMISSION;
+            }
+            halfOpenPermits++;
+        }
+        return generation;
+    }
+
+    /**
+     * Gives back a permission which was not used to execute a call.
+     *
+     * @param permission Generation the permission was granted in.
+     */
+    synchronized void releasePermission(long permission) {
+        if (permission == generation && state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Records the outcome of a call executed with a granted permission. Outcomes of calls granted in a previous
+     * generation are ignored.
+     *
+     * @param permission     Generation the permission was granted in.
+     * @param failure        True if the call failed because of the Sinch service (network error, 5xx, throttling).
+     * @param durationMillis Duration of the call.
+     * @param nowMillis      Current time.
+     */
+    synchronized void onResult(long permission, boolean failure, long durationMillis, long nowMillis) {
+        if (permission != generation) {
+            return;
+        }
+        boolean slow = durationMillis >= settings.slowCallDurationMillis;
+        if (state == State.HALF_OPEN) {
+            if (failure || slow) {
+                open(nowMillis);
+            } else if (++halfOpenSuccesses >= settings.halfOpenPermittedCalls) {
+                close();
+            }
+            return;
+        }
+        if (recordedCalls == settings.windowSize) {
+            failureCount -= failures[index] ? 1 : 0;
+            slowCallCount -= slowCalls[index] ? 1 : 0;
+        } else {
+            recordedCalls++;
+        }
+        failures[index] = failure;
+        slowCalls[index] = slow;
+        failureCount += failure ? 1 : 0;
+        slowCallCount += slow ? 1 : 0;
+        index = (index + 1) % settings.windowSize;
+        if (recordedCalls >= settings.minimumCalls &&
+                (failureCount * 100 >= settings.failureRateThreshold * recordedCalls ||
+                        slowCallCount * 100 >= settings.slowCallRateThreshold * recordedCalls)) {
+            open(nowMillis);
+        }
+    }
+
+    /**
+     * Estimates how usable the application guarded by the breaker is: 0 while the breaker is open, a tenth of the
+     * traffic while it is half-open (or open and about to let probe calls through) and otherwise the share of
+     * recent calls which did not fail, but at least a tenth.
+     *
+     * @param nowMillis Current time.
+     * @return Health between 0 and 100.
+     */
+    synchronized int healthPercent(long nowMillis) {
+        if (state == State.OPEN) {
+            return nowMillis - openedAt < settings.openStateMillis ? 0 : 10;
+        }
+        if (state == State.HALF_OPEN) {
+            return 10;
+        }
+        if (recordedCalls == 0) {
+            return 100;
+        }
+        return Math.max(10, 100 - failureCount * 100 / recordedCalls);
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void open(long nowMillis) {
+        state = State.OPEN;
+        generation++;
+        openedAt = nowMillis;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        index = 0;
+        recordedCalls = 0;
+        failureCount = 0;
+        slowCallCount = 0;
+    }
+
+    /**
+     * Thresholds of the breaker.
+     */
+    static final class Settings {
+
+        static final String PROPERTY_PREFIX = "com.sinch.authNode.breaker.";
+
+        final int windowSize;
+        final int minimumCalls;
+        final int failureRateThreshold;
+        final int slowCallRateThreshold;
+        final long slowCallDurationMillis;
+        final long openStateMillis;
+        final int halfOpenPermittedCalls;
+
+        Settings(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+                 long slowCallDurationMillis, long openStateMillis, int halfOpenPermittedCalls) {
+            this.windowSize = windowSize;
+            this.minimumCalls = Math.min(minimumCalls, windowSize);
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            this.openStateMillis = openStateMillis;
+            this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        }
+
+        /**
+         * Reads the settings from {@code com.sinch.authNode.breaker.*} system properties.
+         *
+         * @return Settings of the breaker.
+         */
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger(PROPERTY_PREFIX + "windowSize", 50),
+                    Integer.getInteger(PROPERTY_PREFIX + "minimumCalls", 20),
+                    Integer.getInteger(PROPERTY_PREFIX + "failureRateThreshold", 50),
+                    Integer.getInteger(PROPERTY_PREFIX + "slowCallRateThreshold", 80),
+                    Long.getLong(PROPERTY_PREFIX + "slowCallDurationMillis", 3_000L),
+                    Long.getLong(PROPERTY_PREFIX + "openStateMillis", TimeUnit.SECONDS.toMillis(30)),
+                    Integer.getInteger(PROPERTY_PREFIX + "halfOpenPermittedCalls", 5));
+        }
+    }
+}
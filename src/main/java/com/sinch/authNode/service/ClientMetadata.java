@@ -0,0 +1,109 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.sinch.verification.metadata.factory.DefaultJVMMetadataFactory;
+import com.sinch.verification.metadata.model.Metadata;
+import com.sinch.verification.utils.Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+
+/**
+ * Snapshot of the client metadata (JVM, OS and platform details) attached to every verification initiation. The
+ * metadata does not change during the lifetime of the process, so it is collected and serialized once, when the plugin
+ * starts (or on first use), and {@link SinchApiServiceImpl} attaches the serialized form to the request body as-is.
+ */
+@Singleton
+public class ClientMetadata implements Factory<Metadata> {
+
+    /**
+     * Platform reported to Sinch.
+     */
+    public static final String PLATFORM = "Forgerock";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Logger logger = LoggerFactory.getLogger(ClientMetadata.class);
+    private final String platform;
+    private final Factory<Metadata> factory;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates the snapshot of the metadata collected by the SDK's {@link DefaultJVMMetadataFactory}.
+     */
+    public ClientMetadata() {
+        this(PLATFORM, new DefaultJVMMetadataFactory(PLATFORM));
+    }
+
+    ClientMetadata(String platform, Factory<Metadata> factory) {
+        this.platform = platform;
+        this.factory = factory;
+    }
+
+    /**
+     * Collects and serializes the metadata, so the first initiation does not pay for it. Calling this method more than
+     * once has no effect.
+     */
+    public void initialize() {
+        snapshot();
+    }
+
+    /**
+     * @return Platform reported to Sinch.
+     */
+    public String getPlatform() {
+        return platform;
+    }
+
+    /**
+     * @return The metadata collected when the snapshot was taken.
+     */
+    @Override
+    public Metadata create() {
+        return snapshot().metadata;
+    }
+
+    /**
+     * @return Serialized metadata or null if the metadata could not be serialized.
+     */
+    RawValue serialized() {
+        return snapshot().serialized;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(factory.create());
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private final class Snapshot {
+
+        private final Metadata metadata;
+        private final RawValue serialized;
+
+        private Snapshot(Metadata metadata) {
+            this.metadata = metadata;
+            this.serialized = serialize(metadata);
+        }
+
+        private RawValue serialize(Metadata metadata) {
+            try {
+                return new RawValue(MAPPER.writeValueAsString(metadata));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                logger.debug("Unable to serialize client metadata " + e.getLocalizedMessage());
+                return null;
+            }
+        }
+    }
+}
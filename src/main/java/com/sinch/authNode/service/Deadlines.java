@@ -0,0 +1,43 @@
+package com.sinch.authNode.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for waiting on asynchronous Sinch calls within a time budget.
+ */
+public final class Deadlines {
+
+    private Deadlines() {
+    }
+
+    /**
+     * Waits for the result of the call for at most given time. A call which does not complete in time is cancelled.
+     *
+     * @param call          Asynchronous call.
+     * @param timeoutMillis Time budget of the call.
+     * @param <T>           Type of the result.
+     * @return Result of the call.
+     * @throws TimeoutException If the call did not complete within the budget.
+     * @throws RuntimeException The exception the call completed with.
+     */
+    public static <T> T await(CompletableFuture<T> call, long timeoutMillis) throws TimeoutException {
+        try {
+            return call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Sinch Rest API", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Sinch Rest API call failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.verification.VerificationStatus;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the verifications in flight on this instance, so {@link com.sinch.authNode.SinchCodeCollectorCodeNode} rejects
+ * codes submitted for a verification which has expired or has already been completed without calling Sinch. A
+ * verification is tracked from its initiation by {@link com.sinch.authNode.SinchAuthenticationNode} or, if it was
+ * initiated in background or by another instance, from the first code submitted for it, and expires
+ * {@code com.sinch.authNode.inFlight.ttlMillis} later unless it has been completed before. Verifications are
+ * forgotten {@code com.sinch.authNode.inFlight.retentionMillis} after that; codes of verifications unknown to this
+ * instance are always checked by Sinch. At most {@code com.sinch.authNode.inFlight.maxEntries} verifications are
+ * tracked, new ones are not tracked when the registry is full.
+ * <p>
+ * Entries expire through a hashed timing wheel of {@link #WHEEL_SLOTS} slots advanced by
+ * {@code com.sinch.authNode.inFlight.tickMillis} rather than through a timer per entry: each entry is put in the slot
+ * of the tick it expires at and the slots passed since the last call are swept by whichever call notices that the
+ * clock has moved on, so no background thread is needed and a sweep only visits the entries due around that time.
+ */
+@Singleton
+public class InFlightVerificationRegistry {
+
+    static final String PROPERTY_PREFIX = "com.sinch.authNode.inFlight.";
+    static final int WHEEL_SLOTS = 512;
+
+    /**
+     * Status of a verification as known by this instance.
+     */
+    public enum Status {
+        /**
+         * Not tracked by this instance.
+         */
+        UNKNOWN,
+        /**
+         * Waiting for a code.
+         */
+        ACTIVE,
+        /**
+         * Expired before a code was accepted.
+         */
+        EXPIRED,
+        /**
+         * Completed successfully or terminated by Sinch.
+         */
+        COMPLETED
+    }
+
+    private final long ttlMillis;
+    private final long retentionTicks;
+    private final long tickMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<List<Entry>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private volatile long currentTick = -1;
+
+    /**
+     * Creates the registry configured with {@code com.sinch.authNode.inFlight.*} system properties.
+     */
+    @Inject
+    public InFlightVerificationRegistry() {
+        this(Long.getLong(PROPERTY_PREFIX + "ttlMillis", TimeUnit.MINUTES.toMillis(15)),
+                Long.getLong(PROPERTY_PREFIX + "retentionMillis", TimeUnit.MINUTES.toMillis(15)),
+                Long.getLong(PROPERTY_PREFIX + "tickMillis", TimeUnit.SECONDS.toMillis(1)),
+                Integer.getInteger(PROPERTY_PREFIX + "maxEntries", 100_000));
+    }
+
+    InFlightVerificationRegistry(long ttlMillis, long retentionMillis, long tickMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.retentionTicks = (retentionMillis + this.tickMillis - 1) / this.tickMillis;
+        this.maxEntries = maxEntries;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Starts tracking a verification unless it is tracked already.
+     *
+     * @param verificationId ID of the verification.
+     * @param method         Verification method.
+     * @return Status of the verification; {@link Status#UNKNOWN} if it could not be tracked.
+     */
+    public Status track(String verificationId, VerificationMethodType method) {
+        return track(verificationId, method, System.currentTimeMillis());
+    }
+
+    Status track(String verificationId, VerificationMethodType method, long now) {
+        if (verificationId == null) {
+            return Status.UNKNOWN;
+        }
+        advance(now);
+        Entry entry = entries.get(verificationId);
+        if (entry != null) {
+            return entry.status;
+        }
+        synchronized (this) {
+            entry = entries.get(verificationId);
+            if (entry != null) {
+                return entry.status;
+            }
+            if (entries.size() >= maxEntries) {
+                return Status.UNKNOWN;
+            }
+            entry = new Entry(verificationId, method, now);
+            entries.put(verificationId, entry);
+            schedule(entry, now + ttlMillis);
+            return entry.status;
+        }
+    }
+
+    /**
+     * @param verificationId ID of the verification.
+     * @return Status of the verification.
+     */
+    public Status status(String verificationId) {
+        return status(verificationId, System.currentTimeMillis());
+    }
+
+    Status status(String verificationId, long now) {
+        advance(now);
+        Entry entry = verificationId == null ? null : entries.get(verificationId);
+        return entry == null ? Status.UNKNOWN : entry.status;
+    }
+
+    /**
+     * Records a code submitted for a verification.
+     *
+     * @param verificationId ID of the verification.
+     * @return Number of codes submitted for the verification so far or 0 if it is not tracked.
+     */
+    public int recordAttempt(String verificationId) {
+        Entry entry = verificationId == null ? null : entries.get(verificationId);
+        if (entry == null) {
+            return 0;
+        }
+        synchronized (entry) {
+            return ++entry.attempts;
+        }
+    }
+
+    /**
+     * @param verificationId ID of the verification.
+     * @return Number of codes submitted for the verification so far or 0 if it is not tracked.
+     */
+    public int attempts(String verificationId) {
+        Entry entry = verificationId == null ? null : entries.get(verificationId);
+        return entry == null ? 0 : entry.attempts;
+    }
+
+    /**
+     * Records the status Sinch reported for a verification. Successful verifications and the ones Sinch will not accept
+     * further codes for ({@link VerificationStatus#DENIED}, {@link VerificationStatus#ABORTED}) become completed, other
+     * statuses are ignored.
+     *
+     * @param verificationId ID of the verification.
+     * @param status         Status reported by Sinch.
+     */
+    public void complete(String verificationId, VerificationStatus status) {
+        if (status != VerificationStatus.SUCCESSFUL && status != VerificationStatus.DENIED
+                && status != VerificationStatus.ABORTED) {
+            return;
+        }
+        Entry entry = verificationId == null ? null : entries.get(verificationId);
+        if (entry != null) {
+            entry.status = Status.COMPLETED;
+        }
+    }
+
+    /**
+     * @return Number of verifications tracked, including the expired and completed ones still remembered.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void schedule(Entry entry, long deadline) {
+        entry.deadlineTick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        wheel.get((int) (entry.deadlineTick % WHEEL_SLOTS)).add(entry);
+    }
+
+    /**
+     * Sweeps the slots of the ticks passed since the last call. A slot is visited at most once per call even when the
+     * clock moved on by more than a full turn of the wheel, entries due in a later turn are left in place.
+     */
+    private void advance(long now) {
+        long tick = now / tickMillis;
+        if (tick <= currentTick) {
+            return;
+        }
+        synchronized (this) {
+            long from = currentTick;
+            if (tick <= from) {
+                return;
+            }
+            currentTick = tick;
+            if (from < 0) {
+                return;
+            }
+            long last = Math.min(tick, from + WHEEL_SLOTS);
+            for (long sweptTick = from + 1; sweptTick <= last; sweptTick++) {
+                int slotIndex = (int) (sweptTick % WHEEL_SLOTS);
+                sweep(wheel.get(slotIndex), slotIndex);
+            }
+        }
+    }
+
+    private void sweep(List<Entry> slot, int slotIndex) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Entry entry = slot.get(i);
+            if (entry.deadlineTick <= currentTick && !entry.retained) {
+                if (entry.status == Status.ACTIVE) {
+                    entry.status = Status.EXPIRED;
+                }
+                entry.retained = true;
+                entry.deadlineTick += retentionTicks;
+            }
+            if (entry.deadlineTick <= currentTick) {
+                entries.remove(entry.verificationId, entry);
+            } else if (entry.deadlineTick % WHEEL_SLOTS == slotIndex) {
+                slot.set(kept++, entry);
+            } else {
+                wheel.get((int) (entry.deadlineTick % WHEEL_SLOTS)).add(entry);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private static final class Entry {
+
+        private final String verificationId;
+        private final VerificationMethodType method;
+        private final long createdAt;
+        private volatile Status status = Status.ACTIVE;
+        private volatile int attempts;
+        private long deadlineTick;
+        private boolean retained;
+
+        private Entry(String verificationId, VerificationMethodType method, long createdAt) {
+            this.verificationId = verificationId;
+            this.method = method;
+            this.createdAt = createdAt;
+        }
+
+        @Override
+        public String toString() {
+            return verificationId + " (" + method + ", created " + createdAt + ", " + status + ")";
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.initiation.InitiationResponseData;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of verification initiations. Concurrent initiations with the same key (application,
+ * phone number and method) share one call to Sinch and therefore one verification id. A successful result stays
+ * shared for a short window after it arrived, so retries and replays arriving just after it reuse it too, instead of
+ * sending another SMS which would invalidate the previous code. Failures are never shared beyond the callers that
+ * were already waiting for them.
+ */
+class InitiationCoalescer {
+
+    static final String WINDOW_PROPERTY = "com.sinch.authNode.initiation.coalescingWindowMillis";
+
+    private final Map<String, CompletableFuture<InitiationResponseData>> initiations = new ConcurrentHashMap<>();
+    private final long windowMillis;
+
+    InitiationCoalescer(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    static InitiationCoalescer fromSystemProperties() {
+        return new InitiationCoalescer(Long.getLong(WINDOW_PROPERTY, 2_000L));
+    }
+
+    /**
+     * Executes the call on the calling thread, unless an initiation with the same key is in flight or has just
+     * completed, in which case its result is returned.
+     */
+    InitiationResponseData coalesce(String key, Supplier<InitiationResponseData> call) {
+        if (windowMillis < 0) {
+            return call.get();
+        }
+        CompletableFuture<InitiationResponseData> initiation = new CompletableFuture<>();
+        CompletableFuture<InitiationResponseData> shared = initiations.putIfAbsent(key, initiation);
+        if (shared != null) {
+            try {
+                return shared.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            InitiationResponseData response = call.get();
+            complete(key, initiation, response, null);
+            return response;
+        } catch (RuntimeException e) {
+            complete(key, initiation, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the asynchronous call unless an initiation with the same key is in flight or has just completed. Each
+     * caller gets its own copy of the shared result, so cancelling it does not affect the other callers.
+     */
+    CompletableFuture<InitiationResponseData> coalesceAsync(String key, Supplier<CompletableFuture<InitiationResponseData>> call) {
+        if (windowMillis < 0) {
+            return call.get();
+        }
+        CompletableFuture<InitiationResponseData> initiation = new CompletableFuture<>();
+        CompletableFuture<InitiationResponseData> shared = initiations.putIfAbsent(key, initiation);
+        if (shared != null) {
+            return shared.copy();
+        }
+        try {
+            call.get().whenComplete((response, throwable) -> complete(key, initiation, response,
+                    throwable instanceof CompletionException ? throwable.getCause() : throwable));
+        } catch (RuntimeException e) {
+            complete(key, initiation, null, e);
+        }
+        return initiation.copy();
+    }
+
+    private void complete(String key, CompletableFuture<InitiationResponseData> initiation,
+                          InitiationResponseData response, Throwable throwable) {
+        if (throwable != null || windowMillis == 0) {
+            initiations.remove(key, initiation);
+        } else {
+            CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS)
+                    .execute(() -> initiations.remove(key, initiation));
+        }
+        if (throwable != null) {
+            initiation.completeExceptionally(throwable);
+        } else {
+            initiation.complete(response);
+        }
+    }
+
+    static String key(String appHash, String phoneNumber, Object verificationMethod) {
+        return appHash + '|' + verificationMethod + '|' + phoneNumber;
+    }
+}
@@ -0,0 +1,87 @@
+package com.sinch.authNode.service;
+
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process token bucket limiter of verification initiations. Buckets are kept per key (for example normalized phone
+ * number or realm) in a {@link ConcurrentHashMap}, so unrelated keys never contend. Each bucket is a single
+ * {@link AtomicLong} holding the theoretical arrival time of the next request (the GCRA formulation of a token
+ * bucket), updated with a compare-and-set loop instead of a lock.
+ */
+@Singleton
+public class InitiationRateLimiter {
+
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    /**
+     * Takes a token from the bucket of given key. A bucket holds at most {@code limit} tokens and is refilled with
+     * {@code limit} tokens every {@code periodMillis}.
+     *
+     * @param key          Key of the bucket.
+     * @param limit        Number of requests allowed within the period.
+     * @param periodMillis Length of the period.
+     * @return True if the request is allowed, false if it should be throttled.
+     */
+    public boolean tryAcquire(String key, int limit, long periodMillis) {
+        return tryAcquire(key, limit, periodMillis, System.currentTimeMillis());
+    }
+
+    boolean tryAcquire(String key, int limit, long periodMillis, long now) {
+        if (limit <= 0) {
+            return true;
+        }
+        purgeReplenished(now);
+        long emissionInterval = Math.max(1, periodMillis / limit);
+        long burstTolerance = emissionInterval * (limit - 1);
+        AtomicLong bucket = buckets.computeIfAbsent(key, ignored -> new AtomicLong(now));
+        while (true) {
+            long theoreticalArrival = bucket.get();
+            long arrival = Math.max(theoreticalArrival, now);
+            if (arrival - now > burstTolerance) {
+                return false;
+            }
+            if (bucket.compareAndSet(theoreticalArrival, arrival + emissionInterval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire(String, int, long)}, for example when the request turns out to
+     * be throttled by another limit. Must be called with the limit and period the token was taken with.
+     *
+     * @param key          Key of the bucket.
+     * @param limit        Number of requests allowed within the period.
+     * @param periodMillis Length of the period.
+     */
+    public void release(String key, int limit, long periodMillis) {
+        if (limit <= 0) {
+            return;
+        }
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-Math.max(1, periodMillis / limit));
+        }
+    }
+
+    private void purgeReplenished(long now) {
+        long last = lastPurge.get();
+        if (buckets.size() < PURGE_THRESHOLD || now - last < PURGE_INTERVAL_MILLIS || !lastPurge.compareAndSet(last, now)) {
+            return;
+        }
+        for (Iterator<AtomicLong> iterator = buckets.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().get() <= now) {
+                iterator.remove();
+            }
+        }
+    }
+}
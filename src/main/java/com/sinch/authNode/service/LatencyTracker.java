@@ -0,0 +1,44 @@
+package com.sinch.authNode.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latencies of the most recent calls in a lock-free ring and computes percentiles of them on demand.
+ */
+class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+
+    LatencyTracker(int capacity) {
+        this.samples = new AtomicLongArray(capacity);
+    }
+
+    void record(long latencyMillis) {
+        long slot = recorded.getAndIncrement();
+        samples.set((int) (slot % samples.length()), latencyMillis);
+    }
+
+    /**
+     * Computes the percentile of recorded latencies.
+     *
+     * @param percentile   Percentile between 0 and 100.
+     * @param minSamples   Minimum number of samples required to compute the percentile.
+     * @param defaultValue Value returned if not enough samples were recorded.
+     * @return The percentile in milliseconds.
+     */
+    long percentile(int percentile, int minSamples, long defaultValue) {
+        int count = (int) Math.min(recorded.get(), samples.length());
+        if (count < minSamples || count == 0) {
+            return defaultValue;
+        }
+        long[] snapshot = new long[count];
+        for (int i = 0; i < count; i++) {
+            snapshot[i] = samples.get(i);
+        }
+        Arrays.sort(snapshot);
+        return snapshot[Math.min(count - 1, (count * percentile) / 100)];
+    }
+}
@@ -0,0 +1,86 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.initiation.InitiationResponseData;
+
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps initiations started in background by {@link com.sinch.authNode.SinchAuthenticationNode} until
+ * {@link com.sinch.authNode.SinchCodeCollectorCodeNode} needs their result. Only the token returned by
+ * {@link #register(CompletableFuture)} travels in the tree's shared state, which means that both nodes have to be
+ * executed by the same AM instance (sticky sessions). Entries not claimed within {@link #PENDING_TTL_MILLIS} are
+ * dropped.
+ */
+@Singleton
+public class PendingInitiationRegistry {
+
+    static final long PENDING_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    /**
+     * Registers an initiation which is still in progress.
+     *
+     * @param initiation Future completed with the Sinch response.
+     * @return Token under which the initiation can be claimed.
+     */
+    public String register(CompletableFuture<InitiationResponseData> initiation) {
+        long now = System.currentTimeMillis();
+        purgeExpired(now);
+        String token = UUID.randomUUID().toString();
+        pending.put(token, new Entry(initiation, now));
+        return token;
+    }
+
+    /**
+     * Removes and returns the initiation registered under given token.
+     *
+     * @param token Token returned by {@link #register(CompletableFuture)}.
+     * @return The initiation or null if it is unknown to this instance or already expired.
+     */
+    public CompletableFuture<InitiationResponseData> claim(String token) {
+        Entry entry = token == null ? null : pending.remove(token);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.initiation;
+    }
+
+    private void purgeExpired(long now) {
+        long last = lastPurge.get();
+        if (now - last < PURGE_INTERVAL_MILLIS || !lastPurge.compareAndSet(last, now)) {
+            return;
+        }
+        for (Iterator<Entry> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.isExpired(now)) {
+                entry.initiation.cancel(false);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<InitiationResponseData> initiation;
+        private final long createdAt;
+
+        private Entry(CompletableFuture<InitiationResponseData> initiation, long createdAt) {
+            this.initiation = initiation;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt > PENDING_TTL_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.sinch.authNode.service;
+
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-realm cache of phone numbers read from users' profiles, so repeated logins of the same user skip the round
+ * trip to the identity store. Each realm holds a size-bounded LRU map per profile attribute the phone number is read
+ * from, so nodes reading different attributes never get each other's values; entries expire after a TTL given on
+ * insertion. Entries are invalidated as soon as the identity repository of the realm reports a change of the
+ * identity.
+ */
+@Singleton
+public class ProfilePhoneNumberCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfilePhoneNumberCache.class);
+
+    private final Map<String, Map<String, RealmCache>> realms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache of given realm and profile attribute, creating it on first use.
+     *
+     * @param realmPath  Path of the realm.
+     * @param attribute  Name of the profile attribute the phone numbers are read from.
+     * @param maxSize    Maximum number of entries kept for the realm and attribute, used only when the cache is
+     *                   created.
+     * @param repository Identity repository of the realm, used to register invalidation listener when the cache
+     *                   is created.
+     * @return Cache of the realm and attribute.
+     */
+    public RealmCache realm(String realmPath, String attribute, int maxSize, Supplier<AMIdentityRepository> repository) {
+        Map<String, RealmCache> attributes = realms.get(realmPath);
+        if (attributes == null) {
+            attributes = realms.computeIfAbsent(realmPath, ignored -> new ConcurrentHashMap<>());
+        }
+        RealmCache cache = attributes.get(attribute);
+        if (cache == null) {
+            RealmCache created = new RealmCache(maxSize);
+            cache = attributes.putIfAbsent(attribute, created);
+            if (cache == null) {
+                cache = created;
+                registerInvalidationListener(realmPath, created, repository);
+            }
+        }
+        return cache;
+    }
+
+    private void registerInvalidationListener(String realmPath, RealmCache cache, Supplier<AMIdentityRepository> repository) {
+        try {
+            repository.get().addEventListener(cache);
+        } catch (Exception e) {
+            logger.debug("Unable to listen to identity changes in realm " + realmPath + ", entries will only expire " +
+                    e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Phone numbers read from a single profile attribute in a single realm, keyed by username.
+     */
+    public static final class RealmCache implements IdEventListener {
+
+        private final Map<String, CachedPhoneNumber> entries;
+
+        RealmCache(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedPhoneNumber> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * Returns the cached phone number of the user.
+         *
+         * @param username Name of the user.
+         * @return Phone number or null if not cached or expired.
+         */
+        public String get(String username) {
+            String key = key(username);
+            synchronized (entries) {
+                CachedPhoneNumber entry = entries.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.expiresAt < System.currentTimeMillis()) {
+                    entries.remove(key);
+                    return null;
+                }
+                return entry.phoneNumber;
+            }
+        }
+
+        /**
+         * Caches the phone number of the user.
+         *
+         * @param username    Name of the user.
+         * @param phoneNumber Phone number read from user's profile.
+         * @param ttlMillis   Time the entry stays valid.
+         */
+        public void put(String username, String phoneNumber, long ttlMillis) {
+            CachedPhoneNumber entry = new CachedPhoneNumber(phoneNumber, System.currentTimeMillis() + ttlMillis);
+            synchronized (entries) {
+                entries.put(key(username), entry);
+            }
+        }
+
+        /**
+         * Removes the phone number of the user.
+         *
+         * @param username Name of the user.
+         */
+        public void invalidate(String username) {
+            synchronized (entries) {
+                entries.remove(key(username));
+            }
+        }
+
+        @Override
+        public void identityChanged(String universalId) {
+            invalidateUniversalId(universalId);
+        }
+
+        @Override
+        public void identityDeleted(String universalId) {
+            invalidateUniversalId(universalId);
+        }
+
+        @Override
+        public void identityRenamed(String universalId) {
+            invalidateUniversalId(universalId);
+        }
+
+        @Override
+        public void allIdentitiesChanged() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        private void invalidateUniversalId(String universalId) {
+            String username = usernameFromUniversalId(universalId);
+            if (username == null) {
+                allIdentitiesChanged();
+            } else {
+                invalidate(username);
+            }
+        }
+
+        private static String usernameFromUniversalId(String universalId) {
+            if (universalId == null || !universalId.regionMatches(true, 0, "id=", 0, 3)) {
+                return null;
+            }
+            int end = universalId.indexOf(',');
+            return universalId.substring(3, end < 0 ? universalId.length() : end);
+        }
+
+        private static String key(String username) {
+            return username.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final class CachedPhoneNumber {
+
+        private final String phoneNumber;
+        private final long expiresAt;
+
+        private CachedPhoneNumber(String phoneNumber, long expiresAt) {
+            this.phoneNumber = phoneNumber;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
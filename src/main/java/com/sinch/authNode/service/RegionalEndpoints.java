@@ -0,0 +1,199 @@
+package com.sinch.authNode.service;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes calls to the fastest healthy of several regional Sinch endpoints. A background thread probes every endpoint
+ * each {@code probeIntervalMillis} and keeps a moving average of its round trip time; any answer other than a server
+ * error counts as healthy. The outcome of real calls is fed back too: after {@link #FAILURE_THRESHOLD} consecutive
+ * failures an endpoint is considered down and traffic fails over to the next fastest one until a probe succeeds
+ * again. When every endpoint is down, the one failing for the shortest time is used.
+ * <p>
+ * With a single endpoint no probes are sent and the endpoint is always used.
+ */
+class RegionalEndpoints {
+
+    static final int FAILURE_THRESHOLD = 3;
+    private static final double RTT_SMOOTHING = 0.3;
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionalEndpoints.class);
+
+    private final List<Endpoint> endpoints;
+    private final String probePath;
+    private volatile Endpoint current;
+    private ScheduledExecutorService prober;
+
+    /**
+     * Creates the router.
+     *
+     * @param baseUrls  Base URLs of the endpoints in order of preference, used until their round trip time is known.
+     * @param probePath Path requested by the probes.
+     */
+    RegionalEndpoints(List<String> baseUrls, String probePath) {
+        List<Endpoint> created = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            created.add(new Endpoint(baseUrl));
+        }
+        this.endpoints = Collections.unmodifiableList(created);
+        this.probePath = probePath;
+        this.current = endpoints.get(0);
+    }
+
+    /**
+     * @return Base URL of the endpoint calls are routed to.
+     */
+    String select() {
+        return current.baseUrl;
+    }
+
+    /**
+     * Records the outcome of a call made to an endpoint.
+     *
+     * @param baseUrl Base URL of the endpoint.
+     * @param failure True if the call failed because of the endpoint (network error, server error, throttling).
+     */
+    void onResult(String baseUrl, boolean failure) {
+        if (endpoints.size() == 1) {
+            return;
+        }
+        Endpoint endpoint = find(baseUrl);
+        if (endpoint == null) {
+            return;
+        }
+        // only the update crossing the threshold reroutes, whichever thread makes it
+        boolean crossed = failure ? endpoint.consecutiveFailures.incrementAndGet() == FAILURE_THRESHOLD
+                : endpoint.consecutiveFailures.getAndSet(0) >= FAILURE_THRESHOLD;
+        if (crossed) {
+            reroute();
+        }
+    }
+
+    /**
+     * Starts probing the endpoints in background. Has no effect with a single endpoint.
+     *
+     * @param client         Client the probes are sent with.
+     * @param intervalMillis Interval between two probes of an endpoint.
+     */
+    synchronized void start(OkHttpClient client, long intervalMillis) {
+        if (endpoints.size() == 1 || prober != null) {
+            return;
+        }
+        OkHttpClient probeClient = client.newBuilder()
+                .callTimeout(intervalMillis, TimeUnit.MILLISECONDS)
+                .build();
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sinch-endpoint-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(() -> probe(probeClient), 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops probing the endpoints.
+     */
+    synchronized void shutdown() {
+        if (prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    /**
+     * Probes every endpoint once and routes calls to the fastest healthy one.
+     *
+     * @param client Client the probes are sent with.
+     */
+    void probe(OkHttpClient client) {
+        for (Endpoint endpoint : endpoints) {
+            long start = System.nanoTime();
+            boolean failure;
+            try (Response response = client.newCall(new Request.Builder().url(endpoint.baseUrl + probePath).get().build())
+                    .execute()) {
+                failure = response.code() >= 500;
+            } catch (IOException | RuntimeException e) {
+                failure = true;
+            }
+            if (failure) {
+                endpoint.consecutiveFailures.updateAndGet(failures -> Math.max(failures + 1, FAILURE_THRESHOLD));
+            } else {
+                long rttMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                endpoint.rttMicros = endpoint.rttMicros < 0 ? rttMicros :
+                        (long) (RTT_SMOOTHING * rttMicros + (1 - RTT_SMOOTHING) * endpoint.rttMicros);
+                endpoint.consecutiveFailures.set(0);
+            }
+        }
+        reroute();
+    }
+
+    private synchronized void reroute() {
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (best == null || endpoint.isPreferredTo(best)) {
+                best = endpoint;
+            }
+        }
+        if (best != current) {
+            logger.info("Routing Sinch calls to " + best + " instead of " + current);
+            current = best;
+        }
+    }
+
+    private Endpoint find(String baseUrl) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.baseUrl.equals(baseUrl)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private static final class Endpoint {
+
+        private final String baseUrl;
+        private volatile long rttMicros = -1;
+        // updated by the probe thread and by the callbacks of concurrent calls
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        private boolean isUp() {
+            return consecutiveFailures.get() < FAILURE_THRESHOLD;
+        }
+
+        /**
+         * Endpoints which are up win over the ones which are down, then the faster one wins; endpoints not probed yet
+         * keep their configuration order. Among endpoints which are down, the one failing for the shortest time wins.
+         */
+        private boolean isPreferredTo(Endpoint other) {
+            if (isUp() != other.isUp()) {
+                return isUp();
+            }
+            if (!isUp()) {
+                return consecutiveFailures.get() < other.consecutiveFailures.get();
+            }
+            return rttMicros >= 0 && (other.rttMicros < 0 || rttMicros < other.rttMicros);
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl + " (rtt " + (rttMicros < 0 ? "unknown" : rttMicros / 1000 + "ms")
+                    + (isUp() ? "" : ", down") + ")";
+        }
+    }
+}
@@ -6,11 +6,53 @@ import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.model.verification.VerificationResponseData;
 import com.sinch.verification.utils.Factory;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface SinchApiService {
 
-    InitiationResponseData initiateSynchronically(String appHash, String appSecret, VerificationMethodType verificationMethod, String phoneNumber,
+    InitiationResponseData initiateSynchronically(SinchCredentials credentials, VerificationMethodType verificationMethod, String phoneNumber,
                                                   Factory<Metadata> metadataFactory);
 
-    VerificationResponseData verifySynchronicallyById(String appHash, String appSecret, String verificationId, String verificationCode, VerificationMethodType verificationMethodType);
+    VerificationResponseData verifySynchronicallyById(SinchCredentials credentials, String verificationId, String verificationCode, VerificationMethodType verificationMethodType);
+
+    /**
+     * Asynchronous variant of {@link #initiateSynchronically}. The returned future completes exceptionally with the
+     * same exceptions the synchronous method would throw.
+     */
+    CompletableFuture<InitiationResponseData> initiateAsync(SinchCredentials credentials, VerificationMethodType verificationMethod, String phoneNumber,
+                                                            Factory<Metadata> metadataFactory);
+
+    /**
+     * Asynchronous variant of {@link #verifySynchronicallyById}. The returned future completes exceptionally with the
+     * same exceptions the synchronous method would throw.
+     */
+    CompletableFuture<VerificationResponseData> verifyByIdAsync(SinchCredentials credentials, String verificationId, String verificationCode,
+                                                                VerificationMethodType verificationMethodType);
+
+    /**
+     * Hedged variant of {@link #verifyByIdAsync}. If the first request does not answer within the recently observed
+     * 95th percentile of verification latency, a second, identical request is sent and whichever answers first
+     * completes the returned future. The other request is cancelled.
+     */
+    CompletableFuture<VerificationResponseData> verifyByIdHedgedAsync(SinchCredentials credentials, String verificationId, String verificationCode,
+                                                                      VerificationMethodType verificationMethodType);
+
+    /**
+     * Selects the application a new verification is initiated with, at random in proportion to the weights of the
+     * applications. Implementations aware of the health of the applications lower the share of the unhealthy ones.
+     */
+    default SinchCredentials selectApplication(List<WeightedApplication> applications) {
+        return WeightedApplication.select(applications, appKey -> 100);
+    }
+
+    /**
+     * Exercises the request and response handling on synthetic payloads, so classes are loaded and compiled before the
+     * first real call. Implementations must not send anything to Sinch.
+     *
+     * @param iterations Number of times every call is simulated.
+     */
+    default void warmUp(int iterations) {
+    }
 
 }
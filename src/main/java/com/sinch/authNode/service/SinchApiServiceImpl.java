@@ -1,26 +1,476 @@
 package com.sinch.authNode.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.sinch.verification.metadata.model.Metadata;
+import com.sinch.verification.model.ApiErrorData;
 import com.sinch.verification.model.VerificationMethodType;
 import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.model.verification.VerificationResponseData;
-import com.sinch.verification.network.auth.ApplicationAuthorizationMethod;
+import com.sinch.verification.model.verification.VerificationStatus;
+import com.sinch.verification.process.ApiCallException;
 import com.sinch.verification.utils.Factory;
-import com.sinch.verification.utils.VerificationCallUtils;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * {@link SinchApiService} talking to the Sinch Verification Rest API directly through the shared, pooled
+ * {@link SinchHttpTransport}. Requests are signed with the application signing scheme (the same one used by the
+ * SDK's {@code ApplicationAuthorizationMethod}) using the signing key of the {@link SinchCredentials} passed in,
+ * responses are mapped to the SDK model classes. Asynchronous variants are executed by the transport's bounded
+ * dispatcher, so no caller thread is blocked while waiting for Sinch.
+ * <p>
+ * Every call is guarded by a per-application {@link CircuitBreaker} and a bulkhead limiting the number of in-flight
+ * calls. Rejected calls fail immediately with {@link SinchUnavailableException}. Concurrent initiations of the same
+ * verification are coalesced by {@link InitiationCoalescer}. Each call is traced as a child of the span of the node
+ * making it, see {@link VerificationTracer}.
+ */
+@Singleton
 public class SinchApiServiceImpl implements SinchApiService {
 
+    static final String VERIFICATIONS_PATH = "/verification/v1/verifications";
+    static final String VERIFICATION_BY_ID_PATH = VERIFICATIONS_PATH + "/id/";
+
+    private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse(CONTENT_TYPE);
+    private static final String TIMESTAMP_HEADER = SinchCredentials.TIMESTAMP_HEADER;
+    private static final String TRACE_PARENT_HEADER = "traceparent";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String BULKHEAD_PROPERTY = "com.sinch.authNode.bulkhead.maxConcurrentCalls";
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1_000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int NO_RESPONSE = -1;
+
+    private final Logger logger = LoggerFactory.getLogger(SinchApiServiceImpl.class);
+    private final SinchHttpTransport transport;
+    private final CircuitBreaker.Settings breakerSettings = CircuitBreaker.Settings.fromSystemProperties();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Semaphore bulkhead = new Semaphore(Integer.getInteger(BULKHEAD_PROPERTY, 64));
+    private final LatencyTracker verificationLatency = new LatencyTracker(256);
+    private final InitiationCoalescer initiationCoalescer = InitiationCoalescer.fromSystemProperties();
+    private final SinchMetrics metrics;
+    private final VerificationTracer tracer;
+
+    /**
+     * Creates the service.
+     *
+     * @param transport        Shared HTTP transport used for every call.
+     * @param metrics          Metrics the duration and outcome of every call is recorded in.
+     * @param tracer    Tracer every call is recorded by.
+     */
+    @Inject
+    public SinchApiServiceImpl(SinchHttpTransport transport, SinchMetrics metrics, VerificationTracer tracer) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.tracer = tracer;
+    }
+
     @Override
-    public InitiationResponseData initiateSynchronically(String appHash, String appSecret, VerificationMethodType verificationMethod,
+    public InitiationResponseData initiateSynchronically(SinchCredentials credentials, VerificationMethodType verificationMethod,
                                                          String phoneNumber, Factory<Metadata> metadataFactory) {
-        return VerificationCallUtils.initiateSynchronically(new ApplicationAuthorizationMethod(appHash, appSecret),
-                verificationMethod, phoneNumber, null, true, null, null, metadataFactory);
+        return initiationCoalescer.coalesce(InitiationCoalescer.key(credentials.appKey(), phoneNumber, verificationMethod),
+                () -> toInitiationResponse(execute(credentials, "POST", VERIFICATIONS_PATH,
+                        initiationBody(verificationMethod, phoneNumber, metadataFactory),
+                        SinchMetrics.ApiOperation.INITIATION, verificationMethod), verificationMethod));
     }
 
     @Override
-    public VerificationResponseData verifySynchronicallyById(String appHash, String appSecret, String verificationId, String verificationCode,
+    public VerificationResponseData verifySynchronicallyById(SinchCredentials credentials, String verificationId, String verificationCode,
                                                              VerificationMethodType verificationMethodType) {
-        return VerificationCallUtils.verifySynchronicallyById(new ApplicationAuthorizationMethod(appHash, appSecret),
-                verificationId, verificationCode, verificationMethodType);
+        JsonNode response = execute(credentials, "PUT", VERIFICATION_BY_ID_PATH + verificationId,
+                verificationBody(verificationCode, verificationMethodType), SinchMetrics.ApiOperation.VERIFICATION,
+                verificationMethodType);
+        return toVerificationResponse(response, verificationId, verificationMethodType);
+    }
+
+    @Override
+    public CompletableFuture<InitiationResponseData> initiateAsync(SinchCredentials credentials, VerificationMethodType verificationMethod,
+                                                                   String phoneNumber, Factory<Metadata> metadataFactory) {
+        return initiationCoalescer.coalesceAsync(InitiationCoalescer.key(credentials.appKey(), phoneNumber, verificationMethod),
+                () -> mapResponse(executeAsync(credentials, "POST", VERIFICATIONS_PATH,
+                        initiationBody(verificationMethod, phoneNumber, metadataFactory),
+                        SinchMetrics.ApiOperation.INITIATION, verificationMethod),
+                        response -> toInitiationResponse(response, verificationMethod)));
+    }
+
+    @Override
+    public CompletableFuture<VerificationResponseData> verifyByIdAsync(SinchCredentials credentials, String verificationId, String verificationCode,
+                                                                       VerificationMethodType verificationMethodType) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<VerificationResponseData> verification = mapResponse(executeAsync(credentials, "PUT",
+                VERIFICATION_BY_ID_PATH + verificationId, verificationBody(verificationCode, verificationMethodType),
+                SinchMetrics.ApiOperation.VERIFICATION, verificationMethodType),
+                response -> toVerificationResponse(response, verificationId, verificationMethodType));
+        verification.whenComplete((response, throwable) -> {
+            if (!verification.isCancelled() && !(throwable instanceof SinchUnavailableException)) {
+                verificationLatency.record(System.currentTimeMillis() - start);
+            }
+        });
+        return verification;
+    }
+
+    @Override
+    public CompletableFuture<VerificationResponseData> verifyByIdHedgedAsync(SinchCredentials credentials, String verificationId, String verificationCode,
+                                                                             VerificationMethodType verificationMethodType) {
+        CompletableFuture<VerificationResponseData> result = new CompletableFuture<>();
+        CompletableFuture<VerificationResponseData> primary = verifyByIdAsync(credentials, verificationId,
+                verificationCode, verificationMethodType);
+        long hedgeDelay = Math.max(MIN_HEDGE_DELAY_MILLIS,
+                verificationLatency.percentile(95, MIN_HEDGE_SAMPLES, DEFAULT_HEDGE_DELAY_MILLIS));
+        CompletableFuture<VerificationResponseData> hedge = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<VerificationResponseData>> hedgeCall = new AtomicReference<>();
+        AtomicBoolean hedgeDecided = new AtomicBoolean();
+        CompletableFuture.runAsync(() -> {
+            if (!result.isDone() && hedgeDecided.compareAndSet(false, true)) {
+                CompletableFuture<VerificationResponseData> call = verifyByIdAsync(credentials, verificationId,
+                        verificationCode, verificationMethodType);
+                hedgeCall.set(call);
+                call.whenComplete((response, throwable) -> completeWith(hedge, response, throwable));
+                if (result.isDone()) {
+                    call.cancel(true);
+                }
+            }
+        }, CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS));
+        primary.whenComplete((response, throwable) -> {
+            if (throwable == null || hedgeDecided.compareAndSet(false, true)) {
+                completeWith(result, response, throwable);
+            } else {
+                hedge.whenComplete((hedgeResponse, hedgeThrowable) -> completeWith(result, hedgeResponse, hedgeThrowable));
+            }
+        });
+        hedge.thenAccept(result::complete);
+        result.whenComplete((response, throwable) -> {
+            primary.cancel(true);
+            hedge.cancel(true);
+            CompletableFuture<VerificationResponseData> call = hedgeCall.get();
+            if (call != null) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the request and response handling of every call on synthetic payloads without sending anything: request
+     * bodies are built, serialized and signed with throwaway credentials, and the synthetic successful and error
+     * responses of {@link WarmUpFixtures} are parsed and mapped to the SDK model classes. Circuit breakers, the
+     * bulkhead, metrics, tracing and the cache of credentials are left untouched.
+     */
+    @Override
+    public void warmUp(int iterations) {
+        SinchCredentials credentials = WarmUpFixtures.credentials();
+        Request request = null;
+        for (int i = 0; i < iterations; i++) {
+            for (VerificationMethodType method : WarmUpFixtures.METHODS) {
+                buildRequest(WarmUpFixtures.BASE_URL, credentials, "POST", VERIFICATIONS_PATH,
+                        initiationBody(method, WarmUpFixtures.PHONE_NUMBER, null), Span.NOOP);
+                request = buildRequest(WarmUpFixtures.BASE_URL, credentials, "PUT",
+                        VERIFICATION_BY_ID_PATH + WarmUpFixtures.VERIFICATION_ID,
+                        verificationBody(WarmUpFixtures.CODE, method), Span.NOOP);
+                try {
+                    toInitiationResponse(parseResponse(WarmUpFixtures.initiationResponse(request)), method);
+                    toVerificationResponse(parseResponse(WarmUpFixtures.verificationResponse(request)),
+                            WarmUpFixtures.VERIFICATION_ID, method);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            try {
+                parseResponse(WarmUpFixtures.errorResponse(request));
+            } catch (ApiCallException | IOException expected) {
+                // the error path is what is being warmed up
+            }
+        }
+    }
+
+    /**
+     * Selects the application in proportion to the weights of the applications scaled by their health, as estimated
+     * by their circuit breakers, so applications failing or throttled by Sinch get less traffic and open ones none.
+     */
+    @Override
+    public SinchCredentials selectApplication(List<WeightedApplication> applications) {
+        long now = System.currentTimeMillis();
+        return WeightedApplication.select(applications, appKey -> {
+            CircuitBreaker breaker = breakers.get(appKey);
+            return breaker == null ? 100 : breaker.healthPercent(now);
+        });
+    }
+
+    private static <T> void completeWith(CompletableFuture<T> future, T response, Throwable throwable) {
+        if (throwable == null) {
+            future.complete(response);
+        } else {
+            future.completeExceptionally(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+        }
+    }
+
+    private static <T> CompletableFuture<T> mapResponse(CompletableFuture<JsonNode> call, Function<JsonNode, T> mapper) {
+        CompletableFuture<T> result = call.thenApply(mapper);
+        result.whenComplete((ignored, throwable) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private ObjectNode initiationBody(VerificationMethodType verificationMethod, String phoneNumber, Factory<Metadata> metadataFactory) {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.putObject("identity")
+                .put("type", "number")
+                .put("endpoint", phoneNumber);
+        body.put("method", methodName(verificationMethod));
+        body.put("honourEarlyReject", true);
+        putMetadata(body, metadataFactory);
+        return body;
+    }
+
+    private ObjectNode verificationBody(String verificationCode, VerificationMethodType verificationMethodType) {
+        String methodName = methodName(verificationMethodType);
+        ObjectNode body = MAPPER.createObjectNode();
+        body.put("method", methodName);
+        body.putObject(methodName).put(verificationMethodType == VerificationMethodType.FLASHCALL ? "cli" : "code",
+                verificationCode);
+        return body;
+    }
+
+    private InitiationResponseData toInitiationResponse(JsonNode response, VerificationMethodType verificationMethod) {
+        return new InitiationResponseData(response.path("id").asText(), null, null, null, null, null,
+                verificationMethod, null);
+    }
+
+    private VerificationResponseData toVerificationResponse(JsonNode response, String verificationId,
+                                                            VerificationMethodType verificationMethodType) {
+        return new VerificationResponseData(response.path("id").asText(verificationId),
+                parseStatus(response.path("status").asText()), verificationMethodType, null, null);
+    }
+
+    private JsonNode execute(SinchCredentials credentials, String httpMethod, String path, JsonNode body,
+                             SinchMetrics.ApiOperation operation, VerificationMethodType method) {
+        Span span = tracer.startChildSpan(operation.spanName());
+        String baseUrl = transport.baseUrl();
+        Request request = buildRequest(baseUrl, credentials, httpMethod, path, body, span);
+        CircuitBreaker breaker = breaker(credentials.appKey());
+        long permission = acquirePermission(breaker, operation, method, span);
+        long start = System.nanoTime();
+        int responseCode = NO_RESPONSE;
+        try (Response response = transport.client().newCall(request).execute()) {
+            responseCode = response.code();
+            return parseResponse(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to call Sinch Rest API " + path, e);
+        } finally {
+            releasePermission(breaker, permission, baseUrl, responseCode, false, start, operation, method, span);
+        }
+    }
+
+    private CompletableFuture<JsonNode> executeAsync(SinchCredentials credentials, String httpMethod, String path, JsonNode body,
+                                                     SinchMetrics.ApiOperation operation, VerificationMethodType method) {
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        Span span = tracer.startChildSpan(operation.spanName());
+        String baseUrl = transport.baseUrl();
+        Request request = buildRequest(baseUrl, credentials, httpMethod, path, body, span);
+        CircuitBreaker breaker = breaker(credentials.appKey());
+        long permission;
+        try {
+            permission = acquirePermission(breaker, operation, method, span);
+        } catch (SinchUnavailableException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        long start = System.nanoTime();
+        Call call = transport.client().newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                releasePermission(breaker, permission, baseUrl, NO_RESPONSE, call.isCanceled(), start, operation,
+                        method, span);
+                future.completeExceptionally(new UncheckedIOException("Unable to call Sinch Rest API " + path, e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                releasePermission(breaker, permission, baseUrl, response.code(), false, start, operation, method,
+                        span);
+                try (response) {
+                    future.complete(parseResponse(response));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        future.whenComplete((ignored, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    private CircuitBreaker breaker(String appHash) {
+        return breakers.computeIfAbsent(appHash, ignored -> new CircuitBreaker(breakerSettings));
+    }
+
+    private long acquirePermission(CircuitBreaker breaker, SinchMetrics.ApiOperation operation,
+                                   VerificationMethodType method, Span span) {
+        if (!bulkhead.tryAcquire()) {
+            metrics.recordApiCall(operation, method, SinchMetrics.ApiOutcome.REJECTED, 0);
+            span.tag("outcome", SinchMetrics.ApiOutcome.REJECTED.tag()).end();
+            throw new SinchUnavailableException("Too many concurrent calls to Sinch Rest API");
+        }
+        long permission = breaker.tryAcquirePermission(System.currentTimeMillis());
+        if (permission == CircuitBreaker.NO_PERMISSION) {
+            bulkhead.release();
+            metrics.recordApiCall(operation, method, SinchMetrics.ApiOutcome.REJECTED, 0);
+            span.tag("outcome", SinchMetrics.ApiOutcome.REJECTED.tag()).end();
+            throw new SinchUnavailableException("Circuit breaker of the application is open");
+        }
+        return permission;
+    }
+
+    private void releasePermission(CircuitBreaker breaker, long permission, String baseUrl, int responseCode,
+                                   boolean cancelled, long startNanos, SinchMetrics.ApiOperation operation,
+                                   VerificationMethodType method, Span span) {
+        long durationNanos = System.nanoTime() - startNanos;
+        if (cancelled) {
+            // the outcome of a cancelled call is unknown, so it neither counts for nor against the application
+            breaker.releasePermission(permission);
+        } else {
+            boolean failure = isServiceFailure(responseCode);
+            breaker.onResult(permission, failure, TimeUnit.NANOSECONDS.toMillis(durationNanos), System.currentTimeMillis());
+            transport.onResult(baseUrl, failure);
+        }
+        bulkhead.release();
+        SinchMetrics.ApiOutcome outcome = apiOutcome(responseCode, cancelled);
+        metrics.recordApiCall(operation, method, outcome, durationNanos);
+        if (span.isRecording()) {
+            span.tag("http.status_code", responseCode == NO_RESPONSE ? null : Integer.toString(responseCode))
+                    .tag("outcome", outcome.tag())
+                    .end();
+        }
+    }
+
+    private static boolean isServiceFailure(int responseCode) {
+        return responseCode == NO_RESPONSE || responseCode >= 500 || responseCode == 429;
+    }
+
+    private static SinchMetrics.ApiOutcome apiOutcome(int responseCode, boolean cancelled) {
+        if (cancelled) {
+            return SinchMetrics.ApiOutcome.CANCELLED;
+        } else if (isServiceFailure(responseCode)) {
+            return SinchMetrics.ApiOutcome.SERVICE_ERROR;
+        } else if (responseCode >= 400) {
+            return SinchMetrics.ApiOutcome.CLIENT_ERROR;
+        }
+        return SinchMetrics.ApiOutcome.SUCCESS;
+    }
+
+    private Request buildRequest(String baseUrl, SinchCredentials credentials, String httpMethod, String path, JsonNode body,
+                                 Span span) {
+        byte[] content = serialize(body);
+        String timestamp = Instant.now().toString();
+        Request.Builder builder = new Request.Builder()
+                .url(baseUrl + path)
+                .header(TIMESTAMP_HEADER, timestamp)
+                .header("Authorization", authorizationHeader(credentials, httpMethod, content, timestamp, path))
+                .method(httpMethod, RequestBody.create(content, JSON_MEDIA_TYPE));
+        if (span.isRecording()) {
+            builder.header(TRACE_PARENT_HEADER, span.traceParent());
+        }
+        return builder.build();
+    }
+
+    private JsonNode parseResponse(Response response) throws IOException {
+        ResponseBody responseBody = response.body();
+        String payload = responseBody == null ? "" : responseBody.string();
+        JsonNode json = payload.isEmpty() ? MAPPER.createObjectNode() : MAPPER.readTree(payload);
+        if (!response.isSuccessful()) {
+            throw new ApiCallException(new ApiErrorData(json.path("errorCode").asInt(response.code()),
+                    json.path("message").asText(response.message()), json.path("reference").asText("")));
+        }
+        return json;
+    }
+
+    private String authorizationHeader(SinchCredentials credentials, String httpMethod, byte[] content,
+                                       String timestamp, String path) {
+        try {
+            return credentials.authorizationPrefix() + credentials.sign(httpMethod, content, CONTENT_TYPE, timestamp, path);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign Sinch request", e);
+        }
+    }
+
+    private void putMetadata(ObjectNode body, Factory<Metadata> metadataFactory) {
+        if (metadataFactory == null) {
+            return;
+        }
+        if (metadataFactory instanceof ClientMetadata) {
+            RawValue serialized = ((ClientMetadata) metadataFactory).serialized();
+            if (serialized != null) {
+                body.putRawValue("metadata", serialized);
+            }
+            return;
+        }
+        try {
+            body.set("metadata", MAPPER.valueToTree(metadataFactory.create()));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Unable to serialize client metadata " + e.getLocalizedMessage());
+        }
+    }
+
+    private static byte[] serialize(JsonNode body) {
+        try {
+            return MAPPER.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String methodName(VerificationMethodType verificationMethodType) {
+        switch (verificationMethodType) {
+            case SMS:
+                return "sms";
+            case FLASHCALL:
+                return "flashCall";
+            case CALLOUT:
+                return "callout";
+            default:
+                throw new IllegalArgumentException("Verification method not supported " + verificationMethodType);
+        }
+    }
+
+    private static VerificationStatus parseStatus(String status) {
+        try {
+            return VerificationStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return VerificationStatus.ERROR;
+        }
     }
 }
@@ -0,0 +1,209 @@
+package com.sinch.authNode.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Credentials of a Sinch application together with the state derived from them for signing requests: the decoded
+ * signing key, an initialized {@link Mac} cloned for every request and the prefix of the {@code Authorization} header.
+ * Instances are shared through {@link SinchCredentialsCache}, so the derivation runs once per application instead of
+ * once per request. Only the decoded key is kept, the base64 encoded secret is neither stored nor exposed, and
+ * {@link #toString()} shows the fingerprint of the secret instead.
+ */
+public final class SinchCredentials {
+
+    static final String HMAC_ALGORITHM = "HmacSHA256";
+    static final String TIMESTAMP_HEADER = "x-timestamp";
+
+    private final String appKey;
+    // decoded signing key, null if the secret is not valid base64
+    private final byte[] key;
+    private final String fingerprint;
+    private final String authorizationPrefix;
+    private volatile Mac prototype;
+
+    SinchCredentials(String appKey, char[] secret) {
+        this.appKey = appKey;
+        this.key = decode(secret);
+        this.fingerprint = fingerprint(secret);
+        this.authorizationPrefix = "Application " + appKey + ":";
+    }
+
+    /**
+     * @return Application key.
+     */
+    public String appKey() {
+        return appKey;
+    }
+
+    /**
+     * @return Hex encoded prefix of the SHA-256 hash of the secret, safe to be logged.
+     */
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    String authorizationPrefix() {
+        return authorizationPrefix;
+    }
+
+    /**
+     * Returns a {@link Mac} initialized with the signing key. The key is decoded and the prototype initialized on first
+     * use; later calls only clone the prototype.
+     *
+     * @return Mac owned by the caller.
+     * @throws GeneralSecurityException if the secret is not a valid signing key.
+     */
+    Mac newMac() throws GeneralSecurityException {
+        Mac current = prototype;
+        if (current == null) {
+            current = initializedMac();
+            prototype = current;
+        }
+        try {
+            return (Mac) current.clone();
+        } catch (CloneNotSupportedException e) {
+            return initializedMac();
+        }
+    }
+
+    private Mac initializedMac() throws GeneralSecurityException {
+        if (key == null) {
+            throw new InvalidKeyException("Secret of application " + appKey + " is not a base64 encoded key");
+        }
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+        return mac;
+    }
+
+    /**
+     * Signs a request with the application signing scheme, used both for requests sent to Sinch and to check the
+     * callbacks received from Sinch.
+     *
+     * @param httpMethod  HTTP method of the request.
+     * @param content     Body of the request.
+     * @param contentType Value of the {@code Content-Type} header.
+     * @param timestamp   Value of the {@code x-timestamp} header.
+     * @param path        Path of the request.
+     * @return Base64 encoded signature.
+     * @throws GeneralSecurityException if the secret is not a valid signing key.
+     */
+    String sign(String httpMethod, byte[] content, String contentType, String timestamp, String path)
+            throws GeneralSecurityException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        String contentMd5 = encoder.encodeToString(MessageDigest.getInstance("MD5").digest(content));
+        String stringToSign = httpMethod + "\n" + contentMd5 + "\n" + contentType + "\n" +
+                TIMESTAMP_HEADER + ":" + timestamp + "\n" + path;
+        return encoder.encodeToString(newMac().doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Checks if the secret encodes the signing key. The secret is decoded on the fly and compared in constant time
+     * for secrets of the key's length, without allocating.
+     */
+    boolean matches(char[] otherSecret) {
+        if (key == null || otherSecret == null) {
+            return false;
+        }
+        int length = encodedLength(otherSecret);
+        if (length % 4 == 1 || length * 6 / 8 != key.length) {
+            return false;
+        }
+        int difference = 0;
+        int bits = 0;
+        int bitCount = 0;
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            int value = base64Value(otherSecret[i]);
+            if (value < 0) {
+                return false;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                difference |= (key[index++] ^ (bits >> bitCount)) & 0xFF;
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        return difference == 0;
+    }
+
+    private static byte[] decode(char[] secret) {
+        ByteBuffer encoded = StandardCharsets.ISO_8859_1.encode(CharBuffer.wrap(secret, 0, encodedLength(secret)));
+        try {
+            ByteBuffer decoded = Base64.getDecoder().decode(encoded);
+            byte[] key = new byte[decoded.remaining()];
+            decoded.get(key);
+            if (decoded.hasArray()) {
+                Arrays.fill(decoded.array(), (byte) 0);
+            }
+            return key.length == 0 ? null : key;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            if (encoded.hasArray()) {
+                Arrays.fill(encoded.array(), (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * @return Length of the base64 encoded secret without its padding.
+     */
+    private static int encodedLength(char[] secret) {
+        int length = secret.length;
+        while (length > 0 && secret[length - 1] == '=') {
+            length--;
+        }
+        return length;
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '+') {
+            return 62;
+        } else if (c == '/') {
+            return 63;
+        }
+        return -1;
+    }
+
+    private static String fingerprint(char[] secret) {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(secret));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            if (bytes.hasArray()) {
+                Arrays.fill(bytes.array(), (byte) 0);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SinchCredentials{appKey=" + appKey + ", secret=sha256:" + fingerprint + "}";
+    }
+}
@@ -0,0 +1,68 @@
+package com.sinch.authNode.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of {@link SinchCredentials}. AM creates node instances per request, so credentials derived by a
+ * node would not survive the request; this singleton keeps them per application key. Lookups compare the given secret
+ * with the cached signing key in constant time and without allocating. When the node configuration changes (the
+ * secret of the application is rotated) the comparison fails and the entry is replaced, so stale signing keys are
+ * never used.
+ */
+@Singleton
+public class SinchCredentialsCache {
+
+    static final int MAX_ENTRIES = 256;
+
+    private final Logger logger = LoggerFactory.getLogger(SinchCredentialsCache.class);
+    private final Map<String, SinchCredentials> credentials = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the credentials of given application, as read from the node configuration.
+     *
+     * @param appKey    Application key.
+     * @param appSecret Application secret.
+     * @return Cached credentials.
+     */
+    public SinchCredentials get(String appKey, char[] appSecret) {
+        SinchCredentials cached = credentials.get(appKey);
+        if (cached != null && cached.matches(appSecret)) {
+            return cached;
+        }
+        return store(cached, new SinchCredentials(appKey, appSecret));
+    }
+
+    /**
+     * Returns the credentials of given application if they are cached, which is the case once a node configured with
+     * the application has been executed by this instance.
+     *
+     * @param appKey Application key.
+     * @return Cached credentials or null.
+     */
+    public SinchCredentials find(String appKey) {
+        return appKey == null ? null : credentials.get(appKey);
+    }
+
+    /**
+     * Removes every cached entry.
+     */
+    public void clear() {
+        credentials.clear();
+    }
+
+    private SinchCredentials store(SinchCredentials previous, SinchCredentials created) {
+        if (previous != null) {
+            logger.debug("Secret of application " + created.appKey() + " changed from sha256:" + previous.fingerprint()
+                    + " to sha256:" + created.fingerprint());
+        } else if (credentials.size() >= MAX_ENTRIES) {
+            credentials.clear();
+        }
+        credentials.put(created.appKey(), created);
+        return created;
+    }
+}
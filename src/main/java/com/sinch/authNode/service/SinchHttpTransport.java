@@ -0,0 +1,263 @@
+package com.sinch.authNode.service;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived HTTP transport shared by every call made to the Sinch Rest API. Holds a single {@link OkHttpClient}
+ * so that connections (and their TLS sessions) are pooled and reused across logins instead of being negotiated
+ * for each request.
+ * <p>
+ * The transport is started by {@link com.sinch.authNode.SinchAuthNodePlugin#onStartup()} and drained by
+ * {@link com.sinch.authNode.SinchAuthNodePlugin#onShutdown()}. Pool parameters are read from system properties,
+ * see {@link Settings#fromSystemProperties()}.
+ */
+@Singleton
+public class SinchHttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(SinchHttpTransport.class);
+
+    private volatile OkHttpClient client;
+    private volatile Settings settings;
+    private volatile RegionalEndpoints endpoints;
+
+    /**
+     * Creates the underlying client using settings read from system properties. Calling this method on an already
+     * started transport has no effect.
+     */
+    public synchronized void start() {
+        start(Settings.fromSystemProperties());
+    }
+
+    /**
+     * Creates the underlying client using given settings. Calling this method on an already started transport has
+     * no effect.
+     *
+     * @param settings Connection pool and timeout settings.
+     */
+    public synchronized void start(Settings settings) {
+        if (client != null) {
+            return;
+        }
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(settings.maxRequests);
+        dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost);
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(settings.maxIdleConnections, settings.keepAliveMillis, TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(settings.http2Enabled ?
+                        Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) :
+                        Collections.singletonList(Protocol.HTTP_1_1))
+                .connectTimeout(settings.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(settings.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        this.settings = settings;
+        endpoints = new RegionalEndpoints(settings.baseUrls, settings.probePath);
+        endpoints.start(client, settings.probeIntervalMillis);
+        logger.debug("Sinch HTTP transport started with " + settings);
+    }
+
+    /**
+     * Cancels in-flight calls, stops the dispatcher threads and closes every pooled connection. The transport can be
+     * started again afterwards.
+     */
+    public synchronized void shutdown() {
+        OkHttpClient current = client;
+        if (current == null) {
+            return;
+        }
+        client = null;
+        endpoints.shutdown();
+        current.dispatcher().cancelAll();
+        ExecutorService executorService = current.dispatcher().executorService();
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        current.connectionPool().evictAll();
+        logger.debug("Sinch HTTP transport stopped");
+    }
+
+    /**
+     * Returns the shared client. If the plugin did not start the transport yet (for example when a node is used
+     * outside of AM) it is started lazily with default settings.
+     *
+     * @return Client used to communicate with Sinch Rest API.
+     */
+    public OkHttpClient client() {
+        OkHttpClient current = client;
+        if (current == null) {
+            start();
+            current = client;
+        }
+        return current;
+    }
+
+    /**
+     * Returns base URL of the Sinch Verification Rest API endpoint the next call should be sent to: the configured
+     * one or, if several regional endpoints are configured, the fastest healthy one.
+     *
+     * @return Base URL without trailing slash.
+     */
+    public String baseUrl() {
+        client();
+        return endpoints.select();
+    }
+
+    /**
+     * Resolves the host of every configured endpoint and opens a connection to it with a {@code HEAD} request on the
+     * probe path, so the first calls find the address resolved and a connection, TLS session included, in the pool.
+     * Nothing is sent to the verification resources. Failures are logged and skipped.
+     *
+     * @return Number of endpoints a connection was opened to.
+     */
+    public int preconnect() {
+        OkHttpClient current = client();
+        Settings currentSettings = settings;
+        if (currentSettings == null) {
+            return 0;
+        }
+        int connected = 0;
+        for (String baseUrl : currentSettings.baseUrls) {
+            HttpUrl url = HttpUrl.parse(baseUrl + currentSettings.probePath);
+            if (url == null) {
+                logger.warn("Unable to pre-connect to invalid Sinch endpoint " + baseUrl);
+                continue;
+            }
+            try {
+                current.dns().lookup(url.host());
+                try (Response ignored = current.newCall(new Request.Builder().url(url).head().build()).execute()) {
+                    connected++;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to pre-connect to Sinch endpoint " + baseUrl + ": " + e.getLocalizedMessage());
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Records the outcome of a call, so failing regional endpoints stop receiving traffic.
+     *
+     * @param baseUrl Base URL the call was sent to, as returned by {@link #baseUrl()}.
+     * @param failure True if the call failed because of the endpoint (network error, server error, throttling).
+     */
+    void onResult(String baseUrl, boolean failure) {
+        RegionalEndpoints current = endpoints;
+        if (current != null) {
+            current.onResult(baseUrl, failure);
+        }
+    }
+
+    /**
+     * Tunable parameters of the connection pool.
+     */
+    public static final class Settings {
+
+        static final String PROPERTY_PREFIX = "com.sinch.authNode.http.";
+        static final String DEFAULT_BASE_URL = "https://verification.api.sinch.com";
+
+        final String baseUrl;
+        final int maxIdleConnections;
+        final long keepAliveMillis;
+        final int maxRequests;
+        final int maxRequestsPerHost;
+        final boolean http2Enabled;
+        final long connectTimeoutMillis;
+        final long readTimeoutMillis;
+        final List<String> baseUrls;
+        final long probeIntervalMillis;
+        final String probePath;
+
+        Settings(String baseUrl, int maxIdleConnections, long keepAliveMillis, int maxRequests, int maxRequestsPerHost,
+                 boolean http2Enabled, long connectTimeoutMillis, long readTimeoutMillis) {
+            this(baseUrl, maxIdleConnections, keepAliveMillis, maxRequests, maxRequestsPerHost, http2Enabled,
+                    connectTimeoutMillis, readTimeoutMillis, Collections.singletonList(baseUrl), 0, "/");
+        }
+
+        Settings(String baseUrl, int maxIdleConnections, long keepAliveMillis, int maxRequests, int maxRequestsPerHost,
+                 boolean http2Enabled, long connectTimeoutMillis, long readTimeoutMillis, List<String> baseUrls,
+                 long probeIntervalMillis, String probePath) {
+            this.baseUrl = baseUrl;
+            this.baseUrls = baseUrls.isEmpty() ? Collections.singletonList(baseUrl) : baseUrls;
+            this.probeIntervalMillis = probeIntervalMillis;
+            this.probePath = probePath;
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = keepAliveMillis;
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            this.http2Enabled = http2Enabled;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        /**
+         * Reads the settings from {@code com.sinch.authNode.http.*} system properties, falling back to defaults
+         * suitable for a single AM instance. Regional endpoints are given as a comma separated list of base URLs.
+         *
+         * @return Settings of the transport.
+         */
+        public static Settings fromSystemProperties() {
+            String baseUrl = System.getProperty(PROPERTY_PREFIX + "baseUrl", DEFAULT_BASE_URL);
+            return new Settings(
+                    baseUrl,
+                    Integer.getInteger(PROPERTY_PREFIX + "maxIdleConnections", 32),
+                    Long.getLong(PROPERTY_PREFIX + "keepAliveMillis", TimeUnit.MINUTES.toMillis(5)),
+                    Integer.getInteger(PROPERTY_PREFIX + "maxRequests", 256),
+                    Integer.getInteger(PROPERTY_PREFIX + "maxRequestsPerHost", 64),
+                    Boolean.parseBoolean(System.getProperty(PROPERTY_PREFIX + "http2Enabled", "true")),
+                    Long.getLong(PROPERTY_PREFIX + "connectTimeoutMillis", 5_000L),
+                    Long.getLong(PROPERTY_PREFIX + "readTimeoutMillis", 10_000L),
+                    parseBaseUrls(System.getProperty(PROPERTY_PREFIX + "regionalBaseUrls", "")),
+                    Long.getLong(PROPERTY_PREFIX + "probeIntervalMillis", 15_000L),
+                    System.getProperty(PROPERTY_PREFIX + "probePath", "/"));
+        }
+
+        private static List<String> parseBaseUrls(String value) {
+            List<String> baseUrls = new ArrayList<>();
+            for (String baseUrl : value.split(",")) {
+                String trimmed = baseUrl.trim();
+                if (!trimmed.isEmpty()) {
+                    baseUrls.add(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed);
+                }
+            }
+            return baseUrls;
+        }
+
+        @Override
+        public String toString() {
+            return "Settings{baseUrl=" + baseUrl +
+                    ", maxIdleConnections=" + maxIdleConnections +
+                    ", keepAliveMillis=" + keepAliveMillis +
+                    ", maxRequests=" + maxRequests +
+                    ", maxRequestsPerHost=" + maxRequestsPerHost +
+                    ", http2Enabled=" + http2Enabled +
+                    ", connectTimeoutMillis=" + connectTimeoutMillis +
+                    ", readTimeoutMillis=" + readTimeoutMillis +
+                    ", baseUrls=" + baseUrls +
+                    ", probeIntervalMillis=" + probeIntervalMillis + '}';
+        }
+    }
+}
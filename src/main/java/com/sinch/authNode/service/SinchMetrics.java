@@ -0,0 +1,303 @@
+package com.sinch.authNode.service;
+
+import com.google.inject.Inject;
+import com.sinch.verification.model.VerificationMethodType;
+import org.forgerock.monitoring.api.instrument.Counter;
+import org.forgerock.monitoring.api.instrument.MeterRegistry;
+import org.forgerock.monitoring.api.instrument.Tag;
+import org.forgerock.monitoring.api.instrument.Timer;
+import org.forgerock.openam.auth.node.api.Action;
+
+import javax.inject.Singleton;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Timers and counters of Sinch calls and of the nodes, published through AM's monitoring framework. Meters are created
+ * on first use and kept in arrays indexed by the ordinals of their tags (per realm for the node meters), so recording
+ * a value only reads an array slot and never allocates. When AM does not provide a {@link MeterRegistry} nothing is
+ * recorded.
+ */
+@Singleton
+public class SinchMetrics {
+
+    static final String API_REQUEST_TIMER = "sinch.api.request";
+    static final String INITIATION_TIMER = "sinch.node.initiation";
+    static final String VERIFICATION_TIMER = "sinch.node.verification";
+    static final String PHONE_NUMBER_FALLBACK_COUNTER = "sinch.node.phoneNumberFallback";
+
+    private static final VerificationMethodType[] METHODS = VerificationMethodType.values();
+    private static final ApiOperation[] API_OPERATIONS = ApiOperation.values();
+    private static final ApiOutcome[] API_OUTCOMES = ApiOutcome.values();
+    private static final NodeOutcome[] NODE_OUTCOMES = NodeOutcome.values();
+    private static final PhoneNumberFallback[] FALLBACKS = PhoneNumberFallback.values();
+    private static final int NODE_TIMER_COUNT = METHODS.length * NODE_OUTCOMES.length;
+
+    private final AtomicReferenceArray<Timer> apiTimers =
+            new AtomicReferenceArray<>(API_OPERATIONS.length * METHODS.length * API_OUTCOMES.length);
+    private final Map<String, AtomicReferenceArray<Timer>> initiationTimers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicReferenceArray<Timer>> verificationTimers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicReferenceArray<Counter>> fallbackCounters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    /**
+     * Creates metrics which record nothing until a registry is set.
+     */
+    public SinchMetrics() {
+    }
+
+    /**
+     * Creates metrics published to given registry.
+     *
+     * @param registry Registry the meters are created in.
+     */
+    public SinchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Sets the registry of AM's monitoring framework. Injected only if AM binds it.
+     *
+     * @param registry Registry the meters are created in.
+     */
+    @Inject(optional = true)
+    public void setMeterRegistry(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return True if meters are published, false if AM does not provide a registry and nothing is recorded.
+     */
+    public boolean isPublished() {
+        return registry != null;
+    }
+
+    /**
+     * Records a call to Sinch Rest API.
+     *
+     * @param operation     Called operation.
+     * @param method        Verification method.
+     * @param outcome       Outcome of the call.
+     * @param durationNanos Duration of the call.
+     */
+    public void recordApiCall(ApiOperation operation, VerificationMethodType method, ApiOutcome outcome, long durationNanos) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        int index = (operation.ordinal() * METHODS.length + method.ordinal()) * API_OUTCOMES.length + outcome.ordinal();
+        Timer timer = apiTimers.get(index);
+        if (timer == null) {
+            timer = meterRegistry.timer(API_REQUEST_TIMER, Tag.of("operation", operation.tag),
+                    Tag.of("method", tag(method)), Tag.of("outcome", outcome.tag));
+            apiTimers.set(index, timer);
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a single execution of the authentication node.
+     *
+     * @param realm         Path of the realm.
+     * @param method        Verification method.
+     * @param outcome       Outcome of the execution.
+     * @param durationNanos Duration of the execution.
+     */
+    public void recordInitiation(String realm, VerificationMethodType method, NodeOutcome outcome, long durationNanos) {
+        recordNode(INITIATION_TIMER, initiationTimers, realm, method, outcome, durationNanos);
+    }
+
+    /**
+     * Records a single execution of the code collector node.
+     *
+     * @param realm         Path of the realm.
+     * @param method        Verification method.
+     * @param outcome       Outcome of the execution.
+     * @param durationNanos Duration of the execution.
+     */
+    public void recordVerification(String realm, VerificationMethodType method, NodeOutcome outcome, long durationNanos) {
+        recordNode(VERIFICATION_TIMER, verificationTimers, realm, method, outcome, durationNanos);
+    }
+
+    /**
+     * Counts the user being asked for the phone number by the authentication node.
+     *
+     * @param realm  Path of the realm.
+     * @param reason Reason the phone number is asked for.
+     */
+    public void recordPhoneNumberFallback(String realm, PhoneNumberFallback reason) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        AtomicReferenceArray<Counter> counters = fallbackCounters.get(realm);
+        if (counters == null) {
+            counters = fallbackCounters.computeIfAbsent(realm, ignored -> new AtomicReferenceArray<>(FALLBACKS.length));
+        }
+        Counter counter = counters.get(reason.ordinal());
+        if (counter == null) {
+            counter = meterRegistry.counter(PHONE_NUMBER_FALLBACK_COUNTER, Tag.of("realm", realm),
+                    Tag.of("reason", reason.tag));
+            counters.set(reason.ordinal(), counter);
+        }
+        counter.increment();
+    }
+
+    private void recordNode(String name, Map<String, AtomicReferenceArray<Timer>> timersByRealm, String realm,
+                            VerificationMethodType method, NodeOutcome outcome, long durationNanos) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        AtomicReferenceArray<Timer> timers = timersByRealm.get(realm);
+        if (timers == null) {
+            timers = timersByRealm.computeIfAbsent(realm, ignored -> new AtomicReferenceArray<>(NODE_TIMER_COUNT));
+        }
+        int index = method.ordinal() * NODE_OUTCOMES.length + outcome.ordinal();
+        Timer timer = timers.get(index);
+        if (timer == null) {
+            timer = meterRegistry.timer(name, Tag.of("realm", realm), Tag.of("method", tag(method)),
+                    Tag.of("outcome", outcome.tag));
+            timers.set(index, timer);
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String tag(VerificationMethodType method) {
+        return method.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Operations of Sinch Rest API.
+     */
+    public enum ApiOperation {
+        INITIATION("initiation"),
+        VERIFICATION("verification");
+
+        private final String tag;
+        private final String spanName;
+
+        ApiOperation(String tag) {
+            this.tag = tag;
+            this.spanName = "sinch.api." + tag;
+        }
+
+        /**
+         * @return Name of the span tracing the call.
+         */
+        public String spanName() {
+            return spanName;
+        }
+    }
+
+    /**
+     * Outcomes of calls to Sinch Rest API.
+     */
+    public enum ApiOutcome {
+        /** 2xx response. */
+        SUCCESS("success"),
+        /** 4xx response other than 429, for example an invalid phone number. */
+        CLIENT_ERROR("clientError"),
+        /** 5xx or 429 response or a network error. */
+        SERVICE_ERROR("serviceError"),
+        /** Call cancelled before the response arrived. */
+        CANCELLED("cancelled"),
+        /** Call rejected locally by the circuit breaker or the bulkhead. */
+        REJECTED("rejected");
+
+        private final String tag;
+
+        ApiOutcome(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return Value of the tag.
+         */
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /**
+     * Outcomes of node executions.
+     */
+    public enum NodeOutcome {
+        NEXT("next"),
+        TRUE("true"),
+        FALSE("false"),
+        UNAVAILABLE("unavailable"),
+        TIMEOUT("timeout"),
+        THROTTLED("throttled"),
+        TOO_MANY_ATTEMPTS("tooManyAttempts"),
+        CALLBACKS("callbacks"),
+        ERROR("error");
+
+        private final String tag;
+
+        NodeOutcome(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return Value of the tag.
+         */
+        public String tag() {
+            return tag;
+        }
+
+        /**
+         * Maps the action returned by a node to the outcome.
+         *
+         * @param action Action returned by the node, null if the node threw an exception.
+         * @return The outcome.
+         */
+        public static NodeOutcome of(Action action) {
+            if (action == null) {
+                return ERROR;
+            }
+            if (action.outcome == null) {
+                return CALLBACKS;
+            }
+            switch (action.outcome) {
+                case "outcome":
+                    return NEXT;
+                case "true":
+                    return TRUE;
+                case "false":
+                    return FALSE;
+                case "unavailable":
+                    return UNAVAILABLE;
+                case "timeout":
+                    return TIMEOUT;
+                case "throttled":
+                    return THROTTLED;
+                case "tooManyAttempts":
+                    return TOO_MANY_ATTEMPTS;
+                default:
+                    return NEXT;
+            }
+        }
+    }
+
+    /**
+     * Reasons the authentication node asks the user for the phone number.
+     */
+    public enum PhoneNumberFallback {
+        /** No phone number in user's profile. */
+        MISSING("missing"),
+        /** The phone number failed local validation. */
+        INVALID("invalid"),
+        /** Sinch rejected the phone number as badly formatted. */
+        FORMATTING_ERROR("formattingError");
+
+        private final String tag;
+
+        PhoneNumberFallback(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.sinch.authNode.service;
+
+/**
+ * Thrown when a call to Sinch Rest API is rejected locally, without reaching the network, because the circuit
+ * breaker of the application is open or the limit of concurrent calls has been reached.
+ */
+public class SinchUnavailableException extends RuntimeException {
+
+    /**
+     * Creates the exception.
+     *
+     * @param message Reason of the rejection.
+     */
+    public SinchUnavailableException(String message) {
+        super(message);
+    }
+}
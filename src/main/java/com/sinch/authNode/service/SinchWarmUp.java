@@ -0,0 +1,111 @@
+package com.sinch.authNode.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional warm-up run in background when the plugin starts, so the first logins after an AM restart do not pay for
+ * loading and compiling the request and response handling, resolving the Sinch endpoints and negotiating TLS. The
+ * request handling of {@link SinchApiService} is run on synthetic payloads (see {@link SinchApiService#warmUp(int)})
+ * and a connection is opened to every endpoint through the shared {@link SinchHttpTransport} (see
+ * {@link SinchHttpTransport#preconnect()}); no verification is ever sent. The time taken is logged once done.
+ * <p>
+ * Disabled unless {@code com.sinch.authNode.warmUp.enabled} is set, the number of simulated calls is read from
+ * {@code com.sinch.authNode.warmUp.iterations} and pre-connecting can be turned off with
+ * {@code com.sinch.authNode.warmUp.preconnect}.
+ */
+@Singleton
+public class SinchWarmUp {
+
+    static final String PROPERTY_PREFIX = "com.sinch.authNode.warmUp.";
+    static final int BATCH_SIZE = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(SinchWarmUp.class);
+
+    private final SinchHttpTransport transport;
+    private final SinchApiService apiService;
+    private final boolean enabled;
+    private final int iterations;
+    private final boolean preconnect;
+    private Thread thread;
+
+    /**
+     * Creates the warm-up configured with {@code com.sinch.authNode.warmUp.*} system properties.
+     *
+     * @param transport  Shared HTTP transport the connections are opened with.
+     * @param apiService Service whose request handling is warmed up.
+     */
+    @Inject
+    public SinchWarmUp(SinchHttpTransport transport, SinchApiService apiService) {
+        this(transport, apiService,
+                Boolean.getBoolean(PROPERTY_PREFIX + "enabled"),
+                Integer.getInteger(PROPERTY_PREFIX + "iterations", 2_000),
+                Boolean.parseBoolean(System.getProperty(PROPERTY_PREFIX + "preconnect", "true")));
+    }
+
+    SinchWarmUp(SinchHttpTransport transport, SinchApiService apiService, boolean enabled, int iterations,
+                boolean preconnect) {
+        this.transport = transport;
+        this.apiService = apiService;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.preconnect = preconnect;
+    }
+
+    /**
+     * Starts the warm-up on a daemon thread if it is enabled. Calling this method while the warm-up runs has no effect.
+     */
+    public synchronized void start() {
+        if (!enabled || thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "sinch-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Interrupts the warm-up if it is still running.
+     */
+    public synchronized void shutdown() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Runs the warm-up on the calling thread. Simulated calls are run in batches, so an interrupted warm-up stops after
+     * the current batch.
+     *
+     * @return Time taken in milliseconds.
+     */
+    long run() {
+        long start = System.nanoTime();
+        int simulated = 0;
+        try {
+            while (simulated < iterations && !Thread.currentThread().isInterrupted()) {
+                int batch = Math.min(BATCH_SIZE, iterations - simulated);
+                apiService.warmUp(batch);
+                simulated += batch;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Warm-up of Sinch request handling failed: " + e.getLocalizedMessage());
+        }
+        long simulatedNanos = System.nanoTime() - start;
+        int connected = 0;
+        if (preconnect && !Thread.currentThread().isInterrupted()) {
+            connected = transport.preconnect();
+        }
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Sinch warm-up completed in " + totalMillis + "ms: " + simulated + " simulated calls of each kind in "
+                + TimeUnit.NANOSECONDS.toMillis(simulatedNanos) + "ms"
+                + (preconnect ? ", " + connected + " endpoint(s) pre-connected in "
+                + (totalMillis - TimeUnit.NANOSECONDS.toMillis(simulatedNanos)) + "ms" : ""));
+        return totalMillis;
+    }
+}
@@ -0,0 +1,419 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sinch.verification.model.verification.VerificationStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.inject.Singleton;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives the callbacks Sinch sends while a verification is in progress and stores the reported results in
+ * {@link VerificationResultStore}. With callbacks configured for the Sinch application,
+ * {@link com.sinch.authNode.SinchCodeCollectorCodeNode} resolves most verifications from the store instead of calling
+ * Sinch.
+ * <p>
+ * The receiver is disabled unless {@code com.sinch.authNode.webhook.port} is set. It listens on
+ * {@code com.sinch.authNode.webhook.bindAddress}, the loopback interface by default so callbacks reach it through the
+ * reverse proxy or load balancer terminating TLS in front of AM, and serves HTTPS itself when
+ * {@code com.sinch.authNode.webhook.keyStore} is set. Callbacks are accepted with POST on
+ * {@code com.sinch.authNode.webhook.path} and must be signed with the secret of the application they belong to, the
+ * same way the nodes sign their requests, over {@code com.sinch.authNode.webhook.signedPath} if a proxy in front of
+ * the receiver rewrites the path. Secrets are read from the secret entries of
+ * {@code com.sinch.authNode.webhook.applicationsKeyStore}, one per application key; without it only applications
+ * this instance has used since it started are known. Callbacks of unknown applications, with an invalid signature,
+ * with a timestamp more than {@link #MAX_CLOCK_SKEW_MILLIS} away or replaying an accepted callback are rejected with
+ * 401.
+ */
+@Singleton
+public class SinchWebhookReceiver {
+
+    static final long MAX_CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(SinchWebhookReceiver.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String AUTHORIZATION_SCHEME = "Application ";
+    private static final String RESULT_EVENT = "VerificationResultEvent";
+    private static final String REQUEST_EVENT = "VerificationRequestEvent";
+    private static final byte[] ALLOW_RESPONSE = "{\"action\":\"allow\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_RESPONSE = new byte[0];
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final SinchCredentialsCache credentialsCache;
+    private final VerificationResultStore results;
+    private final Settings settings;
+    // signatures of accepted callbacks, kept until their timestamp is out of the accepted window
+    private final Map<String, Long> acceptedSignatures = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurgeMillis = new AtomicLong();
+    private volatile Map<String, SinchCredentials> applications;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Creates the receiver configured with {@code com.sinch.authNode.webhook.*} system properties.
+     *
+     * @param credentialsCache Cache of the credentials the callbacks are verified with.
+     * @param results          Store the reported results are kept in.
+     */
+    @Inject
+    public SinchWebhookReceiver(SinchCredentialsCache credentialsCache, VerificationResultStore results) {
+        this(credentialsCache, results, Settings.fromSystemProperties());
+    }
+
+    SinchWebhookReceiver(SinchCredentialsCache credentialsCache, VerificationResultStore results, Settings settings) {
+        this.credentialsCache = credentialsCache;
+        this.results = results;
+        this.settings = settings;
+    }
+
+    /**
+     * Starts listening for callbacks if the receiver is enabled. Calling it again has no effect.
+     *
+     * @throws IOException if the port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (settings.port < 0 || server != null) {
+            return;
+        }
+        if (settings.applicationsKeyStore != null) {
+            applications = loadApplications(settings.applicationsKeyStore, settings.applicationsKeyStorePassword);
+        } else {
+            logger.warn("No applications key store configured for Sinch callbacks, callbacks of applications not "
+                    + "used by this instance since it started are rejected");
+        }
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(settings.bindAddress), settings.port);
+        HttpServer created = settings.keyStore == null ? HttpServer.create(address, 0) : createHttpsServer(address);
+        created.createContext(settings.path, this::handle);
+        executor = Executors.newFixedThreadPool(settings.threads, runnable -> {
+            Thread thread = new Thread(runnable, "sinch-webhook-receiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        created.setExecutor(executor);
+        created.start();
+        server = created;
+        logger.info("Receiving Sinch callbacks on " + (settings.keyStore == null ? "http://" : "https://")
+                + settings.bindAddress + ":" + port() + settings.path);
+    }
+
+    private HttpsServer createHttpsServer(InetSocketAddress address) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get(settings.keyStore))) {
+            KeyStore keyStore = KeyStore.getInstance(settings.keyStoreType);
+            keyStore.load(input, settings.keyStorePassword);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, settings.keyStorePassword);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), null, null);
+            HttpsServer server = HttpsServer.create(address, 0);
+            server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            return server;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to load key store " + settings.keyStore + " of Sinch callback receiver", e);
+        }
+    }
+
+    /**
+     * Reads the secrets of the applications from the secret entries of a PKCS12 key store, as written by
+     * {@code keytool -importpass -alias <appKey>}. Aliases of PKCS12 key stores are case insensitive, so applications
+     * are looked up by their lower case key.
+     */
+    private static Map<String, SinchCredentials> loadApplications(String path, char[] password) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get(path))) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(input, password);
+            Map<String, SinchCredentials> loaded = new HashMap<>();
+            for (String alias : Collections.list(keyStore.aliases())) {
+                Key key = keyStore.getKey(alias, password);
+                if (!(key instanceof SecretKey)) {
+                    continue;
+                }
+                PBEKeySpec spec = (PBEKeySpec) SecretKeyFactory.getInstance(key.getAlgorithm())
+                        .getKeySpec((SecretKey) key, PBEKeySpec.class);
+                char[] secret = spec.getPassword();
+                loaded.put(alias.toLowerCase(Locale.ROOT), new SinchCredentials(alias, secret));
+                Arrays.fill(secret, '\0');
+                spec.clearPassword();
+            }
+            logger.info("Sinch callbacks accepted for " + loaded.size() + " application(s)");
+            return loaded;
+        } catch (GeneralSecurityException | ClassCastException e) {
+            throw new IOException("Unable to read applications key store " + path + " of Sinch callback receiver", e);
+        }
+    }
+
+    /**
+     * @return Port the receiver listens on or -1 if it is not started.
+     */
+    public synchronized int port() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops listening for callbacks. Callbacks being handled are given a second to complete.
+     */
+    public synchronized void shutdown() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Reply reply = receive(exchange);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(reply.status, reply.body.length == 0 ? -1 : reply.body.length);
+            if (reply.body.length > 0) {
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(reply.body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Reply receive(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return new Reply(405);
+        }
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+            return new Reply(413);
+        }
+        if (!isAuthentic(exchange, body)) {
+            return new Reply(401);
+        }
+        JsonNode callback;
+        try {
+            callback = MAPPER.readTree(body);
+        } catch (IOException e) {
+            logger.debug("Malformed Sinch callback " + e.getLocalizedMessage());
+            return new Reply(400);
+        }
+        String event = callback.path("event").asText();
+        if (RESULT_EVENT.equals(event)) {
+            storeResult(callback);
+            return new Reply(200);
+        }
+        if (REQUEST_EVENT.equals(event)) {
+            return new Reply(200, ALLOW_RESPONSE);
+        }
+        return new Reply(200);
+    }
+
+    private boolean isAuthentic(HttpExchange exchange, byte[] body) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String timestamp = exchange.getRequestHeaders().getFirst(SinchCredentials.TIMESTAMP_HEADER);
+        if (authorization == null || timestamp == null || !authorization.startsWith(AUTHORIZATION_SCHEME)) {
+            logger.debug("Sinch callback rejected as it is not signed");
+            return false;
+        }
+        int separator = authorization.lastIndexOf(':');
+        if (separator <= AUTHORIZATION_SCHEME.length()) {
+            logger.debug("Sinch callback rejected as its authorization header is malformed");
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long timestampMillis = parseTimestamp(timestamp);
+        if (timestampMillis < 0 || Math.abs(now - timestampMillis) > MAX_CLOCK_SKEW_MILLIS) {
+            logger.debug("Sinch callback rejected as its timestamp " + timestamp + " is not recent");
+            return false;
+        }
+        String appKey = authorization.substring(AUTHORIZATION_SCHEME.length(), separator);
+        SinchCredentials credentials = credentials(appKey);
+        if (credentials == null) {
+            logger.debug("Sinch callback rejected as application " + appKey + " is unknown to this instance");
+            return false;
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String path = settings.signedPath != null ? settings.signedPath : exchange.getRequestURI().getRawPath();
+        try {
+            String expected = credentials.sign("POST", body, contentType == null ? "" : contentType, timestamp, path);
+            byte[] signature = authorization.substring(separator + 1).getBytes(StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), signature)) {
+                logger.debug("Sinch callback rejected as its signature does not match");
+                return false;
+            }
+        } catch (GeneralSecurityException e) {
+            logger.debug("Unable to verify signature of Sinch callback " + e.getLocalizedMessage());
+            return false;
+        }
+        if (isReplay(authorization, timestampMillis, now)) {
+            logger.debug("Sinch callback rejected as it was already received");
+            return false;
+        }
+        return true;
+    }
+
+    private SinchCredentials credentials(String appKey) {
+        Map<String, SinchCredentials> configured = applications;
+        return configured != null ? configured.get(appKey.toLowerCase(Locale.ROOT)) : credentialsCache.find(appKey);
+    }
+
+    /**
+     * Records the signature of an authentic callback, which is unique to its body and timestamp, until the timestamp
+     * falls out of the accepted window, so the same callback is accepted only once.
+     */
+    private boolean isReplay(String authorization, long timestampMillis, long now) {
+        long nextPurge = nextPurgeMillis.get();
+        if (now >= nextPurge && nextPurgeMillis.compareAndSet(nextPurge, now + PURGE_INTERVAL_MILLIS)) {
+            acceptedSignatures.values().removeIf(expiry -> expiry < now);
+        }
+        return acceptedSignatures.putIfAbsent(authorization, timestampMillis + MAX_CLOCK_SKEW_MILLIS) != null;
+    }
+
+    private void storeResult(JsonNode callback) {
+        String verificationId = callback.path("id").asText(null);
+        VerificationStatus status;
+        try {
+            status = VerificationStatus.valueOf(callback.path("status").asText().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Sinch callback with unknown status ignored for verificationId: " + verificationId);
+            return;
+        }
+        if (!results.put(verificationId, status)) {
+            logger.debug("Result " + status + " of verificationId: " + verificationId + " not stored");
+        }
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Instant.parse(timestamp).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] readBody(InputStream input) throws IOException {
+        try (InputStream body = input) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (content.size() + read > MAX_BODY_BYTES) {
+                    return null;
+                }
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        }
+    }
+
+    private static final class Reply {
+
+        private final int status;
+        private final byte[] body;
+
+        private Reply(int status) {
+            this(status, EMPTY_RESPONSE);
+        }
+
+        private Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Settings of the receiver.
+     */
+    static final class Settings {
+
+        static final String PROPERTY_PREFIX = "com.sinch.authNode.webhook.";
+
+        static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+
+        final int port;
+        final String path;
+        final int threads;
+        final String bindAddress;
+        final String keyStore;
+        final char[] keyStorePassword;
+        final String keyStoreType;
+        final String signedPath;
+        final String applicationsKeyStore;
+        final char[] applicationsKeyStorePassword;
+
+        Settings(int port, String path, int threads) {
+            this(port, path, threads, DEFAULT_BIND_ADDRESS, null, null, KeyStore.getDefaultType(), null, null, null);
+        }
+
+        Settings(int port, String path, int threads, String bindAddress, String keyStore, char[] keyStorePassword,
+                 String keyStoreType, String signedPath, String applicationsKeyStore,
+                 char[] applicationsKeyStorePassword) {
+            this.port = port;
+            this.path = path;
+            this.threads = threads;
+            this.bindAddress = bindAddress;
+            this.keyStore = keyStore;
+            this.keyStorePassword = keyStorePassword;
+            this.keyStoreType = keyStoreType;
+            this.signedPath = signedPath;
+            this.applicationsKeyStore = applicationsKeyStore;
+            this.applicationsKeyStorePassword = applicationsKeyStorePassword;
+        }
+
+        /**
+         * Reads the settings from {@code com.sinch.authNode.webhook.*} system properties. The receiver is disabled if
+         * no port is set.
+         *
+         * @return Settings of the receiver.
+         */
+        static Settings fromSystemProperties() {
+            String keyStorePassword = System.getProperty(PROPERTY_PREFIX + "keyStorePassword");
+            String applicationsKeyStorePassword = System.getProperty(PROPERTY_PREFIX + "applicationsKeyStorePassword");
+            return new Settings(
+                    Integer.getInteger(PROPERTY_PREFIX + "port", -1),
+                    System.getProperty(PROPERTY_PREFIX + "path", "/sinch/verification"),
+                    Integer.getInteger(PROPERTY_PREFIX + "threads", 2),
+                    System.getProperty(PROPERTY_PREFIX + "bindAddress", DEFAULT_BIND_ADDRESS),
+                    System.getProperty(PROPERTY_PREFIX + "keyStore"),
+                    keyStorePassword == null ? null : keyStorePassword.toCharArray(),
+                    System.getProperty(PROPERTY_PREFIX + "keyStoreType", KeyStore.getDefaultType()),
+                    System.getProperty(PROPERTY_PREFIX + "signedPath"),
+                    System.getProperty(PROPERTY_PREFIX + "applicationsKeyStore"),
+                    applicationsKeyStorePassword == null ? null : applicationsKeyStorePassword.toCharArray());
+        }
+    }
+}
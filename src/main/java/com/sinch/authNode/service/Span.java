@@ -0,0 +1,111 @@
+package com.sinch.authNode.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timed operation of a verification traced by {@link VerificationTracer}. Spans of a single verification share the
+ * trace id, so the steps executed by both nodes (and the time the user spends typing the code in between) form a
+ * single timeline. When tracing is disabled or the verification is not sampled {@link #NOOP} is used, whose methods do
+ * nothing.
+ */
+public final class Span {
+
+    /**
+     * Span used when the verification is not traced.
+     */
+    public static final Span NOOP = new Span(null, null, null, null, 0, null);
+
+    final String traceId;
+    final String spanId;
+    final String parentId;
+    final String name;
+    final long startMicros;
+    final Map<String, String> tags = new LinkedHashMap<>();
+    long durationMicros;
+
+    private final long startNanos;
+    private final VerificationTracer tracer;
+    private Span previous;
+    private boolean ended;
+
+    Span(String traceId, String spanId, String parentId, String name, long startMicros, VerificationTracer tracer) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.startMicros = startMicros;
+        this.startNanos = System.nanoTime();
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return True if the span is recorded.
+     */
+    public boolean isRecording() {
+        return tracer != null;
+    }
+
+    /**
+     * Adds a tag to the span.
+     *
+     * @param key   Key of the tag.
+     * @param value Value of the tag.
+     * @return This span.
+     */
+    public Span tag(String key, String value) {
+        if (tracer != null && value != null) {
+            synchronized (tags) {
+                tags.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Value of the W3C {@code traceparent} header sent to Sinch, so its logs can be correlated with the span.
+     *
+     * @return Header value or null if the span is not recorded.
+     */
+    public String traceParent() {
+        return tracer == null ? null : "00-" + traceId + "-" + spanId + "-01";
+    }
+
+    /**
+     * Ends the span and hands it over to the exporter. If the span was active on the calling thread, the previously
+     * active span becomes active again. Calling this method more than once has no effect.
+     */
+    public void end() {
+        if (tracer == null) {
+            return;
+        }
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+        }
+        durationMicros = Math.max(1, (System.nanoTime() - startNanos) / 1_000);
+        tracer.onEnd(this);
+    }
+
+    void end(long durationMicros) {
+        this.durationMicros = Math.max(1, durationMicros);
+        this.ended = true;
+        tracer.onEnd(this);
+    }
+
+    Span previous() {
+        return previous;
+    }
+
+    void previous(Span previous) {
+        this.previous = previous;
+    }
+
+    Map<String, String> tagsSnapshot() {
+        synchronized (tags) {
+            return new LinkedHashMap<>(tags);
+        }
+    }
+}
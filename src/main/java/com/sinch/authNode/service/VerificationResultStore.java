@@ -0,0 +1,110 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.verification.VerificationStatus;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the results of verifications reported by Sinch through {@link SinchWebhookReceiver}, so
+ * {@link com.sinch.authNode.SinchCodeCollectorCodeNode} can resolve a verification without calling Sinch. Only final
+ * results are kept and each one is handed out once. Results expire after
+ * {@code com.sinch.authNode.webhook.resultTtlMillis} and at most {@code com.sinch.authNode.webhook.maxResults} are
+ * kept; when the store is full, expired results are purged and, if it is still full, the new result is dropped.
+ */
+@Singleton
+public class VerificationResultStore {
+
+    static final String PROPERTY_PREFIX = "com.sinch.authNode.webhook.";
+
+    private final long ttlMillis;
+    private final int maxResults;
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the store configured with {@code com.sinch.authNode.webhook.*} system properties.
+     */
+    @Inject
+    public VerificationResultStore() {
+        this(Long.getLong(PROPERTY_PREFIX + "resultTtlMillis", TimeUnit.MINUTES.toMillis(5)),
+                Integer.getInteger(PROPERTY_PREFIX + "maxResults", 100_000));
+    }
+
+    VerificationResultStore(long ttlMillis, int maxResults) {
+        this.ttlMillis = ttlMillis;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Stores the result of a verification. Results which are not final are ignored.
+     *
+     * @param verificationId Id of the verification.
+     * @param status         Status reported by Sinch.
+     * @return True if the result was stored.
+     */
+    public boolean put(String verificationId, VerificationStatus status) {
+        if (verificationId == null || status == null || status == VerificationStatus.PENDING) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (results.size() >= maxResults) {
+            purgeExpired(now);
+            if (results.size() >= maxResults) {
+                return false;
+            }
+        }
+        results.put(verificationId, new Entry(status, now + ttlMillis));
+        return true;
+    }
+
+    /**
+     * Removes and returns the result of a verification.
+     *
+     * @param verificationId Id of the verification.
+     * @return The final status or null if no result has been reported or it has already expired.
+     */
+    public VerificationStatus take(String verificationId) {
+        Entry entry = verificationId == null || results.isEmpty() ? null : results.remove(verificationId);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.status;
+    }
+
+    /**
+     * @return True if no result is kept, which is always the case while the callback receiver is disabled.
+     */
+    public boolean isEmpty() {
+        return results.isEmpty();
+    }
+
+    /**
+     * @return Number of results kept, including the expired ones not purged yet.
+     */
+    public int size() {
+        return results.size();
+    }
+
+    private void purgeExpired(long now) {
+        for (Iterator<Entry> iterator = results.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().expiresAt < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final VerificationStatus status;
+        private final long expiresAt;
+
+        private Entry(VerificationStatus status, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.forgerock.json.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces verifications across both nodes. The node executing a step opens a span which is active on the calling
+ * thread; Sinch calls made meanwhile become its children and carry the W3C {@code traceparent} header. The trace id,
+ * the id of the span of the last step and the time it ended travel in the tree's shared state, so the next step joins
+ * the same trace and the time the user spent between the steps is recorded as a span too.
+ * <p>
+ * Tracing is disabled unless {@code com.sinch.authNode.tracing.file} or {@code com.sinch.authNode.tracing.zipkinUrl}
+ * is set. Ended spans are queued and exported in Zipkin v2 JSON format by a background thread, one span per line to
+ * the file and in batches to the collector. Spans are dropped when the queue is full.
+ */
+@Singleton
+public class VerificationTracer {
+
+    public static final String TRACE_ID_KEY = "sinchTraceId";
+    public static final String SPAN_ID_KEY = "sinchSpanId";
+    public static final String STEP_END_KEY = "sinchStepEndMicros";
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationTracer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json");
+    private static final String SERVICE_NAME = "sinch-auth-node";
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 256;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5_000;
+
+    private final SinchHttpTransport transport;
+    private final Settings settings;
+    private final ThreadLocal<Span> activeSpan = new ThreadLocal<>();
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object exportLock = new Object();
+    private final Object exported = new Object();
+    private Thread exporter;
+    private Writer fileWriter;
+
+    /**
+     * Creates the tracer configured with {@code com.sinch.authNode.tracing.*} system properties.
+     *
+     * @param transport HTTP transport used to send spans to the collector.
+     */
+    @Inject
+    public VerificationTracer(SinchHttpTransport transport) {
+        this(transport, Settings.fromSystemProperties());
+    }
+
+    VerificationTracer(SinchHttpTransport transport, Settings settings) {
+        this.transport = transport;
+        this.settings = settings;
+    }
+
+    /**
+     * @return True if spans are exported.
+     */
+    public boolean isEnabled() {
+        return settings.enabled;
+    }
+
+    /**
+     * Starts the span of a node execution and makes it active on the calling thread. The span joins the trace stored
+     * in the shared state or, if there is none, starts a new (sampled) trace.
+     *
+     * @param name        Name of the span.
+     * @param sharedState Shared state of the tree.
+     * @return The span, {@link Span#NOOP} if the verification is not traced.
+     */
+    public Span startNodeSpan(String name, JsonValue sharedState) {
+        if (!settings.enabled) {
+            return Span.NOOP;
+        }
+        String traceId = sharedState.get(TRACE_ID_KEY).asString();
+        String parentId = null;
+        if (traceId == null) {
+            if (ThreadLocalRandom.current().nextDouble() >= settings.sampleRate) {
+                return Span.NOOP;
+            }
+            traceId = newId() + newId();
+        } else {
+            parentId = sharedState.get(SPAN_ID_KEY).asString();
+        }
+        Span span = new Span(traceId, newId(), parentId, name, nowMicros(), this);
+        span.previous(activeSpan.get());
+        activeSpan.set(span);
+        return span;
+    }
+
+    /**
+     * Starts a child of the span active on the calling thread. The child is not activated, so it may be ended on any
+     * thread.
+     *
+     * @param name Name of the span.
+     * @return The span, {@link Span#NOOP} if no span is active.
+     */
+    public Span startChildSpan(String name) {
+        Span parent = activeSpan.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        return new Span(parent.traceId, newId(), parent.spanId, name, nowMicros(), this);
+    }
+
+    /**
+     * Records the time between the end of the previous step, stored in the shared state, and now (for example the
+     * time the user spent typing the code) as a sibling of the active span.
+     *
+     * @param name        Name of the span.
+     * @param sharedState Shared state of the tree.
+     */
+    public void recordWaitSpan(String name, JsonValue sharedState) {
+        Span active = activeSpan.get();
+        if (active == null) {
+            return;
+        }
+        JsonValue stepEnd = sharedState.get(STEP_END_KEY);
+        if (stepEnd.isNull()) {
+            return;
+        }
+        long start = stepEnd.asLong();
+        new Span(active.traceId, newId(), active.parentId, name, start, this).end(nowMicros() - start);
+    }
+
+    /**
+     * Stores the context of the span active on the calling thread in the shared state, so the next step joins the
+     * trace.
+     *
+     * @param sharedState Shared state of the tree.
+     */
+    public void writeState(JsonValue sharedState) {
+        Span active = activeSpan.get();
+        if (active == null) {
+            return;
+        }
+        sharedState.put(TRACE_ID_KEY, active.traceId);
+        sharedState.put(SPAN_ID_KEY, active.spanId);
+        sharedState.put(STEP_END_KEY, nowMicros());
+    }
+
+    void onEnd(Span span) {
+        if (activeSpan.get() == span) {
+            if (span.previous() == null) {
+                activeSpan.remove();
+            } else {
+                activeSpan.set(span.previous());
+            }
+        }
+        pending.incrementAndGet();
+        if (!queue.offer(span)) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        startExporter();
+    }
+
+    /**
+     * Waits until every span ended so far is exported, at most {@value #FLUSH_TIMEOUT_MILLIS} milliseconds. Queued
+     * spans are exported on the calling thread; a batch the background exporter is sending is waited for.
+     */
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+        while (pending.get() > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (exportQueued()) {
+                continue;
+            }
+            synchronized (exported) {
+                // the spans left are in a batch being exported by the background thread
+                if (pending.get() > 0 && queue.isEmpty()) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(exported, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports the queued spans and stops the background exporter.
+     */
+    public synchronized void shutdown() {
+        if (exporter != null) {
+            exporter.interrupt();
+            exporter = null;
+        }
+        flush();
+        synchronized (exportLock) {
+            if (fileWriter != null) {
+                try {
+                    fileWriter.close();
+                } catch (IOException e) {
+                    logger.debug("Unable to close trace file " + e.getLocalizedMessage());
+                }
+                fileWriter = null;
+            }
+        }
+        if (dropped.get() > 0) {
+            logger.warn("Dropped " + dropped.get() + " spans because the export queue was full");
+        }
+    }
+
+    private synchronized void startExporter() {
+        if (exporter != null) {
+            return;
+        }
+        exporter = new Thread(this::exportLoop, "sinch-span-exporter");
+        exporter.setDaemon(true);
+        exporter.start();
+    }
+
+    private void exportLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Span first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    export(first);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean exportQueued() {
+        Span first = queue.poll();
+        if (first == null) {
+            return false;
+        }
+        export(first);
+        return true;
+    }
+
+    private void export(Span first) {
+        List<Span> batch = new ArrayList<>(BATCH_SIZE);
+        batch.add(first);
+        queue.drainTo(batch, BATCH_SIZE - 1);
+        try {
+            synchronized (exportLock) {
+                ArrayNode spans = MAPPER.createArrayNode();
+                for (Span span : batch) {
+                    spans.add(toZipkin(span));
+                }
+                writeToFile(spans);
+                sendToCollector(spans);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to export spans " + e.getLocalizedMessage());
+        } finally {
+            pending.addAndGet(-batch.size());
+            synchronized (exported) {
+                exported.notifyAll();
+            }
+        }
+    }
+
+    private void writeToFile(ArrayNode spans) throws IOException {
+        if (settings.file == null) {
+            return;
+        }
+        if (fileWriter == null) {
+            fileWriter = Files.newBufferedWriter(Paths.get(settings.file), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        for (int i = 0; i < spans.size(); i++) {
+            fileWriter.write(MAPPER.writeValueAsString(spans.get(i)));
+            fileWriter.write('\n');
+        }
+        fileWriter.flush();
+    }
+
+    private void sendToCollector(ArrayNode spans) throws IOException {
+        if (settings.zipkinUrl == null) {
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(settings.zipkinUrl)
+                .post(RequestBody.create(MAPPER.writeValueAsBytes(spans), JSON_MEDIA_TYPE))
+                .build();
+        try (Response response = transport.client().newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                logger.debug("Collector rejected spans with status " + response.code());
+            }
+        }
+    }
+
+    private static ObjectNode toZipkin(Span span) {
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put("traceId", span.traceId);
+        json.put("id", span.spanId);
+        if (span.parentId != null) {
+            json.put("parentId", span.parentId);
+        }
+        json.put("name", span.name);
+        json.put("timestamp", span.startMicros);
+        json.put("duration", span.durationMicros);
+        json.putObject("localEndpoint").put("serviceName", SERVICE_NAME);
+        Map<String, String> tags = span.tagsSnapshot();
+        if (!tags.isEmpty()) {
+            ObjectNode tagsJson = json.putObject("tags");
+            tags.forEach(tagsJson::put);
+        }
+        return json;
+    }
+
+    private static String newId() {
+        String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static long nowMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+
+    /**
+     * Settings of the tracer.
+     */
+    static final class Settings {
+
+        static final String PROPERTY_PREFIX = "com.sinch.authNode.tracing.";
+
+        final String file;
+        final String zipkinUrl;
+        final double sampleRate;
+        final boolean enabled;
+
+        Settings(String file, String zipkinUrl, double sampleRate) {
+            this.file = file;
+            this.zipkinUrl = zipkinUrl;
+            this.sampleRate = sampleRate;
+            this.enabled = (file != null || zipkinUrl != null) && sampleRate > 0;
+        }
+
+        /**
+         * Reads the settings from {@code com.sinch.authNode.tracing.*} system properties.
+         *
+         * @return Settings of the tracer.
+         */
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    System.getProperty(PROPERTY_PREFIX + "file"),
+                    System.getProperty(PROPERTY_PREFIX + "zipkinUrl"),
+                    Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "sampleRate", "1")));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.VerificationMethodType;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Synthetic inputs {@link SinchApiServiceImpl#warmUp(int)} runs the request and response handling on: throwaway
+ * credentials, a phone number and code, and responses shaped like the ones of the Sinch Verification Rest API. None of
+ * them is ever sent to or received from Sinch.
+ */
+final class WarmUpFixtures {
+
+    static final VerificationMethodType[] METHODS = {
+            VerificationMethodType.SMS, VerificationMethodType.FLASHCALL, VerificationMethodType.CALLOUT};
+    static final String BASE_URL = "https://warm-up.invalid";
+    static final String APP_KEY = "00000000-0000-0000-0000-000000000000";
+    static final String APP_SECRET = "AAAAAAAAAAAAAAAAAAAAAA==";
+    static final String PHONE_NUMBER = "+46700000000";
+    static final String VERIFICATION_ID = "1234567890abcdef";
+    static final String CODE = "1234";
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=UTF-8");
+    private static final String INITIATION_RESPONSE = "{\"id\":\"" + VERIFICATION_ID + "\",\"method\":\"sms\"}";
+    private static final String VERIFICATION_RESPONSE = "{\"id\":\"" + VERIFICATION_ID
+            + "\",\"method\":\"sms\",\"status\":\"SUCCESSFUL\"}";
+    private static final String ERROR_RESPONSE = "{\"errorCode\":40003,\"message\":\"Invalid code\","
+            + "\"reference\":\"warm-up\"}";
+
+    private WarmUpFixtures() {
+    }
+
+    static SinchCredentials credentials() {
+        return new SinchCredentials(APP_KEY, APP_SECRET.toCharArray());
+    }
+
+    static Response initiationResponse(Request request) {
+        return response(request, 200, "OK", INITIATION_RESPONSE);
+    }
+
+    static Response verificationResponse(Request request) {
+        return response(request, 200, "OK", VERIFICATION_RESPONSE);
+    }
+
+    static Response errorResponse(Request request) {
+        return response(request, 400, "Bad Request", ERROR_RESPONSE);
+    }
+
+    private static Response response(Request request, int code, String message, String payload) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(message)
+                .body(ResponseBody.create(payload, JSON_MEDIA_TYPE))
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.sinch.authNode.service;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sinch application verifications may be initiated with, together with the share of the traffic it should get
+ * relative to the other applications configured in the same node.
+ */
+public final class WeightedApplication {
+
+    private final SinchCredentials credentials;
+    private final int weight;
+
+    /**
+     * Creates the application.
+     *
+     * @param credentials Credentials of the application.
+     * @param weight      Weight of the application, applications with weight 0 are selected only if no other one is.
+     */
+    public WeightedApplication(SinchCredentials credentials, int weight) {
+        this.credentials = credentials;
+        this.weight = Math.max(0, weight);
+    }
+
+    /**
+     * @return Credentials of the application.
+     */
+    public SinchCredentials credentials() {
+        return credentials;
+    }
+
+    /**
+     * @return Weight of the application.
+     */
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * Selects one of the applications at random, in proportion to their weights scaled by their health. If every
+     * application is weighted 0 or unhealthy, the health is ignored, so a call is still attempted.
+     *
+     * @param applications  Applications to select from, not empty.
+     * @param healthPercent Health of an application given its key, between 0 (unusable) and 100 (healthy).
+     * @return Credentials of the selected application.
+     */
+    static SinchCredentials select(List<WeightedApplication> applications, ToIntFunction<String> healthPercent) {
+        if (applications.size() == 1) {
+            return applications.get(0).credentials;
+        }
+        long[] effectiveWeights = new long[applications.size()];
+        long total = 0;
+        for (int i = 0; i < effectiveWeights.length; i++) {
+            WeightedApplication application = applications.get(i);
+            effectiveWeights[i] = (long) application.weight * healthPercent.applyAsInt(application.credentials.appKey());
+            total += effectiveWeights[i];
+        }
+        if (total == 0) {
+            for (int i = 0; i < effectiveWeights.length; i++) {
+                effectiveWeights[i] = Math.max(1, applications.get(i).weight);
+                total += effectiveWeights[i];
+            }
+        }
+        long point = ThreadLocalRandom.current().nextLong(total);
+        for (int i = 0; i < effectiveWeights.length; i++) {
+            point -= effectiveWeights[i];
+            if (point < 0) {
+                return applications.get(i).credentials;
+            }
+        }
+        return applications.get(applications.size() - 1).credentials;
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedApplication{appKey=" + credentials.appKey() + ", weight=" + weight + '}';
+    }
+}
@@ -0,0 +1,210 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.InitiationRateLimiter;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.ProfilePhoneNumberCache;
+import com.sinch.authNode.service.SinchApiService;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.VerificationResultStore;
+import com.sinch.authNode.service.VerificationTracer;
+import com.sinch.verification.metadata.model.Metadata;
+import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.initiation.InitiationResponseData;
+import com.sinch.verification.model.verification.VerificationResponseData;
+import com.sinch.verification.model.verification.VerificationStatus;
+import com.sinch.verification.utils.Factory;
+import org.forgerock.openam.auth.node.api.Action;
+import org.forgerock.openam.auth.node.api.ExternalRequestContext;
+import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.core.CoreWrapper;
+import org.forgerock.openam.core.realms.Realm;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.NameCallback;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+/**
+ * Guards the number of bytes allocated by a single execution of the nodes on their most common paths. Each budget
+ * applies to the bytes a node allocates on top of a baseline run that only copies the shared state into an action,
+ * the work every node does, so allocations of the AM classes, which change with AM and JDK versions, are measured
+ * and subtracted rather than budgeted. The budgets leave some headroom, so they fail on regressions such as eager log
+ * messages or repeated lookups rather than on JIT noise. Lower a budget when an optimization makes it loose.
+ * Collaborators are plain implementations rather than Mockito mocks, whose invocation recording would dominate the
+ * measurement. Allocation per operation of the same paths is also tracked by the benchmarks against their baseline.
+ */
+public class AllocationBudgetTests {
+
+    private static final int WARMUP_ITERATIONS = 5_000;
+    private static final int MEASURED_ITERATIONS = 5_000;
+    private static final long INITIATION_BUDGET_BYTES = 768;
+    private static final long COLLECT_CODE_BUDGET_BYTES = 384;
+    private static final long VERIFICATION_BUDGET_BYTES = 768;
+
+    private static final String VERIFICATION_ID = "verificationId";
+    private static final VerificationMethodType METHOD = VerificationMethodType.SMS;
+
+    private com.sun.management.ThreadMXBean threads;
+    private Realm realm;
+
+    @BeforeEach
+    public void setup() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        realm = (Realm) Proxy.newProxyInstance(Realm.class.getClassLoader(), new Class<?>[]{Realm.class},
+                (proxy, method, args) -> "asPath".equals(method.getName()) ? "/" : null);
+    }
+
+    @Test
+    public void testInitiationStaysWithinBudget() throws Exception {
+        SinchAuthenticationNode node = new SinchAuthenticationNode(new AuthenticationConfig(), realm,
+                Mockito.mock(CoreWrapper.class), new ImmediateSinchApiService(), new PendingInitiationRegistry(),
+                new ProfilePhoneNumberCache(), new InitiationRateLimiter(), new SinchMetrics(),
+                new VerificationTracer(new SinchHttpTransport()), new SinchCredentialsCache(), new ClientMetadata(),
+                new InFlightVerificationRegistry());
+        NameCallback phoneNumberCallback = new NameCallback("phone");
+        phoneNumberCallback.setName(TestConstants.FAKE_NUM);
+        TreeContext context = treeContext(Collections.singletonList(phoneNumberCallback));
+
+        assertWithinBudget(INITIATION_BUDGET_BYTES, context, () -> node.process(context));
+    }
+
+    @Test
+    public void testCodeCollectionStaysWithinBudget() throws Exception {
+        SinchCodeCollectorCodeNode node = codeCollectorNode();
+        TreeContext context = treeContext(Collections.emptyList());
+
+        assertWithinBudget(COLLECT_CODE_BUDGET_BYTES, context, () -> node.process(context));
+    }
+
+    @Test
+    public void testVerificationStaysWithinBudget() throws Exception {
+        SinchCodeCollectorCodeNode node = codeCollectorNode();
+        NameCallback codeCallback = new NameCallback("code");
+        codeCallback.setName(TestConstants.FAKE_CODE);
+        TreeContext context = treeContext(Collections.singletonList(codeCallback));
+
+        assertWithinBudget(VERIFICATION_BUDGET_BYTES, context, () -> node.process(context));
+    }
+
+    private SinchCodeCollectorCodeNode codeCollectorNode() {
+        return new SinchCodeCollectorCodeNode(new CodeCollectorConfig(), realm, new ImmediateSinchApiService(),
+                new PendingInitiationRegistry(), new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()),
+                new SinchCredentialsCache(), new VerificationResultStore(), new InFlightVerificationRegistry());
+    }
+
+    private void assertWithinBudget(long budgetBytes, TreeContext context, Callable<Action> call) throws Exception {
+        long baseline = bytesPerCall(() -> Action.goTo("baseline").replaceSharedState(context.sharedState).build());
+        long bytesPerCall = bytesPerCall(call);
+        Assertions.assertTrue(bytesPerCall - baseline <= budgetBytes, "Allocated " + bytesPerCall
+                + " bytes per call, " + (bytesPerCall - baseline) + " above the baseline, budget is " + budgetBytes);
+    }
+
+    private long bytesPerCall(Callable<Action> call) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            Assertions.assertNotNull(call.call());
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            call.call();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_ITERATIONS;
+    }
+
+    private static TreeContext treeContext(List<? extends Callback> callbacks) {
+        return new TreeContext(json(object(field(VerificationState.KEY,
+                new VerificationState(METHOD, TestConstants.FAKE_NUM, VERIFICATION_ID, null, 0, null).encode()))),
+                json(object()), new ExternalRequestContext.Builder().build(), callbacks, Optional.empty());
+    }
+
+    private static final class AuthenticationConfig implements SinchAuthenticationNode.Config {
+
+        private final char[] appSecret = TestConstants.FAKE_APP_SECRET.toCharArray();
+
+        @Override
+        public String appKey() {
+            return TestConstants.FAKE_APP_KEY;
+        }
+
+        @Override
+        public char[] appSecret() {
+            return appSecret;
+        }
+    }
+
+    private static final class CodeCollectorConfig implements SinchCodeCollectorCodeNode.Config {
+
+        private final char[] appSecret = TestConstants.FAKE_APP_SECRET.toCharArray();
+
+        @Override
+        public String appKey() {
+            return TestConstants.FAKE_APP_KEY;
+        }
+
+        @Override
+        public char[] appSecret() {
+            return appSecret;
+        }
+    }
+
+    private static final class ImmediateSinchApiService implements SinchApiService {
+
+        private final InitiationResponseData initiation =
+                new InitiationResponseData(VERIFICATION_ID, null, null, null, null, null, METHOD, null);
+        // a failed verification stays in flight, so every call checks the code instead of being rejected locally
+        private final VerificationResponseData verification =
+                new VerificationResponseData(VERIFICATION_ID, VerificationStatus.FAIL, METHOD, null, null);
+
+        @Override
+        public InitiationResponseData initiateSynchronically(SinchCredentials credentials, VerificationMethodType verificationMethod,
+                                                             String phoneNumber, Factory<Metadata> metadataFactory) {
+            return initiation;
+        }
+
+        @Override
+        public VerificationResponseData verifySynchronicallyById(SinchCredentials credentials, String verificationId,
+                                                                 String verificationCode, VerificationMethodType verificationMethodType) {
+            return verification;
+        }
+
+        @Override
+        public CompletableFuture<InitiationResponseData> initiateAsync(SinchCredentials credentials, VerificationMethodType verificationMethod,
+                                                                       String phoneNumber, Factory<Metadata> metadataFactory) {
+            return CompletableFuture.completedFuture(initiation);
+        }
+
+        @Override
+        public CompletableFuture<VerificationResponseData> verifyByIdAsync(SinchCredentials credentials, String verificationId,
+                                                                           String verificationCode, VerificationMethodType verificationMethodType) {
+            return CompletableFuture.completedFuture(verification);
+        }
+
+        @Override
+        public CompletableFuture<VerificationResponseData> verifyByIdHedgedAsync(SinchCredentials credentials, String verificationId,
+                                                                                 String verificationCode, VerificationMethodType verificationMethodType) {
+            return CompletableFuture.completedFuture(verification);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.sinch.authNode;
+
+import org.forgerock.util.i18n.PreferredLocales;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class LocalizedPromptsTests {
+
+    private static final String BUNDLE = SinchCodeCollectorCodeNode.class.getName();
+
+    private AtomicInteger resolutions;
+    private LocalizedPrompts<String> prompts;
+
+    @BeforeEach
+    public void setup() {
+        resolutions = new AtomicInteger();
+        prompts = new LocalizedPrompts<>(BUNDLE, getClass().getClassLoader(), bundle -> {
+            resolutions.incrementAndGet();
+            return bundle.getString("callback.codeHint");
+        });
+    }
+
+    @Test
+    public void testBundleIsResolvedOncePerLocale() {
+        PreferredLocales locales = Mockito.spy(new PreferredLocales(Collections.singletonList(Locale.ENGLISH)));
+
+        String first = prompts.get(locales);
+        String second = prompts.get(new PreferredLocales(Collections.singletonList(Locale.ENGLISH)));
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, resolutions.get());
+        Mockito.verify(locales).getBundleInPreferredLocale(eq(BUNDLE), any(ClassLoader.class));
+    }
+
+    @Test
+    public void testEachLocaleIsResolvedSeparately() {
+        prompts.get(new PreferredLocales(Collections.singletonList(Locale.ENGLISH)));
+        prompts.get(new PreferredLocales(Collections.singletonList(Locale.GERMAN)));
+
+        Assertions.assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        for (int i = 0; i <= LocalizedPrompts.MAX_ENTRIES; i++) {
+            prompts.get(new PreferredLocales(Collections.singletonList(new Locale("x" + i))));
+        }
+        prompts.get(new PreferredLocales(Collections.singletonList(new Locale("x0"))));
+
+        Assertions.assertEquals(LocalizedPrompts.MAX_ENTRIES + 2, resolutions.get());
+        Assertions.assertEquals(ResourceBundle.getBundle(BUNDLE).getString("callback.codeHint"),
+                prompts.get(new PreferredLocales(Collections.singletonList(Locale.ENGLISH))));
+    }
+}
@@ -0,0 +1,47 @@
+package com.sinch.authNode;
+
+import com.sinch.verification.model.VerificationMethodType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class MethodCascadeTests {
+
+    @Test
+    public void testStepsFollowConfiguredMethod() {
+        List<MethodCascade.Step> steps = MethodCascade.steps(AMSupportedVerificationMethod.FLASHCALL, 2000,
+                Arrays.asList("sms:3000", " CALLOUT "));
+
+        Assertions.assertEquals(3, steps.size());
+        Assertions.assertEquals(VerificationMethodType.FLASHCALL, steps.get(0).method);
+        Assertions.assertEquals(VerificationMethodType.SMS, steps.get(1).method);
+        Assertions.assertEquals(3000, steps.get(1).budgetMillis);
+        Assertions.assertEquals(VerificationMethodType.CALLOUT, steps.get(2).method);
+        Assertions.assertEquals(2000, steps.get(2).budgetMillis);
+    }
+
+    @Test
+    public void testMalformedEntriesAreSkipped() {
+        List<MethodCascade.Step> steps = MethodCascade.steps(AMSupportedVerificationMethod.FLASHCALL, 2000,
+                Arrays.asList("SMD", "SMS:abc", "CALLOUT:1000"));
+
+        Assertions.assertEquals(2, steps.size());
+        Assertions.assertEquals(VerificationMethodType.CALLOUT, steps.get(1).method);
+    }
+
+    @Test
+    public void testValidatorRejectsMalformedEntries() {
+        FallbackMethodsValidator validator = new FallbackMethodsValidator();
+
+        Assertions.assertTrue(validator.validate(Collections.emptySet()));
+        Assertions.assertTrue(validator.validate(new HashSet<>(Arrays.asList("SMS:3000", "callout"))));
+        Assertions.assertFalse(validator.validate(Collections.singleton("SMD")));
+        Assertions.assertFalse(validator.validate(Collections.singleton("SMS:")));
+        Assertions.assertFalse(validator.validate(Collections.singleton("SMS:-1")));
+        Assertions.assertFalse(validator.validate(Collections.singleton("SMS:3000:1")));
+    }
+}
@@ -0,0 +1,47 @@
+package com.sinch.authNode;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PhoneNumberNormalizerTests {
+
+    @Test
+    public void testReturnsSameInstanceWhenAlreadyNormalized() {
+        String phoneNumber = "+46701234567";
+
+        Assertions.assertSame(phoneNumber, PhoneNumberNormalizer.normalize(phoneNumber));
+    }
+
+    @Test
+    public void testSkipsSeparatorsAndPrefixes() {
+        Assertions.assertEquals("+48123456789", PhoneNumberNormalizer.normalize("+48 123-456-789"));
+        Assertions.assertEquals("+48123456789", PhoneNumberNormalizer.normalize("48123456789"));
+        Assertions.assertEquals("+48123456789", PhoneNumberNormalizer.normalize("0048 123 456 789"));
+        Assertions.assertEquals("+12025550123", PhoneNumberNormalizer.normalize("+1 (202) 555.0123"));
+    }
+
+    @Test
+    public void testRejectsInvalidNumbers() {
+        Assertions.assertNull(PhoneNumberNormalizer.normalize(null));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize(""));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+48 123 abc 789"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+48+123456789"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+4812345678"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+123456789"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+0123456789"));
+        Assertions.assertNull(PhoneNumberNormalizer.normalize("+4912345678901234"));
+    }
+
+    @Test
+    public void testPassesNumbersOfUnknownCountryCodesThrough() {
+        String ascension = "+2476123";
+        String iridium = "+881612345678";
+
+        Assertions.assertSame(ascension, PhoneNumberNormalizer.normalize(ascension));
+        Assertions.assertSame(iridium, PhoneNumberNormalizer.normalize(iridium));
+        Assertions.assertEquals("+870773123456", PhoneNumberNormalizer.normalize("+870 773 123 456"));
+        Assertions.assertEquals("+882161234567", PhoneNumberNormalizer.normalize("00882 16 1234567"));
+        Assertions.assertEquals("+8835100123456", PhoneNumberNormalizer.normalize("+883 5100 123456"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.sinch.authNode;
+
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.WeightedApplication;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.singletonList;
+
+public class SinchApplicationsTests {
+
+    private final SinchCredentialsCache credentialsCache = new SinchCredentialsCache();
+    private final SinchCredentials primary = credentialsCache.get("primary", "cHJpbWFyeQ==".toCharArray());
+
+    @Test
+    public void testSecretsAreMatchedToEntriesInOrder() {
+        List<WeightedApplication> applications = SinchApplications.weighted(primary, 1,
+                Arrays.asList("first:3", "second"), " Zmlyc3Q=, c2Vjb25k".toCharArray(), credentialsCache);
+        SinchCredentials first = credentialsCache.get("first", "Zmlyc3Q=".toCharArray());
+        SinchCredentials second = credentialsCache.get("second", "c2Vjb25k".toCharArray());
+
+        Assertions.assertEquals(3, applications.size());
+        Assertions.assertSame(first, applications.get(1).credentials());
+        Assertions.assertEquals(3, applications.get(1).weight());
+        Assertions.assertSame(second, applications.get(2).credentials());
+        Assertions.assertEquals(1, applications.get(2).weight());
+        Assertions.assertSame(second, SinchApplications.find("second", primary,
+                Arrays.asList("first:3", "second"), "Zmlyc3Q=,c2Vjb25k".toCharArray(), credentialsCache));
+    }
+
+    @Test
+    public void testMalformedEntryIsReported() {
+        for (String entry : Arrays.asList("", ":2", "key:abc", "key:-1", "key:secret:2")) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> SinchApplications.weighted(primary, 1,
+                    singletonList(entry), "secret".toCharArray(), credentialsCache), entry);
+            Assertions.assertFalse(new AdditionalApplicationsValidator().validate(Set.of(entry)), entry);
+        }
+        Assertions.assertTrue(new AdditionalApplicationsValidator().validate(Set.of("key", "other:0")));
+    }
+
+    @Test
+    public void testSecretsNotMatchingEntriesAreReported() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SinchApplications.weighted(primary, 1,
+                Arrays.asList("first", "second"), "firstSecret".toCharArray(), credentialsCache));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SinchApplications.weighted(primary, 1,
+                Arrays.asList("first", "second"), "firstSecret,".toCharArray(), credentialsCache));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SinchApplications.find("first", primary,
+                singletonList("first"), new char[0], credentialsCache));
+    }
+}
@@ -0,0 +1,32 @@
+package com.sinch.authNode;
+
+import org.forgerock.openam.plugins.PluginException;
+import org.forgerock.openam.plugins.PluginTools;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SinchAuthNodePluginTests {
+
+    @Test
+    public void testUpgradeUpgradesBothNodes() throws PluginException {
+        PluginTools pluginTools = mock(PluginTools.class);
+        SinchAuthNodePlugin plugin = new SinchAuthNodePlugin();
+        plugin.setPluginTools(pluginTools);
+
+        plugin.upgrade("1.0.0");
+
+        verify(pluginTools).upgradeAuthNode(SinchAuthenticationNode.class);
+        verify(pluginTools).upgradeAuthNode(SinchCodeCollectorCodeNode.class);
+    }
+
+    @Test
+    public void testNodesAreRegisteredUnderCurrentVersion() {
+        SinchAuthNodePlugin plugin = new SinchAuthNodePlugin();
+
+        Assertions.assertEquals("1.1.0", plugin.getPluginVersion());
+        Assertions.assertTrue(plugin.getNodesByVersion().containsKey(plugin.getPluginVersion()));
+    }
+}
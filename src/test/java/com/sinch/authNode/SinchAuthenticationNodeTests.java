@@ -1,14 +1,27 @@
 package com.sinch.authNode;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.iplanet.sso.SSOException;
+import com.sinch.authNode.service.ClientMetadata;
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.InitiationRateLimiter;
+import com.sinch.authNode.service.PendingInitiationRegistry;
+import com.sinch.authNode.service.ProfilePhoneNumberCache;
 import com.sinch.authNode.service.SinchApiService;
-import com.sinch.verification.metadata.factory.DefaultJVMMetadataFactory;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.SinchUnavailableException;
+import com.sinch.authNode.service.VerificationTracer;
+import com.sinch.authNode.service.WeightedApplication;
+import com.sinch.verification.metadata.model.Metadata;
 import com.sinch.verification.model.ApiErrorData;
 import com.sinch.verification.model.VerificationMethodType;
 import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.model.initiation.methods.AutoInitializationResponseDetails;
 import com.sinch.verification.process.ApiCallException;
+import com.sinch.verification.utils.Factory;
 import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.IdRepoException;
 import org.forgerock.json.JsonValue;
@@ -17,6 +30,8 @@ import org.forgerock.openam.auth.node.api.ExternalRequestContext;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.openam.auth.node.api.TreeContext;
 import org.forgerock.openam.core.CoreWrapper;
+import org.forgerock.monitoring.api.instrument.MeterRegistry;
+import org.forgerock.monitoring.api.instrument.Tag;
 import org.forgerock.openam.core.realms.Realm;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -32,12 +47,16 @@ import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.TextOutputCallback;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.sinch.authNode.SinchAuthenticationNode.INITIATED_ID_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.USER_PHONE_KEY;
+import static com.sinch.authNode.SinchAuthenticationNode.VER_METHOD_KEY;
 import static com.sinch.authNode.TestConstants.*;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.forgerock.json.JsonValue.*;
 import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
 import static org.mockito.ArgumentMatchers.*;
@@ -59,17 +78,24 @@ public class SinchAuthenticationNodeTests {
     @Mock
     private SinchApiService sinchApiService;
 
+    private InFlightVerificationRegistry inFlightVerifications;
     private SinchAuthenticationNode sinchAuthenticationNode;
     private TreeContext context;
 
-    private ArgumentMatcher<DefaultJVMMetadataFactory> factoryMatcher;
+    private ArgumentMatcher<Factory<Metadata>> factoryMatcher;
+    private InitiationRateLimiter rateLimiter;
 
     @BeforeEach
     public void setup() throws Exception {
         MockitoAnnotations.openMocks(this).close();
-        factoryMatcher = (argument -> argument.getPlatform().equals("Forgerock"));
+        factoryMatcher = (argument -> argument instanceof ClientMetadata
+                && ((ClientMetadata) argument).getPlatform().equals("Forgerock"));
         context = buildThreeContext(emptyList());
-        sinchAuthenticationNode = new SinchAuthenticationNode(config, realm, coreWrapper, sinchApiService);
+        inFlightVerifications = new InFlightVerificationRegistry();
+        rateLimiter = new InitiationRateLimiter();
+        sinchAuthenticationNode = new SinchAuthenticationNode(config, realm, coreWrapper, sinchApiService, new PendingInitiationRegistry(),
+                new ProfilePhoneNumberCache(), rateLimiter, new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()),
+                new SinchCredentialsCache(), new ClientMetadata(), inFlightVerifications);
     }
 
     private JsonValue retrieveSharedState() {
@@ -78,6 +104,7 @@ public class SinchAuthenticationNodeTests {
 
     @Test
     public void testProcessActionWhenNoUserPhoneInProfile() throws NodeProcessException {
+        injectDefaultConfig();
         Action result = sinchAuthenticationNode.process(context);
         Assertions.assertEquals(2, result.callbacks.size());
         Callback prompt = result.callbacks.get(0);
@@ -86,16 +113,31 @@ public class SinchAuthenticationNodeTests {
         Assertions.assertTrue(enterPhone instanceof NameCallback);
     }
 
+    @Test
+    public void testMetricsRecordedWhenNoUserPhoneInProfile() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(realm.asPath()).thenReturn("/");
+        MeterRegistry registry = Mockito.mock(MeterRegistry.class, Mockito.RETURNS_MOCKS);
+        sinchAuthenticationNode = new SinchAuthenticationNode(config, realm, coreWrapper, sinchApiService, new PendingInitiationRegistry(),
+                new ProfilePhoneNumberCache(), new InitiationRateLimiter(), new SinchMetrics(registry), new VerificationTracer(new SinchHttpTransport()),
+                new SinchCredentialsCache(), new ClientMetadata(), new InFlightVerificationRegistry());
+
+        sinchAuthenticationNode.process(context);
+
+        Mockito.verify(registry).counter("sinch.node.phoneNumberFallback", Tag.of("realm", "/"), Tag.of("reason", "missing"));
+        Mockito.verify(registry).timer("sinch.node.initiation", Tag.of("realm", "/"), Tag.of("method", "sms"),
+                Tag.of("outcome", "callbacks"));
+    }
+
     @Test
     public void testProcessWhenPhoneNumberInProfile() throws IdRepoException, SSOException, NodeProcessException {
         injectDefaultConfig();
         mockSuccessfulRestApiCall();
-        Map attributeMap = ImmutableMap.of(config.identityPhoneNumberAttribute(), FAKE_NUM);
-        Mockito.when(mockUser.getAttributes()).thenReturn(attributeMap);
+        Mockito.when(mockUser.getAttribute(config.identityPhoneNumberAttribute())).thenReturn(ImmutableSet.of(FAKE_NUM));
         Mockito.when(coreWrapper.getIdentity(anyString(), any(Realm.class))).thenReturn(mockUser);
 
         Action result = sinchAuthenticationNode.process(context);
-        Mockito.verify(sinchApiService).initiateSynchronically(eq(FAKE_APP_KEY), eq(FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
+        Mockito.verify(sinchApiService).initiateSynchronically(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
         Assert.assertEquals(result.outcome, "outcome");
         verifyOutcomeSharedState(result);
     }
@@ -105,8 +147,7 @@ public class SinchAuthenticationNodeTests {
         injectDefaultConfig();
         mockSuccessfulRestApiCall();
 
-        Map attributeMap = ImmutableMap.of(config.identityPhoneNumberAttribute(), "");
-        Mockito.when(mockUser.getAttributes()).thenReturn(attributeMap);
+        Mockito.when(mockUser.getAttribute(config.identityPhoneNumberAttribute())).thenReturn(ImmutableSet.of(""));
         Mockito.when(coreWrapper.getIdentity(anyString(), any(Realm.class))).thenReturn(mockUser);
 
         verifyProcessProducesExplicitPhoneNumberInputRequest();
@@ -135,21 +176,215 @@ public class SinchAuthenticationNodeTests {
                 , Optional.of("mockUserId"));
 
         Action result = sinchAuthenticationNode.process(context);
-        Mockito.verify(sinchApiService).initiateSynchronically(eq(FAKE_APP_KEY), eq(FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
+        Mockito.verify(sinchApiService).initiateSynchronically(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
         Assert.assertEquals(result.outcome, "outcome");
         verifyOutcomeSharedState(result);
     }
 
+    @Test
+    public void testProcessWithSelectedAdditionalApplication() throws NodeProcessException {
+        injectDefaultConfig();
+        mockSuccessfulRestApiCall();
+        Mockito.when(config.additionalApplications()).thenReturn(singletonList(OTHER_APP_KEY + ":3"));
+        Mockito.when(config.additionalAppSecrets()).thenReturn(FAKE_APP_SECRET.toCharArray());
+        Mockito.when(sinchApiService.selectApplication(any())).thenAnswer(invocation -> {
+            List<WeightedApplication> applications = invocation.getArgument(0);
+            Assertions.assertEquals(2, applications.size());
+            Assertions.assertEquals(3, applications.get(1).weight());
+            return applications.get(1).credentials();
+        });
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+
+        Action result = sinchAuthenticationNode.process(buildThreeContext(singletonList(phoneNumberCallback)));
+
+        Mockito.verify(sinchApiService).initiateSynchronically(credentials(OTHER_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
+        Assertions.assertEquals(OTHER_APP_KEY, VerificationState.read(result.sharedState).appKey());
+    }
+
+    @Test
+    public void testProcessFailsWithSecretInAdditionalApplicationEntry() {
+        injectDefaultConfig();
+        mockSuccessfulRestApiCall();
+        Mockito.when(config.additionalApplications()).thenReturn(singletonList(OTHER_APP_KEY + ":" + FAKE_APP_SECRET + ":3"));
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+        TreeContext treeContext = buildThreeContext(singletonList(phoneNumberCallback));
+
+        NodeProcessException exception = Assertions.assertThrows(NodeProcessException.class,
+                () -> sinchAuthenticationNode.process(treeContext));
+
+        Assertions.assertFalse(exception.getCause().getMessage().contains(FAKE_APP_SECRET));
+        Mockito.verify(sinchApiService, Mockito.never()).initiateSynchronically(any(), any(), anyString(), any());
+    }
+
+    @Test
+    public void testProcessFallsBackToNextMethodWhenInitiationFails() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.verificationMethod()).thenReturn(AMSupportedVerificationMethod.FLASHCALL);
+        Mockito.when(config.fallbackMethods()).thenReturn(Arrays.asList("SMS", "CALLOUT"));
+        Mockito.when(sinchApiService.initiateSynchronically(any(), eq(VerificationMethodType.FLASHCALL), anyString(), any()))
+                .thenThrow(new SinchUnavailableException("open"));
+        Mockito.when(sinchApiService.initiateSynchronically(any(), eq(VerificationMethodType.SMS), anyString(), any()))
+                .thenReturn(new InitiationResponseData(FAKE_ID, null, null, null, null, null, VerificationMethodType.SMS, null));
+
+        Action result = sinchAuthenticationNode.process(phoneNumberContext());
+
+        Assertions.assertEquals("outcome", result.outcome);
+        Assertions.assertEquals(VerificationMethodType.SMS, VerificationState.read(result.sharedState).method());
+        Mockito.verify(sinchApiService, Mockito.never()).initiateSynchronically(any(), eq(VerificationMethodType.CALLOUT), anyString(), any());
+    }
+
+    @Test
+    public void testProcessFallsBackToNextMethodWhenStepExceedsBudget() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.verificationMethod()).thenReturn(AMSupportedVerificationMethod.FLASHCALL);
+        Mockito.when(config.requestTimeoutMillis()).thenReturn(10);
+        Mockito.when(config.fallbackMethods()).thenReturn(singletonList("SMS:1000"));
+        CompletableFuture<InitiationResponseData> flashCall = new CompletableFuture<>();
+        Mockito.when(sinchApiService.initiateAsync(any(), eq(VerificationMethodType.FLASHCALL), anyString(), any()))
+                .thenReturn(flashCall);
+        Mockito.when(sinchApiService.initiateAsync(any(), eq(VerificationMethodType.SMS), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new InitiationResponseData(FAKE_ID, null, null, null, null, null, VerificationMethodType.SMS, null)));
+
+        Action result = sinchAuthenticationNode.process(phoneNumberContext());
+
+        Assertions.assertTrue(flashCall.isCancelled());
+        Assertions.assertEquals("outcome", result.outcome);
+        Assertions.assertEquals(VerificationMethodType.SMS, VerificationState.read(result.sharedState).method());
+    }
+
+    @Test
+    public void testProcessGoesToTimeoutWhenEveryMethodExceedsBudget() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.requestTimeoutMillis()).thenReturn(10);
+        Mockito.when(config.fallbackMethods()).thenReturn(singletonList("CALLOUT"));
+        Mockito.when(sinchApiService.initiateAsync(any(), any(), anyString(), any()))
+                .thenAnswer(invocation -> new CompletableFuture<>());
+
+        Action result = sinchAuthenticationNode.process(phoneNumberContext());
+
+        Assertions.assertEquals(SinchAuthenticationNode.TIMEOUT_OUTCOME_ID, result.outcome);
+        Mockito.verify(sinchApiService).initiateAsync(any(), eq(VerificationMethodType.CALLOUT), anyString(), any());
+    }
+
+    @Test
+    public void testProcessDoesNotFallBackOnPhoneNumberFormattingError() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.fallbackMethods()).thenReturn(singletonList("CALLOUT"));
+        mockExceptionWhileMakingRestCall(
+                new ApiCallException(new ApiErrorData(ApiErrorData.ErrorCodes.ParameterValidation, "", ""))
+        );
+
+        Action result = sinchAuthenticationNode.process(phoneNumberContext());
+
+        Assertions.assertEquals(2, result.callbacks.size());
+        Mockito.verify(sinchApiService, Mockito.times(1)).initiateSynchronically(any(), any(), anyString(), any());
+    }
+
+    private TreeContext phoneNumberContext() {
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+        return buildThreeContext(singletonList(phoneNumberCallback));
+    }
+
     @Test
     public void testProcessFailureWhenExceptionWhileMakingCallToSinchApi() throws IdRepoException, SSOException {
         injectDefaultConfig();
         mockExceptionWhileMakingRestCall(new Exception());
-        Map attributeMap = ImmutableMap.of(config.identityPhoneNumberAttribute(), FAKE_NUM);
-        Mockito.when(mockUser.getAttributes()).thenReturn(attributeMap);
+        Mockito.when(mockUser.getAttribute(config.identityPhoneNumberAttribute())).thenReturn(ImmutableSet.of(FAKE_NUM));
         Mockito.when(coreWrapper.getIdentity(anyString(), any(Realm.class))).thenReturn(mockUser);
         Assertions.assertThrows(NodeProcessException.class, () -> sinchAuthenticationNode.process(context));
     }
 
+    @Test
+    public void testProcessWhenSinchUnavailableAndOutcomeEnabled() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.routeUnavailableToOutcome()).thenReturn(true);
+        mockExceptionWhileMakingRestCall(new SinchUnavailableException("open"));
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+
+        Action result = sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback)));
+
+        Assert.assertEquals(result.outcome, SinchAuthenticationNode.UNAVAILABLE_OUTCOME_ID);
+    }
+
+    @Test
+    public void testProcessFailureWhenSinchUnavailableAndOutcomeDisabled() {
+        injectDefaultConfig();
+        mockExceptionWhileMakingRestCall(new SinchUnavailableException("open"));
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+        TreeContext treeContext = buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback));
+
+        Assertions.assertThrows(NodeProcessException.class, () -> sinchAuthenticationNode.process(treeContext));
+    }
+
+    @Test
+    public void testProcessWhenInitiationExceedsTimeBudget() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.requestTimeoutMillis()).thenReturn(10);
+        CompletableFuture<InitiationResponseData> initiation = new CompletableFuture<>();
+        Mockito.when(sinchApiService.initiateAsync(any(), any(), anyString(), any())).thenReturn(initiation);
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+
+        Action result = sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback)));
+
+        Assert.assertEquals(result.outcome, SinchAuthenticationNode.TIMEOUT_OUTCOME_ID);
+        Assertions.assertTrue(initiation.isCancelled());
+    }
+
+    @Test
+    public void testProcessWhenPhoneNumberRateLimitExceeded() throws NodeProcessException {
+        injectDefaultConfig();
+        mockSuccessfulRestApiCall();
+        Mockito.when(config.phoneRateLimitPerHour()).thenReturn(2);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+        List<Callback> callbacks = Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback);
+
+        Assert.assertEquals(sinchAuthenticationNode.process(buildThreeContext(callbacks)).outcome, "outcome");
+        Assert.assertEquals(sinchAuthenticationNode.process(buildThreeContext(callbacks)).outcome, "outcome");
+        Action result = sinchAuthenticationNode.process(buildThreeContext(callbacks));
+
+        Assert.assertEquals(result.outcome, SinchAuthenticationNode.THROTTLED_OUTCOME_ID);
+        Mockito.verify(sinchApiService, Mockito.times(2)).initiateSynchronically(any(), any(), anyString(), any());
+    }
+
+    @Test
+    public void testRealmThrottlingDoesNotSpendPhoneNumberBudget() throws NodeProcessException {
+        injectDefaultConfig();
+        mockSuccessfulRestApiCall();
+        Mockito.when(config.phoneRateLimitPerHour()).thenReturn(1);
+        Mockito.when(config.realmRateLimitPerSecond()).thenReturn(1);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        NameCallback firstNumber = new NameCallback("ignored");
+        firstNumber.setName("+46709876543");
+        NameCallback secondNumber = new NameCallback("ignored");
+        secondNumber.setName(FAKE_NUM);
+
+        Assert.assertEquals(sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"), firstNumber))).outcome, "outcome");
+        Action result = sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"), secondNumber)));
+
+        Assert.assertEquals(result.outcome, SinchAuthenticationNode.THROTTLED_OUTCOME_ID);
+        Assertions.assertTrue(rateLimiter.tryAcquire(SinchAuthenticationNode.PHONE_RATE_LIMIT_PREFIX + "/" + FAKE_NUM, 1,
+                TimeUnit.HOURS.toMillis(1)));
+    }
+
     @Test
     public void testPhoneNumberFormattingWithWhitespaces() throws NodeProcessException {
         injectDefaultConfig();
@@ -161,7 +396,7 @@ public class SinchAuthenticationNodeTests {
                 phoneNumberCallback);
 
         sinchAuthenticationNode.process(buildThreeContext(callbacks));
-        Mockito.verify(sinchApiService).initiateSynchronically(eq(FAKE_APP_KEY), eq(FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq("+48123456789"), argThat(factoryMatcher));
+        Mockito.verify(sinchApiService).initiateSynchronically(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq("+48123456789"), argThat(factoryMatcher));
     }
 
     @Test
@@ -175,7 +410,82 @@ public class SinchAuthenticationNodeTests {
                 phoneNumberCallback);
 
         sinchAuthenticationNode.process(buildThreeContext(callbacks));
-        Mockito.verify(sinchApiService).initiateSynchronically(eq(FAKE_APP_KEY), eq(FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq("+48123456789"), argThat(factoryMatcher));
+        Mockito.verify(sinchApiService).initiateSynchronically(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq("+48123456789"), argThat(factoryMatcher));
+    }
+
+    @Test
+    public void testInvalidPhoneNumberAsksForNumberWithoutCallingSinch() throws NodeProcessException {
+        injectDefaultConfig();
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName("+48 123 45");
+        List<Callback> callbacks = Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback);
+
+        Action result = sinchAuthenticationNode.process(buildThreeContext(callbacks));
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assert.assertEquals(result.callbacks.size(), 2);
+        Assert.assertEquals(result.callbacks.get(1).getClass(), NameCallback.class);
+    }
+
+    @Test
+    public void testProcessWhenPhoneNumberInProfileIsCached() throws IdRepoException, SSOException, NodeProcessException {
+        injectDefaultConfig();
+        mockSuccessfulRestApiCall();
+        Mockito.when(config.profilePhoneCacheTtlSeconds()).thenReturn(60);
+        Mockito.when(config.profilePhoneCacheMaxSize()).thenReturn(10);
+        Mockito.when(realm.asPath()).thenReturn("/");
+        Mockito.when(mockUser.getAttribute(config.identityPhoneNumberAttribute())).thenReturn(ImmutableSet.of(FAKE_NUM));
+        Mockito.when(coreWrapper.getIdentity(anyString(), any(Realm.class))).thenReturn(mockUser);
+
+        sinchAuthenticationNode.process(context);
+        Action result = sinchAuthenticationNode.process(buildThreeContext(emptyList()));
+
+        Mockito.verify(coreWrapper, Mockito.times(1)).getIdentity(anyString(), any(Realm.class));
+        Mockito.verify(mockUser, Mockito.never()).getAttributes();
+        Assert.assertEquals(result.outcome, "outcome");
+        verifyOutcomeSharedState(result);
+    }
+
+    @Test
+    public void testProcessWhenAsyncInitiation() throws NodeProcessException {
+        injectDefaultConfig();
+        Mockito.when(config.asyncInitiation()).thenReturn(true);
+        Mockito.when(sinchApiService.initiateAsync(any(), any(), anyString(), any()))
+                .thenReturn(new CompletableFuture<>());
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+
+        Action result = sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                phoneNumberCallback)));
+
+        Mockito.verify(sinchApiService).initiateAsync(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(VerificationMethodType.SMS), eq(FAKE_NUM), argThat(factoryMatcher));
+        Mockito.verify(sinchApiService, Mockito.never()).initiateSynchronically(any(), any(), anyString(), any());
+        Assert.assertEquals(result.outcome, "outcome");
+        VerificationState state = VerificationState.read(result.sharedState);
+        Assertions.assertNotNull(state.pendingToken());
+        Assertions.assertNull(state.verificationId());
+    }
+
+    @Test
+    public void testProcessFailureWhenAsyncInitiationFailsWithError() {
+        injectDefaultConfig();
+        Mockito.when(config.asyncInitiation()).thenReturn(true);
+        CompletableFuture<InitiationResponseData> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new AssertionError("failed"));
+        Mockito.when(sinchApiService.initiateAsync(any(), any(), anyString(), any()))
+                .thenReturn(failed);
+        NameCallback phoneNumberCallback = new NameCallback("ignored");
+        phoneNumberCallback.setName(FAKE_NUM);
+
+        NodeProcessException exception = Assertions.assertThrows(NodeProcessException.class,
+                () -> sinchAuthenticationNode.process(buildThreeContext(Arrays.asList(
+                        new TextOutputCallback(TextOutputCallback.INFORMATION, "ignored"),
+                        phoneNumberCallback))));
+
+        Assertions.assertTrue(exception.getCause() instanceof AssertionError);
     }
 
     private void injectDefaultConfig() {
@@ -186,7 +496,7 @@ public class SinchAuthenticationNodeTests {
     }
 
     private void mockSuccessfulRestApiCall() {
-        Mockito.when(sinchApiService.initiateSynchronically(anyString(), anyString(), any(), anyString(), any()))
+        Mockito.when(sinchApiService.initiateSynchronically(any(), any(), anyString(), any()))
                 .thenReturn(
                         new InitiationResponseData(FAKE_ID, new AutoInitializationResponseDetails(FAKE_ID, emptyList()), null,
                                 null, null, null, VerificationMethodType.SMS, null)
@@ -194,7 +504,7 @@ public class SinchAuthenticationNodeTests {
     }
 
     private void mockExceptionWhileMakingRestCall(Exception exception) {
-        Mockito.when(sinchApiService.initiateSynchronically(anyString(), anyString(), any(), anyString(), any()))
+        Mockito.when(sinchApiService.initiateSynchronically(any(), any(), anyString(), any()))
                 .thenAnswer(ignored -> {
                     throw exception;
                 });
@@ -210,9 +520,17 @@ public class SinchAuthenticationNodeTests {
     }
 
     private void verifyOutcomeSharedState(Action action) {
-        Assertions.assertEquals(FAKE_ID, action.sharedState.get(INITIATED_ID_KEY).asString());
-        Assertions.assertEquals(FAKE_METHOD.toString(), action.sharedState.get(SinchAuthenticationNode.VER_METHOD_KEY).asString());
-        Assertions.assertEquals(FAKE_NUM, action.sharedState.get(SinchAuthenticationNode.USER_PHONE_KEY).asString());
+        Assertions.assertTrue(action.sharedState.isDefined(VerificationState.KEY));
+        Assertions.assertFalse(action.sharedState.isDefined(INITIATED_ID_KEY));
+        Assertions.assertFalse(action.sharedState.isDefined(VER_METHOD_KEY));
+        Assertions.assertFalse(action.sharedState.isDefined(USER_PHONE_KEY));
+        VerificationState state = VerificationState.read(action.sharedState);
+        Assertions.assertEquals(FAKE_ID, state.verificationId());
+        Assertions.assertEquals(FAKE_METHOD.asSinchMethodType(), state.method());
+        Assertions.assertEquals(FAKE_NUM, state.phoneNumber());
+        Assertions.assertEquals(0, state.attempts());
+        Assertions.assertNull(state.appKey());
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE, inFlightVerifications.status(FAKE_ID));
     }
 
     private TreeContext buildThreeContext(List<Callback> callbacks) {
@@ -221,4 +539,8 @@ public class SinchAuthenticationNodeTests {
                 , Optional.of("mockUserId"));
     }
 
+    private static SinchCredentials credentials(String appKey, String appSecret) {
+        String fingerprint = new SinchCredentialsCache().get(appKey, appSecret.toCharArray()).fingerprint();
+        return argThat(actual -> actual.appKey().equals(appKey) && actual.fingerprint().equals(fingerprint));
+    }
 }
@@ -1,12 +1,25 @@
 package com.sinch.authNode;
 
+import com.sinch.authNode.service.InFlightVerificationRegistry;
+import com.sinch.authNode.service.PendingInitiationRegistry;
 import com.sinch.authNode.service.SinchApiService;
+import com.sinch.authNode.service.SinchCredentials;
+import com.sinch.authNode.service.SinchCredentialsCache;
+import com.sinch.authNode.service.SinchHttpTransport;
+import com.sinch.authNode.service.SinchMetrics;
+import com.sinch.authNode.service.SinchUnavailableException;
+import com.sinch.authNode.service.VerificationResultStore;
+import com.sinch.authNode.service.VerificationTracer;
+import com.sinch.verification.model.initiation.InitiationResponseData;
 import com.sinch.verification.model.verification.VerificationResponseData;
 import com.sinch.verification.model.verification.VerificationStatus;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openam.auth.node.api.Action;
 import org.forgerock.openam.auth.node.api.ExternalRequestContext;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.openam.auth.node.api.TreeContext;
+import org.forgerock.openam.authentication.callbacks.PollingWaitCallback;
+import org.forgerock.openam.core.realms.Realm;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,6 +33,7 @@ import javax.security.auth.callback.PasswordCallback;
 import javax.security.auth.callback.TextOutputCallback;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static com.sinch.authNode.TestConstants.*;
 import static java.util.Collections.emptyList;
@@ -27,15 +41,23 @@ import static java.util.Collections.singletonList;
 import static org.forgerock.json.JsonValue.*;
 import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 
 public class SinchCodeCollectorNodeTests {
 
     @Mock
     private SinchCodeCollectorCodeNode.Config config;
 
+    @Mock
+    private Realm realm;
+
     @Mock
     private SinchApiService sinchApiService;
 
+    private PendingInitiationRegistry pendingInitiations;
+    private VerificationResultStore verificationResults;
+    private InFlightVerificationRegistry inFlightVerifications;
     private SinchCodeCollectorCodeNode sinchCodeCollectorCodeNode;
     private TreeContext context;
 
@@ -43,12 +65,17 @@ public class SinchCodeCollectorNodeTests {
     public void setup() throws Exception {
         MockitoAnnotations.openMocks(this).close();
         context = buildTreeContext(emptyList());
-        sinchCodeCollectorCodeNode = new SinchCodeCollectorCodeNode(config, sinchApiService);
+        pendingInitiations = new PendingInitiationRegistry();
+        verificationResults = new VerificationResultStore();
+        inFlightVerifications = new InFlightVerificationRegistry();
+        sinchCodeCollectorCodeNode = new SinchCodeCollectorCodeNode(config, realm, sinchApiService, pendingInitiations,
+                new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()), new SinchCredentialsCache(),
+                verificationResults, inFlightVerifications);
         injectDefaultConfig();
     }
 
     @Test
-    public void testProcessOutcomeWhenNoCodeInputHidden() {
+    public void testProcessOutcomeWhenNoCodeInputHidden() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(true);
 
         Action result = sinchCodeCollectorCodeNode.process(context);
@@ -60,7 +87,7 @@ public class SinchCodeCollectorNodeTests {
     }
 
     @Test
-    public void testProcessOutcomeWhenNoCodeInputAsText() {
+    public void testProcessOutcomeWhenNoCodeInputAsText() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(false);
 
         Action result = sinchCodeCollectorCodeNode.process(context);
@@ -72,7 +99,7 @@ public class SinchCodeCollectorNodeTests {
     }
 
     @Test
-    public void testProcessWhenCodePassedAsPassword() {
+    public void testProcessWhenCodePassedAsPassword() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(true);
         PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
         passwordCallback.setPassword(FAKE_CODE.toCharArray());
@@ -83,12 +110,12 @@ public class SinchCodeCollectorNodeTests {
 
         Action result = sinchCodeCollectorCodeNode.process(context);
 
-        Mockito.verify(sinchApiService).verifySynchronicallyById(FAKE_APP_KEY, FAKE_APP_SECRET, FAKE_ID, FAKE_CODE, FAKE_METHOD.asSinchMethodType());
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
         Assertions.assertEquals("true", result.outcome);
     }
 
     @Test
-    public void testProcessWhenCodePassedAsNameCallback() {
+    public void testProcessWhenCodePassedAsNameCallback() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(false);
         NameCallback nameCallback = new NameCallback("prompt", "dn");
         nameCallback.setName(FAKE_CODE);
@@ -99,27 +126,125 @@ public class SinchCodeCollectorNodeTests {
 
         Action result = sinchCodeCollectorCodeNode.process(context);
 
-        Mockito.verify(sinchApiService).verifySynchronicallyById(FAKE_APP_KEY, FAKE_APP_SECRET, FAKE_ID, FAKE_CODE, FAKE_METHOD.asSinchMethodType());
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("true", result.outcome);
+    }
+
+    @Test
+    public void testProcessRejectsCodeOfCompletedVerificationLocally() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        mockVerifyCall(true);
+
+        Action first = sinchCodeCollectorCodeNode.process(new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId")));
+        Action replayed = sinchCodeCollectorCodeNode.process(new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId")));
+
+        Assertions.assertEquals("true", first.outcome);
+        Assertions.assertEquals("false", replayed.outcome);
+        Mockito.verify(sinchApiService, Mockito.times(1)).verifySynchronicallyById(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testProcessRejectsCodeOfExpiredVerificationLocally() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        InFlightVerificationRegistry expiringVerifications = Mockito.mock(InFlightVerificationRegistry.class);
+        Mockito.when(expiringVerifications.track(FAKE_ID, FAKE_METHOD.asSinchMethodType()))
+                .thenReturn(InFlightVerificationRegistry.Status.EXPIRED);
+        sinchCodeCollectorCodeNode = new SinchCodeCollectorCodeNode(config, realm, sinchApiService, pendingInitiations,
+                new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()), new SinchCredentialsCache(),
+                verificationResults, expiringVerifications);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+
+        Action result = sinchCodeCollectorCodeNode.process(new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId")));
+
+        Assertions.assertEquals("false", result.outcome);
+        Mockito.verifyNoInteractions(sinchApiService);
+    }
+
+    @Test
+    public void testProcessSkipsCodePromptWhenVerifiedOnDevice() throws NodeProcessException {
+        verificationResults.put(FAKE_ID, VerificationStatus.SUCCESSFUL);
+
+        Action result = sinchCodeCollectorCodeNode.process(new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), emptyList(), Optional.of("mockUserId")));
+
+        Mockito.verifyNoInteractions(sinchApiService);
         Assertions.assertEquals("true", result.outcome);
+        Assertions.assertNull(verificationResults.take(FAKE_ID));
     }
 
     @Test
-    public void testProcessWithWrongCode() {
+    public void testProcessChecksSubmittedCodeEvenWhenSuccessReported() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(true);
         PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
         passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        verificationResults.put(FAKE_ID, VerificationStatus.SUCCESSFUL);
         mockVerifyCall(false);
 
         context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
                 new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
         Action result = sinchCodeCollectorCodeNode.process(context);
 
-        Mockito.verify(sinchApiService).verifySynchronicallyById(FAKE_APP_KEY, FAKE_APP_SECRET, FAKE_ID, FAKE_CODE, FAKE_METHOD.asSinchMethodType());
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
         Assertions.assertEquals("false", result.outcome);
     }
 
     @Test
-    public void testProcessWithApiException() {
+    public void testProcessRejectsCodeOfVerificationDeniedBySinch() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        verificationResults.put(FAKE_ID, VerificationStatus.DENIED);
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertEquals("false", result.outcome);
+    }
+
+    @Test
+    public void testProcessVerifiesWithApplicationOfInitiation() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.additionalApplications()).thenReturn(singletonList(OTHER_APP_KEY));
+        Mockito.when(config.additionalAppSecrets()).thenReturn("b3RoZXJTZWNyZXQ=".toCharArray());
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        JsonValue sharedState = retrieveSharedState();
+        sharedState.put(SinchAuthenticationNode.INITIATED_APP_KEY, OTHER_APP_KEY);
+        mockVerifyCall(true);
+
+        context = new TreeContext(sharedState, retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(OTHER_APP_KEY, "b3RoZXJTZWNyZXQ="), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("true", result.outcome);
+    }
+
+    @Test
+    public void testProcessWithWrongCode() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        mockVerifyCall(false);
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("false", result.outcome);
+    }
+
+    @Test
+    public void testProcessWithApiException() throws NodeProcessException {
         Mockito.when(config.isCodeHidden()).thenReturn(true);
         PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
         passwordCallback.setPassword(FAKE_CODE.toCharArray());
@@ -133,14 +258,313 @@ public class SinchCodeCollectorNodeTests {
         Assertions.assertEquals("false", result.outcome);
     }
 
+    @Test
+    public void testProcessWhenSinchUnavailableAndOutcomeEnabled() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.routeUnavailableToOutcome()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        Mockito.when(sinchApiService.verifySynchronicallyById(any(), any(), any(), any()))
+                .thenThrow(new SinchUnavailableException("open"));
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Assertions.assertEquals(SinchCodeCollectorCodeNode.UNAVAILABLE_OUTCOME_ID, result.outcome);
+    }
+
+    @Test
+    public void testProcessWhenVerificationExceedsTimeBudget() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.requestTimeoutMillis()).thenReturn(10);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        CompletableFuture<VerificationResponseData> verification = new CompletableFuture<>();
+        Mockito.when(sinchApiService.verifyByIdAsync(any(), any(), any(), any())).thenReturn(verification);
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Assertions.assertEquals(SinchCodeCollectorCodeNode.TIMEOUT_OUTCOME_ID, result.outcome);
+        Assertions.assertTrue(verification.isCancelled());
+    }
+
+    @Test
+    public void testProcessWhenHedgedVerification() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.requestTimeoutMillis()).thenReturn(1000);
+        Mockito.when(config.hedgeVerification()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        Mockito.when(sinchApiService.verifyByIdHedgedAsync(any(), any(), any(), any())).thenReturn(
+                CompletableFuture.completedFuture(new VerificationResponseData(FAKE_ID, VerificationStatus.SUCCESSFUL,
+                        FAKE_METHOD.asSinchMethodType(), null, null)));
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verify(sinchApiService).verifyByIdHedgedAsync(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("true", result.outcome);
+    }
+
+    @Test
+    public void testProcessWhenInitiationPending() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        String pendingToken = pendingInitiations.register(CompletableFuture.completedFuture(
+                new InitiationResponseData(FAKE_ID, null, null, null, null, null, FAKE_METHOD.asSinchMethodType(), null)));
+        JsonValue sharedState = retrieveSharedState();
+        sharedState.remove(SinchAuthenticationNode.INITIATED_ID_KEY);
+        sharedState.put(SinchAuthenticationNode.PENDING_INITIATION_KEY, pendingToken);
+
+        context = new TreeContext(sharedState, retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        mockVerifyCall(true);
+
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("true", result.outcome);
+        Assertions.assertEquals(FAKE_ID, VerificationState.read(result.sharedState).verificationId());
+    }
+
+    @Test
+    public void testProcessWithMalformedCodeSkipsSinch() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword("12a4".toCharArray());
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertEquals("false", result.outcome);
+        Assertions.assertEquals(1, VerificationState.read(result.sharedState).attempts());
+    }
+
+    @Test
+    public void testProcessCountsAttempts() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.maxAttempts()).thenReturn(3);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        JsonValue sharedState = retrieveSharedState();
+        sharedState.put(SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY, 1);
+        mockVerifyCall(false);
+
+        context = new TreeContext(sharedState, retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Assertions.assertEquals("false", result.outcome);
+        Assertions.assertEquals(2, VerificationState.read(result.sharedState).attempts());
+    }
+
+    @Test
+    public void testProcessWithCompactVerificationState() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        JsonValue sharedState = json(object(field(USERNAME, "demo")));
+        new VerificationState(FAKE_METHOD.asSinchMethodType(), FAKE_NUM, FAKE_ID, null, 1, null).write(sharedState, false);
+        mockVerifyCall(true);
+
+        context = new TreeContext(sharedState, retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verify(sinchApiService).verifySynchronicallyById(credentials(FAKE_APP_KEY, FAKE_APP_SECRET), eq(FAKE_ID), eq(FAKE_CODE), eq(FAKE_METHOD.asSinchMethodType()));
+        Assertions.assertEquals("true", result.outcome);
+        Assertions.assertEquals(2, VerificationState.read(result.sharedState).attempts());
+    }
+
+    @Test
+    public void testProcessReplacesLegacyVerificationState() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        mockVerifyCall(false);
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Assertions.assertTrue(result.sharedState.isDefined(VerificationState.KEY));
+        Assertions.assertFalse(result.sharedState.isDefined(SinchAuthenticationNode.INITIATED_ID_KEY));
+        Assertions.assertFalse(result.sharedState.isDefined(SinchAuthenticationNode.VER_METHOD_KEY));
+        Assertions.assertFalse(result.sharedState.isDefined(SinchAuthenticationNode.USER_PHONE_KEY));
+        Assertions.assertEquals(FAKE_NUM, VerificationState.read(result.sharedState).phoneNumber());
+    }
+
+    @Test
+    public void testProcessWritesLegacyEntriesWhenEnabled() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.writeLegacyStateEntries()).thenReturn(true);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        mockVerifyCall(false);
+
+        context = new TreeContext(retrieveSharedState(), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Assertions.assertTrue(result.sharedState.isDefined(VerificationState.KEY));
+        Assertions.assertEquals(FAKE_ID, result.sharedState.get(SinchAuthenticationNode.INITIATED_ID_KEY).asString());
+        Assertions.assertEquals(FAKE_METHOD.asSinchMethodType().name(),
+                result.sharedState.get(SinchAuthenticationNode.VER_METHOD_KEY).asString());
+        Assertions.assertEquals(FAKE_NUM, result.sharedState.get(SinchAuthenticationNode.USER_PHONE_KEY).asString());
+        Assertions.assertEquals(FAKE_NUM, VerificationState.read(result.sharedState).phoneNumber());
+    }
+
+    @Test
+    public void testProcessFailsWithoutVerificationState() {
+        context = new TreeContext(json(object(field(USERNAME, "demo"))), retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), emptyList(), Optional.of("mockUserId"));
+
+        Assertions.assertThrows(NodeProcessException.class, () -> sinchCodeCollectorCodeNode.process(context));
+        Mockito.verifyNoInteractions(sinchApiService);
+    }
+
+    @Test
+    public void testProcessFailsWithMalformedVerificationState() {
+        context = new TreeContext(json(object(field(USERNAME, "demo"), field(VerificationState.KEY, "AQAAAP8"))),
+                retrieveTransientState(), new ExternalRequestContext.Builder().build(), emptyList(),
+                Optional.of("mockUserId"));
+
+        Assertions.assertThrows(NodeProcessException.class, () -> sinchCodeCollectorCodeNode.process(context));
+        Mockito.verifyNoInteractions(sinchApiService);
+    }
+
+    @Test
+    public void testProcessWhenTooManyAttempts() throws NodeProcessException {
+        Mockito.when(config.isCodeHidden()).thenReturn(true);
+        Mockito.when(config.maxAttempts()).thenReturn(3);
+        PasswordCallback passwordCallback = new PasswordCallback("prompt", false);
+        passwordCallback.setPassword(FAKE_CODE.toCharArray());
+        JsonValue sharedState = retrieveSharedState();
+        sharedState.put(SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY, 3);
+
+        context = new TreeContext(sharedState, retrieveTransientState(),
+                new ExternalRequestContext.Builder().build(), singletonList(passwordCallback), Optional.of("mockUserId"));
+        Action result = sinchCodeCollectorCodeNode.process(context);
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertEquals(SinchCodeCollectorCodeNode.TOO_MANY_ATTEMPTS_OUTCOME_ID, result.outcome);
+    }
+
+    @Test
+    public void testProcessPollsWhileAwaitingOutOfBandResult() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        Mockito.when(config.awaitResultTimeoutMillis()).thenReturn(60_000);
+        Mockito.when(config.awaitResultPollIntervalMillis()).thenReturn(2_000);
+
+        Action result = sinchCodeCollectorCodeNode.process(outOfBandContext(false, outOfBandSharedState()));
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertNull(result.outcome);
+        Assertions.assertEquals(1, result.callbacks.size());
+        Assertions.assertEquals("2000", ((PollingWaitCallback) result.callbacks.get(0)).getWaitTime());
+        Assertions.assertTrue(result.sharedState.get(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY).asLong()
+                > System.currentTimeMillis());
+    }
+
+    @Test
+    public void testProcessCompletesWithReportedOutOfBandResult() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        JsonValue sharedState = outOfBandSharedState();
+        sharedState.put(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY, System.currentTimeMillis() + 60_000);
+        verificationResults.put(FAKE_ID, VerificationStatus.SUCCESSFUL);
+
+        Action result = sinchCodeCollectorCodeNode.process(outOfBandContext(true, sharedState));
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertEquals("true", result.outcome);
+        Assertions.assertTrue(result.sharedState.get(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY).isNull());
+    }
+
+    @Test
+    public void testPolledTreeCompletesOnceResultIsReported() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        Mockito.when(config.awaitResultTimeoutMillis()).thenReturn(60_000);
+        Mockito.when(config.awaitResultPollIntervalMillis()).thenReturn(2_000);
+
+        Action first = sinchCodeCollectorCodeNode.process(outOfBandContext(false, outOfBandSharedState()));
+        Action second = sinchCodeCollectorCodeNode.process(outOfBandContext(true, first.sharedState));
+        verificationResults.put(FAKE_ID, VerificationStatus.SUCCESSFUL);
+        Action third = sinchCodeCollectorCodeNode.process(outOfBandContext(true, second.sharedState));
+
+        Assertions.assertTrue(second.callbacks.get(0) instanceof PollingWaitCallback);
+        Assertions.assertEquals("true", third.outcome);
+        Mockito.verifyNoInteractions(sinchApiService);
+    }
+
+    @Test
+    public void testProcessPollsAgainBeforeOutOfBandResult() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        Mockito.when(config.awaitResultPollIntervalMillis()).thenReturn(2_000);
+        JsonValue sharedState = outOfBandSharedState();
+        long deadline = System.currentTimeMillis() + 60_000;
+        sharedState.put(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY, deadline);
+
+        Action result = sinchCodeCollectorCodeNode.process(outOfBandContext(true, sharedState));
+
+        Assertions.assertTrue(result.callbacks.get(0) instanceof PollingWaitCallback);
+        Assertions.assertEquals(deadline, result.sharedState.get(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY).asLong());
+    }
+
+    @Test
+    public void testPollWaitsNoLongerThanDeadline() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        Mockito.when(config.awaitResultPollIntervalMillis()).thenReturn(60_000);
+        JsonValue sharedState = outOfBandSharedState();
+        sharedState.put(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY, System.currentTimeMillis() + 5_000);
+
+        Action result = sinchCodeCollectorCodeNode.process(outOfBandContext(true, sharedState));
+
+        Assertions.assertTrue(Long.parseLong(((PollingWaitCallback) result.callbacks.get(0)).getWaitTime()) <= 5_000);
+    }
+
+    @Test
+    public void testProcessTimesOutWhenPolledAfterDeadline() throws NodeProcessException {
+        Mockito.when(config.awaitResultOutOfBand()).thenReturn(true);
+        Mockito.when(config.awaitResultTimeoutMillis()).thenReturn(0);
+        Mockito.when(config.awaitResultPollIntervalMillis()).thenReturn(2_000);
+
+        Action first = sinchCodeCollectorCodeNode.process(outOfBandContext(false, outOfBandSharedState()));
+        Action result = sinchCodeCollectorCodeNode.process(outOfBandContext(true, first.sharedState));
+
+        Mockito.verifyNoInteractions(sinchApiService);
+        Assertions.assertEquals("1", ((PollingWaitCallback) first.callbacks.get(0)).getWaitTime());
+        Assertions.assertEquals(SinchCodeCollectorCodeNode.TIMEOUT_OUTCOME_ID, result.outcome);
+        Assertions.assertTrue(result.sharedState.get(SinchCodeCollectorCodeNode.RESULT_DEADLINE_KEY).isNull());
+    }
+
+    private JsonValue outOfBandSharedState() {
+        JsonValue sharedState = retrieveSharedState();
+        sharedState.put(SinchAuthenticationNode.VER_METHOD_KEY, AMSupportedVerificationMethod.FLASHCALL.toString());
+        return sharedState;
+    }
+
+    private TreeContext outOfBandContext(boolean polled, JsonValue sharedState) {
+        List<Callback> callbacks = polled
+                ? singletonList(PollingWaitCallback.makeCallback().withWaitTime("2000").build()) : emptyList();
+        return new TreeContext(sharedState, retrieveTransientState(), new ExternalRequestContext.Builder().build(),
+                callbacks, Optional.of("mockUserId"));
+    }
+
     private void mockVerifyCall(boolean isSuccess) {
-        Mockito.when(sinchApiService.verifySynchronicallyById(any(), any(), any(), any(), any())).thenReturn(new VerificationResponseData(
+        Mockito.when(sinchApiService.verifySynchronicallyById(any(), any(), any(), any())).thenReturn(new VerificationResponseData(
                 FAKE_ID, isSuccess ? VerificationStatus.SUCCESSFUL : VerificationStatus.ERROR, FAKE_METHOD.asSinchMethodType(), null, null
         ));
     }
 
     private void mockErrorWhileMakingCall() {
-        Mockito.when(sinchApiService.verifySynchronicallyById(any(), any(), any(), any(), any())).thenAnswer(ignored -> new Exception());
+        Mockito.when(sinchApiService.verifySynchronicallyById(any(), any(), any(), any())).thenAnswer(ignored -> new Exception());
     }
 
     private JsonValue retrieveSharedState() {
@@ -164,4 +588,8 @@ public class SinchCodeCollectorNodeTests {
         Mockito.when(config.appSecret()).thenReturn(FAKE_APP_SECRET.toCharArray());
     }
 
+    private static SinchCredentials credentials(String appKey, String appSecret) {
+        String fingerprint = new SinchCredentialsCache().get(appKey, appSecret.toCharArray()).fingerprint();
+        return argThat(actual -> actual.appKey().equals(appKey) && actual.fingerprint().equals(fingerprint));
+    }
 }
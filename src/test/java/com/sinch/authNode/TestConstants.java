@@ -5,9 +5,10 @@ import com.sinch.verification.model.VerificationMethodType;
 public class TestConstants {
 
     public static final String FAKE_APP_KEY = "appKey";
-    public static final String FAKE_APP_SECRET = "appSecret";
+    public static final String FAKE_APP_SECRET = "YXBwU2VjcmV0";
+    public static final String OTHER_APP_KEY = "otherAppKey";
     public static final String FAKE_ID = "id";
-    public static final String FAKE_NUM = "+123456789";
+    public static final String FAKE_NUM = "+46701234567";
     public static final String FAKE_CODE = "1234";
     public static final AMSupportedVerificationMethod FAKE_METHOD = AMSupportedVerificationMethod.SMS;
 
@@ -0,0 +1,28 @@
+package com.sinch.authNode;
+
+import com.sinch.verification.model.VerificationMethodType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VerificationCodeFormatTests {
+
+    @Test
+    public void testSmsAndCalloutCodes() {
+        Assertions.assertTrue(VerificationCodeFormat.isValid("1234", VerificationMethodType.SMS));
+        Assertions.assertTrue(VerificationCodeFormat.isValid("1234567890", VerificationMethodType.CALLOUT));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("", VerificationMethodType.SMS));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("123", VerificationMethodType.SMS));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("12345678901", VerificationMethodType.SMS));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("12 34", VerificationMethodType.CALLOUT));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("abcd", VerificationMethodType.SMS));
+    }
+
+    @Test
+    public void testFlashCallCli() {
+        Assertions.assertTrue(VerificationCodeFormat.isValid("+46701234567", VerificationMethodType.FLASHCALL));
+        Assertions.assertTrue(VerificationCodeFormat.isValid("46701234567", VerificationMethodType.FLASHCALL));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("+", VerificationMethodType.FLASHCALL));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("1234", VerificationMethodType.FLASHCALL));
+        Assertions.assertFalse(VerificationCodeFormat.isValid("+4670123456789012", VerificationMethodType.FLASHCALL));
+    }
+}
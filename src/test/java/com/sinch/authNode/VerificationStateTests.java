@@ -0,0 +1,158 @@
+package com.sinch.authNode;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sinch.verification.model.VerificationMethodType;
+import org.forgerock.json.JsonValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+public class VerificationStateTests {
+
+    @Test
+    public void testRoundTripsInitiatedVerification() {
+        VerificationState state = VerificationState.decode(new VerificationState(VerificationMethodType.FLASHCALL,
+                "+46701234567", "1a2b3c4d5e6f7081", null, 2, "Some App Key").encode());
+
+        Assertions.assertEquals(VerificationMethodType.FLASHCALL, state.method());
+        Assertions.assertEquals("+46701234567", state.phoneNumber());
+        Assertions.assertEquals("1a2b3c4d5e6f7081", state.verificationId());
+        Assertions.assertNull(state.pendingToken());
+        Assertions.assertEquals(2, state.attempts());
+        Assertions.assertEquals("Some App Key", state.appKey());
+    }
+
+    @Test
+    public void testRoundTripsPendingInitiation() {
+        String pendingToken = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+        VerificationState state = VerificationState.decode(new VerificationState(VerificationMethodType.SMS,
+                "+1202555012", null, pendingToken, 300, null).encode());
+
+        Assertions.assertNull(state.verificationId());
+        Assertions.assertEquals(pendingToken, state.pendingToken());
+        Assertions.assertEquals("+1202555012", state.phoneNumber());
+        Assertions.assertEquals(300, state.attempts());
+        Assertions.assertNull(state.appKey());
+    }
+
+    @Test
+    public void testRoundTripsStringsWhichCannotBePacked() {
+        VerificationState state = VerificationState.decode(new VerificationState(VerificationMethodType.CALLOUT,
+                "+46 70 123", "ABCDEF", null, 0, "").encode());
+
+        Assertions.assertEquals("+46 70 123", state.phoneNumber());
+        Assertions.assertEquals("ABCDEF", state.verificationId());
+        Assertions.assertNull(state.appKey());
+    }
+
+    @Test
+    public void testPacksDigits() {
+        VerificationState state = new VerificationState(VerificationMethodType.SMS, "+46701234567",
+                "0f8fad5b-d9cb-469f-a165-70867728950e", null, 0, null);
+
+        // 4 header bytes, 1 + 6 bytes of phone number and 1 + 16 bytes of ID, base64url encoded
+        Assertions.assertEquals(38, state.encode().length());
+    }
+
+    @Test
+    public void testReadsMethodFromHeaderOnly() {
+        String encoded = new VerificationState(VerificationMethodType.CALLOUT, "+46701234567", "id", null, 0, null)
+                .encode();
+
+        Assertions.assertEquals(VerificationMethodType.CALLOUT, VerificationState.method(encoded));
+    }
+
+    @Test
+    public void testRejectsMalformedState() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VerificationState.decode("AQ"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VerificationState.decode("Ag"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VerificationState.decode("!!"));
+    }
+
+    @Test
+    public void testReadsLegacyEntries() {
+        JsonValue sharedState = json(object(
+                field(SinchAuthenticationNode.PENDING_INITIATION_KEY, "token"),
+                field(SinchAuthenticationNode.VER_METHOD_KEY, "SMS"),
+                field(SinchAuthenticationNode.USER_PHONE_KEY, "+46701234567"),
+                field(SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY, 1)));
+
+        VerificationState state = VerificationState.read(sharedState);
+
+        Assertions.assertEquals(VerificationMethodType.SMS, state.method());
+        Assertions.assertEquals("token", state.pendingToken());
+        Assertions.assertNull(state.verificationId());
+        Assertions.assertEquals(1, state.attempts());
+    }
+
+    @Test
+    public void testWriteReplacesLegacyEntries() {
+        JsonValue sharedState = json(object(
+                field(SinchAuthenticationNode.INITIATED_ID_KEY, "id"),
+                field(SinchAuthenticationNode.VER_METHOD_KEY, "SMS"),
+                field(SinchAuthenticationNode.USER_PHONE_KEY, "+46701234567")));
+
+        VerificationState.read(sharedState).write(sharedState, false);
+
+        Assertions.assertEquals(1, sharedState.size());
+        Assertions.assertEquals("id", VerificationState.read(sharedState).verificationId());
+    }
+
+    @Test
+    public void testWriteKeepsPublicLegacyEntriesWhenAsked() {
+        JsonValue sharedState = json(object(
+                field(SinchAuthenticationNode.INITIATED_ID_KEY, "id"),
+                field(SinchAuthenticationNode.VER_METHOD_KEY, "SMS"),
+                field(SinchAuthenticationNode.USER_PHONE_KEY, "+46701234567"),
+                field(SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY, 1)));
+
+        VerificationState.read(sharedState).write(sharedState, true);
+
+        Assertions.assertEquals(4, sharedState.size());
+        Assertions.assertFalse(sharedState.isDefined(SinchAuthenticationNode.VERIFICATION_ATTEMPTS_KEY));
+        Assertions.assertEquals("id", sharedState.get(SinchAuthenticationNode.INITIATED_ID_KEY).asString());
+        Assertions.assertEquals("SMS", sharedState.get(SinchAuthenticationNode.VER_METHOD_KEY).asString());
+        Assertions.assertEquals("+46701234567", sharedState.get(SinchAuthenticationNode.USER_PHONE_KEY).asString());
+        Assertions.assertEquals("id", VerificationState.read(sharedState).verificationId());
+    }
+
+    @Test
+    public void testSerializedStateIsSmallerThanLegacyEntries() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        String verificationId = "1ce0ffee-0000-4000-8000-000000000001";
+        JsonValue legacy = json(object(
+                field(SinchAuthenticationNode.VER_METHOD_KEY, "SMS"),
+                field(SinchAuthenticationNode.USER_PHONE_KEY, "+46701234567"),
+                field(SinchAuthenticationNode.INITIATED_ID_KEY, verificationId)));
+        JsonValue compact = json(object());
+        new VerificationState(VerificationMethodType.SMS, "+46701234567", verificationId, null, 0, null)
+                .write(compact, false);
+
+        int legacySize = mapper.writeValueAsBytes(legacy.getObject()).length;
+        int compactSize = mapper.writeValueAsBytes(compact.getObject()).length;
+
+        Assertions.assertTrue(compactSize < legacySize, compactSize + " bytes, legacy layout " + legacySize);
+    }
+
+    @Test
+    public void testMalformedStateIsRejectedWhenRead() {
+        String encoded = new VerificationState(VerificationMethodType.SMS, "+46701234567", "id", null, 0, null)
+                .encode();
+        JsonValue sharedState = json(object(field(VerificationState.KEY, encoded.substring(0, encoded.length() - 2))));
+
+        Assertions.assertNull(VerificationState.read(sharedState));
+        sharedState.put(SinchAuthenticationNode.VER_METHOD_KEY, "SMS");
+        sharedState.put(SinchAuthenticationNode.INITIATED_ID_KEY, "legacyId");
+        Assertions.assertEquals("legacyId", VerificationState.read(sharedState).verificationId());
+    }
+
+    @Test
+    public void testReturnsNullWithoutState() {
+        Assertions.assertNull(VerificationState.read(json(object())));
+    }
+}
@@ -0,0 +1,129 @@
+package com.sinch.authNode.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTests {
+
+    private static final long SLOW_CALL_MILLIS = 1000;
+    private static final long OPEN_STATE_MILLIS = 10_000;
+
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    public void setup() {
+        circuitBreaker = new CircuitBreaker(new CircuitBreaker.Settings(10, 4, 50, 100, SLOW_CALL_MILLIS,
+                OPEN_STATE_MILLIS, 2));
+    }
+
+    @Test
+    public void testStaysClosedBelowFailureRateThreshold() {
+        recordCalls(3, false, 0);
+        recordCalls(2, true, 0);
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        Assertions.assertNotEquals(CircuitBreaker.NO_PERMISSION, circuitBreaker.tryAcquirePermission(0));
+    }
+
+    @Test
+    public void testOpensWhenFailureRateThresholdReached() {
+        recordCalls(2, false, 0);
+        recordCalls(2, true, 0);
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        Assertions.assertEquals(CircuitBreaker.NO_PERMISSION,
+                circuitBreaker.tryAcquirePermission(OPEN_STATE_MILLIS - 1));
+    }
+
+    @Test
+    public void testOpensWhenAllCallsAreSlow() {
+        recordCalls(4, false, SLOW_CALL_MILLIS);
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulProbes() {
+        recordCalls(4, true, 0);
+
+        long first = acquire(OPEN_STATE_MILLIS);
+        long second = acquire(OPEN_STATE_MILLIS);
+        Assertions.assertEquals(CircuitBreaker.NO_PERMISSION, circuitBreaker.tryAcquirePermission(OPEN_STATE_MILLIS));
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+
+        circuitBreaker.onResult(first, false, 0, OPEN_STATE_MILLIS);
+        circuitBreaker.onResult(second, false, 0, OPEN_STATE_MILLIS);
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    public void testReleasedProbePermissionIsNeutral() {
+        recordCalls(4, true, 0);
+
+        long released = acquire(OPEN_STATE_MILLIS);
+        long probe = acquire(OPEN_STATE_MILLIS);
+        circuitBreaker.releasePermission(released);
+        circuitBreaker.onResult(probe, false, 0, OPEN_STATE_MILLIS);
+
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        circuitBreaker.onResult(acquire(OPEN_STATE_MILLIS), false, 0, OPEN_STATE_MILLIS);
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    public void testReopensWhenProbeFails() {
+        recordCalls(4, true, 0);
+
+        circuitBreaker.onResult(acquire(OPEN_STATE_MILLIS), true, 0, OPEN_STATE_MILLIS);
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        Assertions.assertEquals(CircuitBreaker.NO_PERMISSION,
+                circuitBreaker.tryAcquirePermission(OPEN_STATE_MILLIS + 1));
+    }
+
+    @Test
+    public void testLateResultOfCallStartedBeforeOpeningIsIgnored() {
+        long late = acquire(0);
+        recordCalls(4, true, 0);
+
+        long probe = acquire(OPEN_STATE_MILLIS);
+        circuitBreaker.onResult(late, false, 0, OPEN_STATE_MILLIS);
+        circuitBreaker.onResult(late, false, 0, OPEN_STATE_MILLIS);
+        circuitBreaker.releasePermission(late);
+
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        acquire(OPEN_STATE_MILLIS);
+        Assertions.assertEquals(CircuitBreaker.NO_PERMISSION, circuitBreaker.tryAcquirePermission(OPEN_STATE_MILLIS));
+        circuitBreaker.onResult(probe, true, 0, OPEN_STATE_MILLIS);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    }
+
+    @Test
+    public void testHealthFollowsFailureRateAndState() {
+        Assertions.assertEquals(100, circuitBreaker.healthPercent(0));
+
+        recordCalls(3, false, 0);
+        recordCalls(1, true, 0);
+        Assertions.assertEquals(75, circuitBreaker.healthPercent(0));
+
+        recordCalls(2, true, 0);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        Assertions.assertEquals(0, circuitBreaker.healthPercent(OPEN_STATE_MILLIS - 1));
+        Assertions.assertEquals(10, circuitBreaker.healthPercent(OPEN_STATE_MILLIS));
+    }
+
+    private void recordCalls(int count, boolean failure, long durationMillis) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.onResult(acquire(0), failure, durationMillis, 0);
+        }
+    }
+
+    private long acquire(long nowMillis) {
+        long permission = circuitBreaker.tryAcquirePermission(nowMillis);
+        Assertions.assertNotEquals(CircuitBreaker.NO_PERMISSION, permission);
+        return permission;
+    }
+}
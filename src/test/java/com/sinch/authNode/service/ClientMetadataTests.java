@@ -0,0 +1,40 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sinch.verification.metadata.model.Metadata;
+import com.sinch.verification.utils.Factory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class ClientMetadataTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMetadataIsCollectedOnce() {
+        Factory<Metadata> factory = Mockito.mock(Factory.class);
+        Metadata metadata = new Metadata();
+        Mockito.when(factory.create()).thenReturn(metadata);
+        ClientMetadata clientMetadata = new ClientMetadata(ClientMetadata.PLATFORM, factory);
+
+        clientMetadata.initialize();
+        clientMetadata.initialize();
+
+        Assertions.assertSame(metadata, clientMetadata.create());
+        Assertions.assertSame(clientMetadata.serialized(), clientMetadata.serialized());
+        Mockito.verify(factory, Mockito.times(1)).create();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerializedFormMatchesMetadata() throws Exception {
+        Factory<Metadata> factory = Mockito.mock(Factory.class);
+        Metadata metadata = new Metadata();
+        Mockito.when(factory.create()).thenReturn(metadata);
+        ClientMetadata clientMetadata = new ClientMetadata(ClientMetadata.PLATFORM, factory);
+
+        ObjectMapper mapper = new ObjectMapper();
+        Assertions.assertEquals(mapper.valueToTree(metadata),
+                mapper.readTree((String) clientMetadata.serialized().rawValue()));
+    }
+}
@@ -0,0 +1,105 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.verification.VerificationStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InFlightVerificationRegistryTests {
+
+    private static final long TTL_MILLIS = 10_000;
+    private static final long RETENTION_MILLIS = 5_000;
+    private static final long TICK_MILLIS = 100;
+
+    private InFlightVerificationRegistry registry;
+
+    @BeforeEach
+    public void setup() {
+        registry = new InFlightVerificationRegistry(TTL_MILLIS, RETENTION_MILLIS, TICK_MILLIS, 3);
+    }
+
+    @Test
+    public void testTracksVerificationUntilItExpires() {
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE,
+                registry.track("id", VerificationMethodType.SMS, 0));
+
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE, registry.status("id", TTL_MILLIS - 1));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.EXPIRED, registry.status("id", TTL_MILLIS));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.EXPIRED,
+                registry.track("id", VerificationMethodType.SMS, TTL_MILLIS + 1));
+    }
+
+    @Test
+    public void testForgetsVerificationAfterRetention() {
+        registry.track("id", VerificationMethodType.SMS, 0);
+        registry.status("id", TTL_MILLIS);
+
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.UNKNOWN,
+                registry.status("id", TTL_MILLIS + RETENTION_MILLIS));
+        Assertions.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testExpiresEntriesAfterSeveralTurnsOfTheWheel() {
+        long turnMillis = InFlightVerificationRegistry.WHEEL_SLOTS * TICK_MILLIS;
+        registry = new InFlightVerificationRegistry(3 * turnMillis + TICK_MILLIS, RETENTION_MILLIS, TICK_MILLIS, 3);
+        registry.track("id", VerificationMethodType.SMS, 0);
+
+        for (long now = TICK_MILLIS; now <= 3 * turnMillis; now += TICK_MILLIS) {
+            Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE, registry.status("id", now));
+        }
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.EXPIRED,
+                registry.status("id", 3 * turnMillis + TICK_MILLIS));
+    }
+
+    @Test
+    public void testExpiresEntriesWhenClockJumpsBeyondTheWheel() {
+        long turnMillis = InFlightVerificationRegistry.WHEEL_SLOTS * TICK_MILLIS;
+        registry = new InFlightVerificationRegistry(2 * turnMillis, RETENTION_MILLIS, TICK_MILLIS, 3);
+        registry.track("id", VerificationMethodType.SMS, 0);
+
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.EXPIRED,
+                registry.status("id", 2 * turnMillis + TICK_MILLIS));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.UNKNOWN,
+                registry.status("id", 2 * turnMillis + RETENTION_MILLIS));
+    }
+
+    @Test
+    public void testCompletesOnlyOnTerminalStatus() {
+        registry.track("failed", VerificationMethodType.SMS, 0);
+        registry.track("successful", VerificationMethodType.SMS, 0);
+        registry.track("denied", VerificationMethodType.SMS, 0);
+
+        registry.complete("failed", VerificationStatus.FAIL);
+        registry.complete("successful", VerificationStatus.SUCCESSFUL);
+        registry.complete("denied", VerificationStatus.DENIED);
+
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE, registry.status("failed", 1));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.COMPLETED, registry.status("successful", 1));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.COMPLETED, registry.status("denied", 1));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.COMPLETED, registry.status("successful", TTL_MILLIS));
+    }
+
+    @Test
+    public void testCountsAttempts() {
+        registry.track("id", VerificationMethodType.SMS, 0);
+
+        Assertions.assertEquals(1, registry.recordAttempt("id"));
+        Assertions.assertEquals(2, registry.recordAttempt("id"));
+        Assertions.assertEquals(2, registry.attempts("id"));
+        Assertions.assertEquals(0, registry.recordAttempt("unknown"));
+    }
+
+    @Test
+    public void testDoesNotTrackBeyondMaxEntries() {
+        registry.track("first", VerificationMethodType.SMS, 0);
+        registry.track("second", VerificationMethodType.SMS, 0);
+        registry.track("third", VerificationMethodType.SMS, 0);
+
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.UNKNOWN,
+                registry.track("fourth", VerificationMethodType.SMS, 0));
+        Assertions.assertEquals(InFlightVerificationRegistry.Status.ACTIVE,
+                registry.track("fourth", VerificationMethodType.SMS, TTL_MILLIS + RETENTION_MILLIS));
+    }
+}
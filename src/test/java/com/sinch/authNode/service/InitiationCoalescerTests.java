@@ -0,0 +1,78 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.initiation.InitiationResponseData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InitiationCoalescerTests {
+
+    private static final String KEY = "key";
+
+    @Test
+    public void testConcurrentInitiationsShareSingleCall() {
+        InitiationCoalescer coalescer = new InitiationCoalescer(60_000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<InitiationResponseData> sinchCall = new CompletableFuture<>();
+
+        CompletableFuture<InitiationResponseData> first = coalescer.coalesceAsync(KEY, () -> {
+            calls.incrementAndGet();
+            return sinchCall;
+        });
+        CompletableFuture<InitiationResponseData> second = coalescer.coalesceAsync(KEY, () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        InitiationResponseData response = response("id");
+        sinchCall.complete(response);
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertSame(response, first.join());
+        Assertions.assertSame(response, second.join());
+        Assertions.assertSame(response, coalescer.coalesce(KEY, () -> {
+            calls.incrementAndGet();
+            return response("other");
+        }));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCancellingOneCallerDoesNotCancelSharedCall() {
+        InitiationCoalescer coalescer = new InitiationCoalescer(60_000);
+        CompletableFuture<InitiationResponseData> sinchCall = new CompletableFuture<>();
+
+        CompletableFuture<InitiationResponseData> first = coalescer.coalesceAsync(KEY, () -> sinchCall);
+        CompletableFuture<InitiationResponseData> second = coalescer.coalesceAsync(KEY, CompletableFuture::new);
+        first.cancel(true);
+        sinchCall.complete(response("id"));
+
+        Assertions.assertFalse(sinchCall.isCancelled());
+        Assertions.assertEquals("id", second.join().getId());
+    }
+
+    @Test
+    public void testFailureIsNotShared() {
+        InitiationCoalescer coalescer = new InitiationCoalescer(60_000);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> coalescer.coalesce(KEY, () -> {
+            throw new IllegalStateException();
+        }));
+
+        Assertions.assertEquals("id", coalescer.coalesce(KEY, () -> response("id")).getId());
+    }
+
+    @Test
+    public void testDisabledWithNegativeWindow() {
+        InitiationCoalescer coalescer = new InitiationCoalescer(-1);
+
+        coalescer.coalesce(KEY, () -> response("first"));
+
+        Assertions.assertEquals("second", coalescer.coalesce(KEY, () -> response("second")).getId());
+    }
+
+    private static InitiationResponseData response(String id) {
+        return new InitiationResponseData(id, null, null, null, null, null, null, null);
+    }
+}
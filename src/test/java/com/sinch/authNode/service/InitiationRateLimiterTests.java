@@ -0,0 +1,58 @@
+package com.sinch.authNode.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InitiationRateLimiterTests {
+
+    private static final long PERIOD_MILLIS = 1000;
+
+    private InitiationRateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setup() {
+        rateLimiter = new InitiationRateLimiter();
+    }
+
+    @Test
+    public void testAllowsBurstUpToLimit() {
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 3, PERIOD_MILLIS, 0));
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 3, PERIOD_MILLIS, 0));
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 3, PERIOD_MILLIS, 0));
+        Assertions.assertFalse(rateLimiter.tryAcquire("key", 3, PERIOD_MILLIS, 0));
+    }
+
+    @Test
+    public void testRefillsOverTime() {
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+        Assertions.assertFalse(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 100));
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, PERIOD_MILLIS / 2));
+        Assertions.assertFalse(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, PERIOD_MILLIS / 2));
+    }
+
+    @Test
+    public void testKeysAreIndependent() {
+        Assertions.assertTrue(rateLimiter.tryAcquire("first", 1, PERIOD_MILLIS, 0));
+        Assertions.assertFalse(rateLimiter.tryAcquire("first", 1, PERIOD_MILLIS, 0));
+        Assertions.assertTrue(rateLimiter.tryAcquire("second", 1, PERIOD_MILLIS, 0));
+    }
+
+    @Test
+    public void testReleaseGivesTokenBack() {
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+        rateLimiter.release("key", 2, PERIOD_MILLIS);
+
+        Assertions.assertTrue(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+        Assertions.assertFalse(rateLimiter.tryAcquire("key", 2, PERIOD_MILLIS, 0));
+    }
+
+    @Test
+    public void testDisabledWhenLimitNotPositive() {
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(rateLimiter.tryAcquire("key", 0, PERIOD_MILLIS, 0));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.sinch.authNode.service;
+
+import com.sun.identity.idm.AMIdentityRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+
+public class ProfilePhoneNumberCacheTests {
+
+    private static final long TTL_MILLIS = 60_000;
+
+    private final ProfilePhoneNumberCache cache = new ProfilePhoneNumberCache();
+    private final Supplier<AMIdentityRepository> repository = () -> mock(AMIdentityRepository.class);
+
+    @Test
+    public void testKeepsPhoneNumbersOfEachAttributeApart() {
+        cache.realm("/", "telephoneNumber", 10, repository).put("demo", "+46701234567", TTL_MILLIS);
+        cache.realm("/", "mobile", 10, repository).put("demo", "+46709876543", TTL_MILLIS);
+
+        Assertions.assertEquals("+46701234567", cache.realm("/", "telephoneNumber", 10, repository).get("demo"));
+        Assertions.assertEquals("+46709876543", cache.realm("/", "mobile", 10, repository).get("Demo"));
+        Assertions.assertNull(cache.realm("/other", "mobile", 10, repository).get("demo"));
+    }
+
+    @Test
+    public void testIdentityChangeInvalidatesUser() {
+        ProfilePhoneNumberCache.RealmCache realmCache = cache.realm("/", "telephoneNumber", 10, repository);
+        realmCache.put("demo", "+46701234567", TTL_MILLIS);
+        realmCache.put("other", "+46709876543", TTL_MILLIS);
+
+        realmCache.identityChanged("id=demo,ou=user,o=root,ou=services,dc=openam");
+
+        Assertions.assertNull(realmCache.get("demo"));
+        Assertions.assertEquals("+46709876543", realmCache.get("other"));
+    }
+}
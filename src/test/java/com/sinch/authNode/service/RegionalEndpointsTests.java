@@ -0,0 +1,138 @@
+package com.sinch.authNode.service;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegionalEndpointsTests {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final OkHttpClient client = new OkHttpClient();
+
+    @AfterEach
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void testCallsAreRoutedToFastestEndpoint() throws IOException {
+        String slow = stubEndpoint(200, new AtomicInteger(200));
+        String fast = stubEndpoint(0, new AtomicInteger(200));
+        RegionalEndpoints endpoints = new RegionalEndpoints(Arrays.asList(slow, fast), "/");
+
+        Assertions.assertEquals(slow, endpoints.select());
+        endpoints.probe(client);
+
+        Assertions.assertEquals(fast, endpoints.select());
+    }
+
+    @Test
+    public void testProbeFailureFailsOverToNextEndpoint() throws IOException {
+        AtomicInteger fastStatus = new AtomicInteger(200);
+        String slow = stubEndpoint(100, new AtomicInteger(200));
+        String fast = stubEndpoint(0, fastStatus);
+        RegionalEndpoints endpoints = new RegionalEndpoints(Arrays.asList(slow, fast), "/");
+        endpoints.probe(client);
+
+        fastStatus.set(503);
+        endpoints.probe(client);
+        Assertions.assertEquals(slow, endpoints.select());
+
+        fastStatus.set(200);
+        endpoints.probe(client);
+        Assertions.assertEquals(fast, endpoints.select());
+    }
+
+    @Test
+    public void testFailingCallsFailOverToNextEndpoint() throws IOException {
+        String slow = stubEndpoint(100, new AtomicInteger(200));
+        String fast = stubEndpoint(0, new AtomicInteger(200));
+        RegionalEndpoints endpoints = new RegionalEndpoints(Arrays.asList(slow, fast), "/");
+        endpoints.probe(client);
+
+        for (int i = 0; i < RegionalEndpoints.FAILURE_THRESHOLD - 1; i++) {
+            endpoints.onResult(fast, true);
+        }
+        Assertions.assertEquals(fast, endpoints.select());
+        endpoints.onResult(fast, true);
+
+        Assertions.assertEquals(slow, endpoints.select());
+    }
+
+    @Test
+    public void testLeastFailingEndpointIsUsedWhenAllAreDown() {
+        RegionalEndpoints endpoints = new RegionalEndpoints(Arrays.asList("http://first", "http://second"), "/");
+
+        for (int i = 0; i < RegionalEndpoints.FAILURE_THRESHOLD + 1; i++) {
+            endpoints.onResult("http://first", true);
+        }
+        for (int i = 0; i < RegionalEndpoints.FAILURE_THRESHOLD; i++) {
+            endpoints.onResult("http://second", true);
+        }
+
+        Assertions.assertEquals("http://second", endpoints.select());
+    }
+
+    @Test
+    public void testConcurrentFailuresAreAllCounted() throws InterruptedException {
+        // nothing listens on these ports, so probes fail and only compare the failure counts
+        String first = "http://127.0.0.1:1";
+        String second = "http://127.0.0.1:2";
+        RegionalEndpoints endpoints = new RegionalEndpoints(Arrays.asList(first, second), "/");
+        int threads = 8;
+        int failuresPerThread = 10_000;
+        for (int i = 0; i < threads * failuresPerThread - 1; i++) {
+            endpoints.onResult(second, true);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < failuresPerThread; j++) {
+                    endpoints.onResult(first, true);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        endpoints.probe(client);
+
+        Assertions.assertEquals(second, endpoints.select());
+    }
+
+    private String stubEndpoint(long latencyMillis, AtomicInteger status) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        servers.add(server);
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+}
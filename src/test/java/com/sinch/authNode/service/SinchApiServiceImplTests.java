@@ -0,0 +1,139 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sinch.verification.model.VerificationMethodType;
+import com.sinch.verification.model.verification.VerificationResponseData;
+import com.sinch.verification.model.verification.VerificationStatus;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SinchApiServiceImplTests {
+
+    private static final String APP_KEY = "appKey";
+    private static final String APP_SECRET = "AAAAAAAAAAAAAAAAAAAAAA==";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private SinchHttpTransport transport;
+    private SinchApiServiceImpl service;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(serverExecutor);
+        server.start();
+        transport = new SinchHttpTransport();
+        transport.start(new SinchHttpTransport.Settings("http://127.0.0.1:" + server.getAddress().getPort(), 4,
+                60_000, 8, 8, false, 1_000, 30_000));
+        service = new SinchApiServiceImpl(transport, new SinchMetrics(), new VerificationTracer(new SinchHttpTransport()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transport.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testLosingHedgedRequestIsCancelled() throws Exception {
+        // the first request answers once the hedge has been sent, the hedge would answer much later
+        respondAfter(1_500, 20_000);
+
+        VerificationResponseData response = service.verifyByIdHedgedAsync(credentials(), "id", "1234",
+                VerificationMethodType.SMS).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, response.getStatus());
+        Assertions.assertEquals(2, requests.get());
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (transport.client().dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, transport.client().dispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void testInitiationIsSentSignedWithApplicationScheme() throws Exception {
+        Map<String, String> received = new ConcurrentHashMap<>();
+        server.createContext("/", exchange -> {
+            received.put("method", exchange.getRequestMethod());
+            received.put("path", exchange.getRequestURI().getRawPath());
+            received.put("contentType", exchange.getRequestHeaders().getFirst("Content-Type"));
+            received.put("timestamp", exchange.getRequestHeaders().getFirst("x-timestamp"));
+            received.put("authorization", exchange.getRequestHeaders().getFirst("Authorization"));
+            received.put("body", new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1));
+            byte[] body = "{\"id\":\"id\",\"method\":\"sms\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+
+        Assertions.assertEquals("id", service.initiateSynchronically(credentials(), VerificationMethodType.SMS,
+                "+46700000000", null).getId());
+
+        byte[] content = received.get("body").getBytes(StandardCharsets.ISO_8859_1);
+        String stringToSign = "POST\n"
+                + Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content)) + "\n"
+                + received.get("contentType") + "\n"
+                + "x-timestamp:" + received.get("timestamp") + "\n"
+                + SinchApiServiceImpl.VERIFICATIONS_PATH;
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Base64.getDecoder().decode(APP_SECRET), "HmacSHA256"));
+        Assertions.assertEquals("POST", received.get("method"));
+        Assertions.assertEquals(SinchApiServiceImpl.VERIFICATIONS_PATH, received.get("path"));
+        Assertions.assertEquals("application/json; charset=UTF-8", received.get("contentType"));
+        Assertions.assertDoesNotThrow(() -> Instant.parse(received.get("timestamp")));
+        Assertions.assertEquals("Application " + APP_KEY + ":"
+                + Base64.getEncoder().encodeToString(mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8))),
+                received.get("authorization"));
+        JsonNode body = new ObjectMapper().readTree(content);
+        Assertions.assertEquals("number", body.path("identity").path("type").asText());
+        Assertions.assertEquals("+46700000000", body.path("identity").path("endpoint").asText());
+        Assertions.assertEquals("sms", body.path("method").asText());
+    }
+
+    private static SinchCredentials credentials() {
+        return new SinchCredentials(APP_KEY, APP_SECRET.toCharArray());
+    }
+
+    private void respondAfter(long firstDelayMillis, long nextDelayMillis) {
+        server.createContext("/", exchange -> {
+            long delay = requests.incrementAndGet() == 1 ? firstDelayMillis : nextDelayMillis;
+            try {
+                Thread.sleep(delay);
+                byte[] body = "{\"id\":\"id\",\"status\":\"SUCCESSFUL\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.sinch.authNode.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.Base64;
+
+public class SinchCredentialsCacheTests {
+
+    private static final String APP_KEY = "appKey";
+    private static final String SECRET = Base64.getEncoder().encodeToString("secret".getBytes(StandardCharsets.UTF_8));
+    private static final String ROTATED_SECRET = Base64.getEncoder().encodeToString("rotated".getBytes(StandardCharsets.UTF_8));
+
+    private SinchCredentialsCache cache;
+
+    @BeforeEach
+    public void setup() {
+        cache = new SinchCredentialsCache();
+    }
+
+    @Test
+    public void testCredentialsAreReusedForTheSameSecret() {
+        SinchCredentials credentials = cache.get(APP_KEY, SECRET.toCharArray());
+        Assertions.assertSame(credentials, cache.get(APP_KEY, SECRET.toCharArray()));
+        Assertions.assertSame(credentials, cache.find(APP_KEY));
+    }
+
+    @Test
+    public void testCredentialsAreReplacedWhenSecretChanges() {
+        SinchCredentials credentials = cache.get(APP_KEY, SECRET.toCharArray());
+        SinchCredentials rotated = cache.get(APP_KEY, ROTATED_SECRET.toCharArray());
+        Assertions.assertNotSame(credentials, rotated);
+        Assertions.assertNotEquals(credentials.fingerprint(), rotated.fingerprint());
+        Assertions.assertSame(rotated, cache.get(APP_KEY, ROTATED_SECRET.toCharArray()));
+    }
+
+    @Test
+    public void testSecretIsNotExposedByToString() {
+        SinchCredentials credentials = cache.get(APP_KEY, SECRET.toCharArray());
+        Assertions.assertFalse(credentials.toString().contains(SECRET));
+        Assertions.assertTrue(credentials.toString().contains(credentials.fingerprint()));
+    }
+
+    @Test
+    public void testCachedMacSignsLikeFreshOne() throws Exception {
+        SinchCredentials credentials = cache.get(APP_KEY, SECRET.toCharArray());
+        Mac expected = Mac.getInstance(SinchCredentials.HMAC_ALGORITHM);
+        expected.init(new SecretKeySpec(Base64.getDecoder().decode(SECRET), SinchCredentials.HMAC_ALGORITHM));
+        byte[] payload = "PUT\n/verification/v1/verifications".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertArrayEquals(expected.doFinal(payload), credentials.newMac().doFinal(payload));
+        Assertions.assertArrayEquals(expected.doFinal(payload), credentials.newMac().doFinal(payload));
+    }
+
+    @Test
+    public void testSecretWhichIsNotBase64FailsSigning() {
+        SinchCredentials credentials = cache.get(APP_KEY, "not base64!".toCharArray());
+
+        Assertions.assertThrows(InvalidKeyException.class, credentials::newMac);
+    }
+
+    @Test
+    public void testSignatureMatchesKnownAnswer() throws Exception {
+        // inputs of the signed request example of the Sinch documentation, whose Content-MD5 is
+        // jANzQ+rgAHyf1MWQFSwvYw==; the signature was computed independently with Python's hmac and hashlib
+        SinchCredentials credentials = cache.get("669E367E-6BBA-48AB-AF15-266871C28135",
+                "BeIukql3pTKJ8RGL5zo0DA==".toCharArray());
+
+        String signature = credentials.sign("POST", "{\"message\":\"Hello world\"}".getBytes(StandardCharsets.UTF_8),
+                "application/json", "2014-06-04T13:41:58Z", "/v1/sms/+46700000000");
+
+        Assertions.assertEquals("UlV+QpSzS+c7hDlKhvN9m2CWYmpmbDksI/qqzmnyGKk=", signature);
+    }
+}
@@ -0,0 +1,88 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.VerificationMethodType;
+import org.forgerock.monitoring.api.instrument.Counter;
+import org.forgerock.monitoring.api.instrument.MeterRegistry;
+import org.forgerock.monitoring.api.instrument.Tag;
+import org.forgerock.monitoring.api.instrument.Timer;
+import org.forgerock.openam.auth.node.api.Action;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class SinchMetricsTests {
+
+    private MeterRegistry registry;
+    private Timer timer;
+    private Counter counter;
+    private SinchMetrics metrics;
+
+    @BeforeEach
+    public void setup() {
+        registry = Mockito.mock(MeterRegistry.class);
+        timer = Mockito.mock(Timer.class);
+        counter = Mockito.mock(Counter.class);
+        Mockito.when(registry.timer(any(), any(), any(), any())).thenReturn(timer);
+        Mockito.when(registry.counter(any(), any(), any())).thenReturn(counter);
+        metrics = new SinchMetrics(registry);
+    }
+
+    @Test
+    public void testApiTimerIsCreatedOnceAndTagged() {
+        metrics.recordApiCall(SinchMetrics.ApiOperation.VERIFICATION, VerificationMethodType.SMS, SinchMetrics.ApiOutcome.SUCCESS, 10);
+        metrics.recordApiCall(SinchMetrics.ApiOperation.VERIFICATION, VerificationMethodType.SMS, SinchMetrics.ApiOutcome.SUCCESS, 20);
+
+        Mockito.verify(registry, Mockito.times(1)).timer(SinchMetrics.API_REQUEST_TIMER, Tag.of("operation", "verification"),
+                Tag.of("method", "sms"), Tag.of("outcome", "success"));
+        Mockito.verify(timer).record(10, TimeUnit.NANOSECONDS);
+        Mockito.verify(timer).record(20, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void testNodeTimersAreKeptPerRealm() {
+        metrics.recordInitiation("/first", VerificationMethodType.CALLOUT, SinchMetrics.NodeOutcome.NEXT, 1);
+        metrics.recordInitiation("/second", VerificationMethodType.CALLOUT, SinchMetrics.NodeOutcome.NEXT, 1);
+        metrics.recordInitiation("/first", VerificationMethodType.CALLOUT, SinchMetrics.NodeOutcome.NEXT, 1);
+
+        Mockito.verify(registry).timer(SinchMetrics.INITIATION_TIMER, Tag.of("realm", "/first"), Tag.of("method", "callout"),
+                Tag.of("outcome", "next"));
+        Mockito.verify(registry).timer(SinchMetrics.INITIATION_TIMER, Tag.of("realm", "/second"), Tag.of("method", "callout"),
+                Tag.of("outcome", "next"));
+        Mockito.verify(timer, Mockito.times(3)).record(1, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void testPhoneNumberFallbackCounter() {
+        metrics.recordPhoneNumberFallback("/", SinchMetrics.PhoneNumberFallback.FORMATTING_ERROR);
+
+        Mockito.verify(registry).counter(eq(SinchMetrics.PHONE_NUMBER_FALLBACK_COUNTER), eq(Tag.of("realm", "/")),
+                eq(Tag.of("reason", "formattingError")));
+        Mockito.verify(counter).increment();
+    }
+
+    @Test
+    public void testRecordsNothingWithoutRegistry() {
+        new SinchMetrics().recordVerification("/", VerificationMethodType.SMS, SinchMetrics.NodeOutcome.TRUE, 1);
+
+        Mockito.verifyNoInteractions(registry);
+    }
+
+    @Test
+    public void testMetricsArePublishedOnlyWithRegistry() {
+        Assertions.assertTrue(metrics.isPublished());
+        Assertions.assertFalse(new SinchMetrics().isPublished());
+    }
+
+    @Test
+    public void testNodeOutcomeOfAction() {
+        Assertions.assertEquals(SinchMetrics.NodeOutcome.ERROR, SinchMetrics.NodeOutcome.of(null));
+        Assertions.assertEquals(SinchMetrics.NodeOutcome.TOO_MANY_ATTEMPTS, SinchMetrics.NodeOutcome.of(Action.goTo("tooManyAttempts").build()));
+        Assertions.assertEquals(SinchMetrics.NodeOutcome.NEXT, SinchMetrics.NodeOutcome.of(Action.goTo("outcome").build()));
+    }
+}
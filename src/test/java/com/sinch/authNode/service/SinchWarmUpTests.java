@@ -0,0 +1,90 @@
+package com.sinch.authNode.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class SinchWarmUpTests {
+
+    private final SinchHttpTransport transport = mock(SinchHttpTransport.class);
+    private final SinchApiService apiService = mock(SinchApiService.class);
+    private HttpServer server;
+
+    @AfterEach
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testDisabledWarmUpDoesNothing() {
+        new SinchWarmUp(transport, apiService, false, 10, true).start();
+
+        verifyNoInteractions(transport, apiService);
+    }
+
+    @Test
+    public void testSimulatesCallsInBatchesAndPreconnects() {
+        new SinchWarmUp(transport, apiService, true, 2 * SinchWarmUp.BATCH_SIZE + 50, true).run();
+
+        verify(apiService, times(2)).warmUp(SinchWarmUp.BATCH_SIZE);
+        verify(apiService).warmUp(50);
+        verify(transport).preconnect();
+    }
+
+    @Test
+    public void testPreconnectCanBeDisabled() {
+        new SinchWarmUp(transport, apiService, true, 10, false).run();
+
+        verify(apiService).warmUp(10);
+        verify(transport, never()).preconnect();
+    }
+
+    @Test
+    public void testApiServiceWarmUpSendsNothing() {
+        SinchHttpTransport unusedTransport = mock(SinchHttpTransport.class);
+        SinchApiServiceImpl service = new SinchApiServiceImpl(unusedTransport, new SinchMetrics(),
+                new VerificationTracer(new SinchHttpTransport()));
+
+        service.warmUp(10);
+
+        verifyNoInteractions(unusedTransport);
+    }
+
+    @Test
+    public void testPreconnectOpensPooledConnectionWithoutCallingVerificationResources() throws IOException {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI());
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        SinchHttpTransport started = new SinchHttpTransport();
+        started.start(new SinchHttpTransport.Settings(baseUrl, 4, 60_000, 8, 8, false, 1_000, 1_000));
+        try {
+            Assertions.assertEquals(1, started.preconnect());
+
+            Assertions.assertEquals(List.of("HEAD /"), requests);
+            Assertions.assertEquals(1, started.client().connectionPool().connectionCount());
+        } finally {
+            started.shutdown();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.verification.VerificationStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.util.Base64;
+
+public class SinchWebhookReceiverTests {
+
+    private static final String APP_KEY = "appKey";
+    private static final String SECRET = Base64.getEncoder().encodeToString("secret".getBytes(StandardCharsets.UTF_8));
+    private static final String PATH = "/sinch/verification";
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String RESULT = "{\"id\":\"verificationId\",\"event\":\"VerificationResultEvent\"," +
+            "\"method\":\"flashcall\",\"status\":\"SUCCESSFUL\"}";
+
+    private SinchCredentialsCache credentialsCache;
+    private VerificationResultStore results;
+    private SinchWebhookReceiver receiver;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        credentialsCache = new SinchCredentialsCache();
+        credentialsCache.get(APP_KEY, SECRET.toCharArray());
+        results = new VerificationResultStore(60_000, 100);
+        receiver = new SinchWebhookReceiver(credentialsCache, results, new SinchWebhookReceiver.Settings(0, PATH, 1));
+        receiver.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        receiver.shutdown();
+    }
+
+    @Test
+    public void testSignedResultIsStored() throws Exception {
+        String timestamp = Instant.now().toString();
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, SECRET));
+
+        Assertions.assertEquals(200, status);
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, results.take("verificationId"));
+    }
+
+    @Test
+    public void testResultWithInvalidSignatureIsRejected() throws Exception {
+        String timestamp = Instant.now().toString();
+        String otherSecret = Base64.getEncoder().encodeToString("other".getBytes(StandardCharsets.UTF_8));
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, otherSecret));
+
+        Assertions.assertEquals(401, status);
+        Assertions.assertNull(results.take("verificationId"));
+    }
+
+    @Test
+    public void testResultWithStaleTimestampIsRejected() throws Exception {
+        String timestamp = Instant.now().minusMillis(SinchWebhookReceiver.MAX_CLOCK_SKEW_MILLIS + 60_000).toString();
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, SECRET));
+
+        Assertions.assertEquals(401, status);
+        Assertions.assertNull(results.take("verificationId"));
+    }
+
+    @Test
+    public void testResultOfUnknownApplicationIsRejected() throws Exception {
+        credentialsCache.clear();
+        String timestamp = Instant.now().toString();
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, SECRET));
+
+        Assertions.assertEquals(401, status);
+    }
+
+    @Test
+    public void testReplayedResultIsRejected() throws Exception {
+        String timestamp = Instant.now().toString();
+        String signature = signature(RESULT, timestamp, SECRET);
+
+        Assertions.assertEquals(200, post(RESULT, timestamp, signature));
+        Assertions.assertEquals(401, post(RESULT, timestamp, signature));
+    }
+
+    @Test
+    public void testResultSignedOverConfiguredPathIsStored() throws Exception {
+        String signedPath = "/am/sinch/verification";
+        receiver.shutdown();
+        receiver = new SinchWebhookReceiver(credentialsCache, results, new SinchWebhookReceiver.Settings(0, PATH, 1,
+                "127.0.0.1", null, null, "PKCS12", signedPath, null, null));
+        receiver.start();
+        String timestamp = Instant.now().toString();
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, SECRET, signedPath));
+
+        Assertions.assertEquals(200, status);
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, results.take("verificationId"));
+    }
+
+    @Test
+    public void testResultOfConfiguredApplicationIsStoredAfterRestart(@TempDir Path directory) throws Exception {
+        Path applications = directory.resolve("applications.p12");
+        char[] password = "changeit".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, password);
+        SecretKey secret = SecretKeyFactory.getInstance("PBE").generateSecret(new PBEKeySpec(SECRET.toCharArray()));
+        keyStore.setEntry(APP_KEY, new KeyStore.SecretKeyEntry(secret), new KeyStore.PasswordProtection(password));
+        try (OutputStream output = Files.newOutputStream(applications)) {
+            keyStore.store(output, password);
+        }
+        receiver.shutdown();
+        credentialsCache.clear();
+        receiver = new SinchWebhookReceiver(credentialsCache, results, new SinchWebhookReceiver.Settings(0, PATH, 1,
+                "127.0.0.1", null, null, "PKCS12", null, applications.toString(), password));
+        receiver.start();
+        String timestamp = Instant.now().toString();
+
+        int status = post(RESULT, timestamp, signature(RESULT, timestamp, SECRET));
+
+        Assertions.assertEquals(200, status);
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, results.take("verificationId"));
+    }
+
+    @Test
+    public void testRequestEventIsAllowed() throws Exception {
+        String body = "{\"id\":\"verificationId\",\"event\":\"VerificationRequestEvent\",\"method\":\"sms\"}";
+        String timestamp = Instant.now().toString();
+
+        HttpURLConnection connection = connect(body, timestamp, signature(body, timestamp, SECRET));
+
+        Assertions.assertEquals(200, connection.getResponseCode());
+        Assertions.assertEquals("{\"action\":\"allow\"}", read(connection.getInputStream()));
+        Assertions.assertEquals(0, results.size());
+    }
+
+    @Test
+    public void testListensOnLoopbackByDefault() {
+        Assertions.assertEquals(SinchWebhookReceiver.Settings.DEFAULT_BIND_ADDRESS,
+                new SinchWebhookReceiver.Settings(0, PATH, 1).bindAddress);
+    }
+
+    @Test
+    public void testServesHttpsWithConfiguredKeyStore(@TempDir Path directory) throws Exception {
+        Path keyStore = directory.resolve("receiver.p12");
+        char[] password = "changeit".toCharArray();
+        Process keytool = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "receiver", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=127.0.0.1",
+                "-ext", "SAN=ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                "-storepass", new String(password), "-keypass", new String(password))
+                .inheritIO().start();
+        Assertions.assertEquals(0, keytool.waitFor());
+        receiver.shutdown();
+        receiver = new SinchWebhookReceiver(credentialsCache, results, new SinchWebhookReceiver.Settings(0, PATH, 1,
+                "127.0.0.1", keyStore.toString(), password, "PKCS12", null, null, null));
+        receiver.start();
+        String timestamp = Instant.now().toString();
+
+        HttpURLConnection connection = connect("https://127.0.0.1:" + receiver.port(), trusting(keyStore, password),
+                RESULT, timestamp, signature(RESULT, timestamp, SECRET));
+
+        Assertions.assertEquals(200, connection.getResponseCode());
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, results.take("verificationId"));
+    }
+
+    @Test
+    public void testStartFailsWithMissingKeyStore(@TempDir Path directory) {
+        receiver.shutdown();
+        receiver = new SinchWebhookReceiver(credentialsCache, results, new SinchWebhookReceiver.Settings(0, PATH, 1,
+                "127.0.0.1", directory.resolve("missing.p12").toString(), "changeit".toCharArray(), "PKCS12", null, null,
+                null));
+
+        Assertions.assertThrows(IOException.class, receiver::start);
+    }
+
+    private static SSLContext trusting(Path keyStorePath, char[] password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(keyStorePath)) {
+            keyStore.load(input, password);
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustManagers.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private int post(String body, String timestamp, String signature) throws IOException {
+        HttpURLConnection connection = connect(body, timestamp, signature);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection connect(String body, String timestamp, String signature) throws IOException {
+        return connect("http://127.0.0.1:" + receiver.port(), null, body, timestamp, signature);
+    }
+
+    private static HttpURLConnection connect(String baseUrl, SSLContext sslContext, String body, String timestamp,
+                                             String signature) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + PATH).openConnection();
+        if (sslContext != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslContext.getSocketFactory());
+        }
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+        connection.setRequestProperty("x-timestamp", timestamp);
+        connection.setRequestProperty("Authorization", "Application " + APP_KEY + ":" + signature);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    private static String signature(String body, String timestamp, String secret) throws Exception {
+        return signature(body, timestamp, secret, PATH);
+    }
+
+    private static String signature(String body, String timestamp, String secret, String path) throws Exception {
+        return new SinchCredentials(APP_KEY, secret.toCharArray())
+                .sign("POST", body.getBytes(StandardCharsets.UTF_8), CONTENT_TYPE, timestamp, path);
+    }
+
+    private static String read(InputStream input) throws IOException {
+        try (InputStream body = input) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
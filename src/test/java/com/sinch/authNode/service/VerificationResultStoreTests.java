@@ -0,0 +1,58 @@
+package com.sinch.authNode.service;
+
+import com.sinch.verification.model.verification.VerificationStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VerificationResultStoreTests {
+
+    @Test
+    public void testResultIsTakenOnce() {
+        VerificationResultStore store = new VerificationResultStore(60_000, 10);
+
+        Assertions.assertTrue(store.put("id", VerificationStatus.SUCCESSFUL));
+
+        Assertions.assertEquals(VerificationStatus.SUCCESSFUL, store.take("id"));
+        Assertions.assertNull(store.take("id"));
+    }
+
+    @Test
+    public void testPendingResultIsIgnored() {
+        VerificationResultStore store = new VerificationResultStore(60_000, 10);
+
+        Assertions.assertFalse(store.put("id", VerificationStatus.PENDING));
+
+        Assertions.assertNull(store.take("id"));
+    }
+
+    @Test
+    public void testExpiredResultIsIgnored() {
+        VerificationResultStore store = new VerificationResultStore(-1, 10);
+
+        store.put("id", VerificationStatus.FAIL);
+
+        Assertions.assertNull(store.take("id"));
+    }
+
+    @Test
+    public void testStoreIsBounded() {
+        VerificationResultStore store = new VerificationResultStore(60_000, 2);
+
+        Assertions.assertTrue(store.put("first", VerificationStatus.SUCCESSFUL));
+        Assertions.assertTrue(store.put("second", VerificationStatus.SUCCESSFUL));
+        Assertions.assertFalse(store.put("third", VerificationStatus.SUCCESSFUL));
+
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertNull(store.take("third"));
+    }
+
+    @Test
+    public void testExpiredResultsArePurgedWhenFull() {
+        VerificationResultStore store = new VerificationResultStore(-1, 2);
+        store.put("first", VerificationStatus.SUCCESSFUL);
+        store.put("second", VerificationStatus.SUCCESSFUL);
+
+        Assertions.assertTrue(store.put("third", VerificationStatus.SUCCESSFUL));
+        Assertions.assertEquals(1, store.size());
+    }
+}
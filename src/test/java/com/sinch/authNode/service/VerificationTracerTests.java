@@ -0,0 +1,148 @@
+package com.sinch.authNode.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.forgerock.json.JsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+public class VerificationTracerTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Path traceFile;
+    private VerificationTracer tracer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        traceFile = Files.createTempFile("sinch-traces", ".json");
+        tracer = new VerificationTracer(new SinchHttpTransport(),
+                new VerificationTracer.Settings(traceFile.toString(), null, 1.0));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        tracer.shutdown();
+        Files.deleteIfExists(traceFile);
+    }
+
+    @Test
+    public void testSpansOfBothStepsShareTheTrace() throws Exception {
+        JsonValue sharedState = json(object());
+        Span authentication = tracer.startNodeSpan("sinch.authentication", sharedState);
+        tracer.startChildSpan("sinch.api.initiation").tag("outcome", "success").end();
+        tracer.writeState(sharedState);
+        authentication.end();
+
+        Span codeCollector = tracer.startNodeSpan("sinch.codeCollector", sharedState);
+        tracer.recordWaitSpan("sinch.userInput", sharedState);
+        tracer.startChildSpan("sinch.api.verification").end();
+        codeCollector.end();
+
+        Map<String, JsonNode> spans = exportedSpans();
+        Assertions.assertEquals(5, spans.size());
+        String traceId = spans.get("sinch.authentication").get("traceId").asText();
+        Assertions.assertEquals(32, traceId.length());
+        spans.values().forEach(span -> Assertions.assertEquals(traceId, span.get("traceId").asText()));
+        String authenticationId = spans.get("sinch.authentication").get("id").asText();
+        String codeCollectorId = spans.get("sinch.codeCollector").get("id").asText();
+        Assertions.assertFalse(spans.get("sinch.authentication").has("parentId"));
+        Assertions.assertEquals(authenticationId, spans.get("sinch.api.initiation").get("parentId").asText());
+        Assertions.assertEquals(authenticationId, spans.get("sinch.codeCollector").get("parentId").asText());
+        Assertions.assertEquals(authenticationId, spans.get("sinch.userInput").get("parentId").asText());
+        Assertions.assertEquals(codeCollectorId, spans.get("sinch.api.verification").get("parentId").asText());
+        Assertions.assertEquals("success", spans.get("sinch.api.initiation").path("tags").path("outcome").asText());
+    }
+
+    @Test
+    public void testEndingNodeSpanDeactivatesIt() {
+        Span span = tracer.startNodeSpan("sinch.authentication", json(object()));
+        Assertions.assertTrue(span.isRecording());
+        span.end();
+        Assertions.assertSame(Span.NOOP, tracer.startChildSpan("sinch.api.initiation"));
+        JsonValue sharedState = json(object());
+        tracer.writeState(sharedState);
+        Assertions.assertFalse(sharedState.isDefined(VerificationTracer.TRACE_ID_KEY));
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenDisabled() {
+        VerificationTracer disabled = new VerificationTracer(new SinchHttpTransport(),
+                new VerificationTracer.Settings(null, null, 1.0));
+        Span span = disabled.startNodeSpan("sinch.authentication", json(object()));
+        Assertions.assertSame(Span.NOOP, span);
+        Assertions.assertNull(span.traceParent());
+        span.end();
+    }
+
+    @Test
+    public void testTraceParentHeader() {
+        Span span = tracer.startNodeSpan("sinch.authentication", json(object()));
+        Span child = tracer.startChildSpan("sinch.api.initiation");
+        Assertions.assertEquals("00-" + span.traceId + "-" + child.spanId + "-01", child.traceParent());
+        child.end();
+        span.end();
+    }
+
+    @Test
+    public void testFlushWaitsForBatchExportedInBackground() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        AtomicBoolean answered = new AtomicBoolean();
+        HttpServer collector = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        collector.createContext("/", exchange -> {
+            received.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            answered.set(true);
+            exchange.sendResponseHeaders(202, -1);
+            exchange.close();
+        });
+        collector.start();
+        VerificationTracer exporting = new VerificationTracer(new SinchHttpTransport(), new VerificationTracer.Settings(
+                null, "http://127.0.0.1:" + collector.getAddress().getPort() + "/api/v2/spans", 1.0));
+        try {
+            exporting.startNodeSpan("sinch.authentication", json(object())).end();
+            Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            exporting.flush();
+
+            Assertions.assertTrue(answered.get());
+            Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        } finally {
+            exporting.shutdown();
+            collector.stop(0);
+        }
+    }
+
+    private Map<String, JsonNode> exportedSpans() throws Exception {
+        tracer.flush();
+        List<String> lines = Files.readAllLines(traceFile);
+        Map<String, JsonNode> spans = new HashMap<>();
+        for (String line : lines) {
+            JsonNode span = MAPPER.readTree(line);
+            spans.put(span.get("name").asText(), span);
+        }
+        return spans;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sinch.authNode.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class WeightedApplicationTests {
+
+    private static final int SELECTIONS = 10_000;
+
+    private final SinchCredentialsCache credentialsCache = new SinchCredentialsCache();
+    private final SinchCredentials first = credentialsCache.get("first", "c2VjcmV0".toCharArray());
+    private final SinchCredentials second = credentialsCache.get("second", "c2VjcmV0".toCharArray());
+
+    @Test
+    public void testSelectionFollowsWeights() {
+        List<WeightedApplication> applications = Arrays.asList(new WeightedApplication(first, 3),
+                new WeightedApplication(second, 1));
+
+        int firstSelections = countSelections(applications, first, 100, 100);
+
+        Assertions.assertTrue(firstSelections > SELECTIONS * 0.7 && firstSelections < SELECTIONS * 0.8,
+                "First application selected " + firstSelections + " times");
+    }
+
+    @Test
+    public void testUnhealthyApplicationIsNotSelected() {
+        List<WeightedApplication> applications = Arrays.asList(new WeightedApplication(first, 3),
+                new WeightedApplication(second, 1));
+
+        Assertions.assertEquals(0, countSelections(applications, first, 0, 100));
+    }
+
+    @Test
+    public void testWeightsAreUsedWhenNoApplicationIsHealthy() {
+        List<WeightedApplication> applications = Arrays.asList(new WeightedApplication(first, 1),
+                new WeightedApplication(second, 1));
+
+        int firstSelections = countSelections(applications, first, 0, 0);
+
+        Assertions.assertTrue(firstSelections > 0 && firstSelections < SELECTIONS);
+    }
+
+    @Test
+    public void testApplicationWithZeroWeightIsNotSelected() {
+        SinchApiService service = new SinchApiServiceImpl(new SinchHttpTransport(), new SinchMetrics(),
+                new VerificationTracer(new SinchHttpTransport()));
+        List<WeightedApplication> applications = Arrays.asList(new WeightedApplication(first, 1),
+                new WeightedApplication(second, 0));
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertSame(first, service.selectApplication(applications));
+        }
+    }
+
+    private int countSelections(List<WeightedApplication> applications, SinchCredentials counted, int firstHealth,
+                                int secondHealth) {
+        int selections = 0;
+        for (int i = 0; i < SELECTIONS; i++) {
+            SinchCredentials selected = WeightedApplication.select(applications,
+                    appKey -> appKey.equals(first.appKey()) ? firstHealth : secondHealth);
+            selections += selected == counted ? 1 : 0;
+        }
+        return selections;
+    }
+}